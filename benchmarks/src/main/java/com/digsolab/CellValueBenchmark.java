@@ -0,0 +1,85 @@
+package com.digsolab;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of typing a single csv value into a cell, per column {@link Type} and {@link OutputEngine}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellValueBenchmark {
+
+    private static final int VALUES = 1024;
+    private static final int VALUES_PER_SHEET = 1 << 16;
+
+    @Param({"BOOLEAN", "DATE", "HYPERLINK", "NUMBER", "TEXT"})
+    public Type type;
+
+    @Param({"POI", "STREAM"})
+    public OutputEngine engine;
+
+    private ConverterOptions options;
+    private CsvToXlsConverter converter;
+    private SheetWriter sheet;
+    private String[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        options = new ConverterOptions();
+        options.parseOptions(new String[] {"-columns", type.name().substring(0, 1), "-engine", engine.name(),
+                "bench.csv"});
+        converter = new CsvToXlsConverter();
+        prepareSheet();
+        Random random = new Random(42);
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = CsvFixtures.value(type, random);
+        }
+    }
+
+    private void prepareSheet() throws Exception {
+        sheet = converter.prepareSheet(options, 1, new DiscardOutputStream());
+        sheet.startRow(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        converter.dispose();
+    }
+
+    @Benchmark
+    public void setCellValue() throws Exception {
+        if ((next & (VALUES - 1)) == 0 && next != 0) {
+            // keep the open row and the collected hyperlinks bounded on long iterations
+            sheet.endRow();
+            if ((next & (VALUES_PER_SHEET - 1)) == 0) {
+                converter.dispose();
+                prepareSheet();
+            }
+            else {
+                sheet.startRow(1);
+            }
+        }
+        converter.setCellValue(values[next++ & (VALUES - 1)], 0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.digsolab;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end {@link CsvToXlsConverter#convertToExcel(ConverterOptions)} runs on generated csv files:
+ * narrow or wide, numeric, text or date heavy, one or several sources per workbook, sequential or
+ * pipelined.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"NARROW", "WIDE"})
+    public CsvFixtures.Shape shape;
+
+    @Param({"NUMERIC", "TEXT", "DATE"})
+    public CsvFixtures.Content content;
+
+    @Param({"1", "4"})
+    public int files;
+
+    @Param({"5000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean pipeline;
+
+    private File workDir;
+    private String[] args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("exceller-bench").toFile();
+        StringBuilder sources = new StringBuilder();
+        for (int i = 0; i < files; i++) {
+            File csv = CsvFixtures.write(workDir, "source" + i + ".csv", shape, content, rows, 42 + i);
+            sources.append(i > 0 ? ";" : "").append(csv.getPath());
+        }
+        List<String> arguments = new ArrayList<>(Arrays.asList("-columns", content.getPattern(), "-il",
+                "-output", new File(workDir, "result.xlsx").getPath()));
+        if (pipeline) {
+            arguments.add("-pipeline");
+        }
+        arguments.add(sources.toString());
+        args = arguments.toArray(new String[arguments.size()]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CsvFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void convertToExcel() throws Exception {
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(args);
+        new CsvToXlsConverter().convertToExcel(options);
+    }
+}
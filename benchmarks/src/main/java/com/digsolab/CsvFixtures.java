@@ -0,0 +1,122 @@
+package com.digsolab;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic csv inputs and matching column patterns for the benchmarks.
+ */
+public final class CsvFixtures {
+
+    public enum Shape {
+        NARROW(8), WIDE(200);
+
+        private final int columns;
+
+        Shape(int columns) {
+            this.columns = columns;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+    }
+
+    public enum Content {
+        NUMERIC("N"), TEXT("T"), DATE("Dyyyy-mm-dd hh:mm:ss");
+
+        private final String pattern;
+
+        Content(String pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         * Column pattern applied to every column of the generated file (used together with -il).
+         */
+        public String getPattern() {
+            return pattern;
+        }
+    }
+
+    private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot",
+            "golf", "hotel", "india", "juliett", "kilo", "lima", "mike", "november", "oscar"};
+
+    private CsvFixtures() {
+    }
+
+    public static File write(File dir, String name, Shape shape, Content content, int rows, long seed)
+            throws IOException {
+        File file = new File(dir, name);
+        Random random = new Random(seed);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                Charset.forName("UTF-8")), 1 << 16)) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < shape.getColumns(); c++) {
+                    if (c > 0) {
+                        out.write(',');
+                    }
+                    out.write(value(content, random));
+                }
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+
+    public static String value(Type type, Random random) {
+        switch (type) {
+            case BOOLEAN:
+                return random.nextBoolean() ? "true" : "false";
+            case DATE:
+                return value(Content.DATE, random);
+            case HYPERLINK:
+                return "http://example.com/items/" + random.nextInt(1000000);
+            case NUMBER:
+                return value(Content.NUMERIC, random);
+            default:
+                return value(Content.TEXT, random);
+        }
+    }
+
+    public static String value(Content content, Random random) {
+        switch (content) {
+            case NUMERIC:
+                return String.valueOf(random.nextInt(1000000) / 100.0);
+            case DATE:
+                return String.format("%04d-%02d-%02d %02d:%02d:%02d", 1990 + random.nextInt(30),
+                        1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+                        random.nextInt(60), random.nextInt(60));
+            default:
+                String text = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+                return random.nextInt(10) == 0 ? "\"" + text + ", " + text + "\"" : text;
+        }
+    }
+
+    public static List<String> row(Content content, int columns, Random random) {
+        List<String> row = new ArrayList<>(columns);
+        for (int c = 0; c < columns; c++) {
+            String value = value(content, random);
+            row.add(value.startsWith("\"") ? value.substring(1, value.length() - 1) : value);
+        }
+        return row;
+    }
+
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,80 @@
+package com.digsolab;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a generated csv file with each {@link InputEngine}, either all columns or only the first
+ * ones as with -n. Only the fields that are read are decoded by the nio reader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CsvReaderBenchmark {
+
+    @Param({"NIO", "SUPERCSV"})
+    public InputEngine reader;
+
+    @Param({"NARROW", "WIDE"})
+    public CsvFixtures.Shape shape;
+
+    @Param({"0", "4"})
+    public int slice;
+
+    @Param({"20000"})
+    public int rows;
+
+    private File workDir;
+    private File csv;
+    private CsvDialect dialect;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("exceller-bench").toFile();
+        csv = CsvFixtures.write(workDir, "source.csv", shape, CsvFixtures.Content.TEXT, rows, 42);
+        dialect = new CsvDialect(Charset.forName("UTF-8"), ',', '"', '"');
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CsvFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public int read() throws Exception {
+        int chars = 0;
+        try (CsvReader csvReader = reader.open(FileChannel.open(csv.toPath(), StandardOpenOption.READ), dialect)) {
+            List<String> record;
+            while ((record = csvReader.read()) != null) {
+                int columns = (slice == 0) ? record.size() : Math.min(slice, record.size());
+                for (int c = 0; c < columns; c++) {
+                    String field = record.get(c);
+                    chars += (field != null) ? field.length() : 0;
+                }
+            }
+        }
+        return chars;
+    }
+}
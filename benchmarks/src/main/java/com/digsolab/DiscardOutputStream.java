@@ -0,0 +1,17 @@
+package com.digsolab;
+
+import java.io.OutputStream;
+
+/**
+ * Output stream dropping everything written to it, so the benchmarks measure encoding and not disk I/O.
+ */
+public final class DiscardOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+}
@@ -0,0 +1,137 @@
+package com.digsolab;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocation per row of the compiled column encoders compared to the former per-cell format lookup
+ * and type switch (kept here as {@link #perCellLookup()}). Both variants create their cells in one
+ * reused POI row, so gc.alloc.rate.norm only reflects the dispatch and the value parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncoderAllocationBenchmark {
+
+    private static final int ROWS = 16;
+    private static final String DATE_JAVA_PATTERN = "yyyy-mm-dd hh:mm:ss";
+
+    @Param({"50", "200"})
+    public int columns;
+
+    @Param({"TEXT", "NUMERIC", "DATE"})
+    public CsvFixtures.Content content;
+
+    private ConverterOptions options;
+    private boolean hasPatterns;
+    private CsvToXlsConverter converter;
+    private SXSSFWorkbook legacyWorkbook;
+    private Row legacyRow;
+    private CellStyle[] styles;
+    private List<List<String>> rows;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        options = new ConverterOptions();
+        // text columns are benchmarked without any pattern string, the most common invocation
+        hasPatterns = content != CsvFixtures.Content.TEXT;
+        options.parseOptions(hasPatterns
+                ? new String[] {"-columns", content.getPattern(), "-il", "bench.csv"}
+                : new String[] {"bench.csv"});
+        converter = new CsvToXlsConverter();
+        converter.prepareSheet(options, columns, new DiscardOutputStream()).startRow(1);
+        legacyWorkbook = new SXSSFWorkbook(100);
+        legacyRow = legacyWorkbook.createSheet().createRow(1);
+        styles = new CellStyle[columns];
+        for (int c = 0; c < columns; c++) {
+            styles[c] = legacyWorkbook.createCellStyle();
+        }
+        Random random = new Random(42);
+        rows = new ArrayList<>(ROWS);
+        for (int r = 0; r < ROWS; r++) {
+            rows.add(CsvFixtures.row(content, columns, random));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        converter.dispose();
+        legacyWorkbook.dispose();
+    }
+
+    @Benchmark
+    public void compiledEncoders() throws Exception {
+        List<String> row = rows.get(next++ & (ROWS - 1));
+        for (int c = 0; c < columns; c++) {
+            converter.setCellValue(row.get(c), c);
+        }
+    }
+
+    @Benchmark
+    public Row perCellLookup() {
+        List<String> row = rows.get(next++ & (ROWS - 1));
+        for (int c = 0; c < columns; c++) {
+            Cell cell = legacyRow.createCell(c);
+            legacySetCellValue(cell, row.get(c), c);
+            cell.setCellStyle(styles[c]);
+        }
+        return legacyRow;
+    }
+
+    private Format legacyGetFormat(int index) {
+        return hasPatterns ? options.getFormat(index) : new Format(Type.TEXT, null, -1);
+    }
+
+    private void legacySetCellValue(Cell cell, String data, int cellIndex) {
+        Format cellFormat = legacyGetFormat(cellIndex);
+        try {
+            switch (cellFormat.getType()) {
+                case BOOLEAN:
+                    cell.setCellValue(Boolean.parseBoolean(data));
+                    break;
+                case DATE:
+                    cell.setCellValue(new SimpleDateFormat(DATE_JAVA_PATTERN).parse(data));
+                    break;
+                case NUMBER:
+                    cell.setCellValue(Double.parseDouble(data));
+                    break;
+                default:
+                    cell.setCellValue(data);
+                    break;
+            }
+        }
+        catch (ParseException pEx) {
+            cell.setCellValue(data);
+        }
+        catch (NumberFormatException nEx) {
+            cell.setCellValue(data);
+        }
+    }
+}
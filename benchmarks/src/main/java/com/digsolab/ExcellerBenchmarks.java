@@ -0,0 +1,25 @@
+package com.digsolab;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the regular JMH command line and always attaches the GC
+ * profiler, so every result reports the allocation rate next to the throughput.
+ */
+public class ExcellerBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(cmdOptions)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,73 @@
+package com.digsolab;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several csv files converted into one workbook with the stream engine, sheet after sheet or on a
+ * pool of threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class MultiFileConversionBenchmark {
+
+    @Param({"NUMERIC", "TEXT"})
+    public CsvFixtures.Content content;
+
+    @Param({"8"})
+    public int files;
+
+    @Param({"20000"})
+    public int rows;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private File workDir;
+    private String[] args;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("exceller-bench").toFile();
+        StringBuilder sources = new StringBuilder();
+        for (int i = 0; i < files; i++) {
+            File csv = CsvFixtures.write(workDir, "source" + i + ".csv", CsvFixtures.Shape.NARROW, content, rows,
+                    42 + i);
+            sources.append(i > 0 ? ";" : "").append(csv.getPath());
+        }
+        args = new String[] {"-columns", content.getPattern(), "-il", "-engine", "stream",
+                "-threads", Integer.toString(threads), "-output", new File(workDir, "result.xlsx").getPath(),
+                sources.toString()};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CsvFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void convertToExcel() throws Exception {
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(args);
+        new CsvToXlsConverter().convertToExcel(options);
+    }
+}
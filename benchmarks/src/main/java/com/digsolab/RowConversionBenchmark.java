@@ -0,0 +1,91 @@
+package com.digsolab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of converting one csv row into a sheet row, for several column counts. The columns cycle
+ * through all {@link Type}s so every branch of the cell conversion is exercised. Rows stream
+ * through the regular output engine into a discarding stream, so the flush of old rows is part of
+ * the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowConversionBenchmark {
+
+    private static final int ROWS = 64;
+    private static final int MAX_ROW_INDEX = 1000000;
+    private static final Type[] TYPES = {Type.TEXT, Type.NUMBER, Type.DATE, Type.BOOLEAN, Type.HYPERLINK};
+    private static final String[] PATTERNS = {"T", "N", "Dyyyy-mm-dd hh:mm:ss", "B", "H"};
+
+    @Param({"8", "50", "200"})
+    public int columns;
+
+    @Param({"POI", "STREAM"})
+    public OutputEngine engine;
+
+    private ConverterOptions options;
+    private CsvToXlsConverter converter;
+    private List<List<String>> rows;
+    private int rowIndex;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        StringBuilder patterns = new StringBuilder();
+        for (int c = 0; c < columns; c++) {
+            patterns.append(c > 0 ? ";" : "").append(PATTERNS[c % PATTERNS.length]);
+        }
+        options = new ConverterOptions();
+        options.parseOptions(new String[] {"-columns", patterns.toString(), "-engine", engine.name(),
+                "bench.csv"});
+        converter = new CsvToXlsConverter();
+        converter.prepareSheet(options, columns, new DiscardOutputStream());
+        Random random = new Random(42);
+        rows = new ArrayList<>(ROWS);
+        for (int r = 0; r < ROWS; r++) {
+            List<String> row = new ArrayList<>(columns);
+            for (int c = 0; c < columns; c++) {
+                row.add(CsvFixtures.value(TYPES[c % TYPES.length], random));
+            }
+            rows.add(row);
+        }
+        rowIndex = 1;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        converter.dispose();
+    }
+
+    @Benchmark
+    public int convertToXlsRow() throws Exception {
+        if (rowIndex == MAX_ROW_INDEX) {
+            // stay below the sheet row limit on long iterations
+            converter.dispose();
+            converter.prepareSheet(options, columns, new DiscardOutputStream());
+            rowIndex = 1;
+        }
+        converter.convertToXlsRow(rowIndex, rows.get(rowIndex & (ROWS - 1)));
+        return rowIndex++;
+    }
+}
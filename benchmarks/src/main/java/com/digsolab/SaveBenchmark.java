@@ -0,0 +1,91 @@
+package com.digsolab;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the save phase alone: the workbook is filled outside of the measurement and only
+ * {@link CsvToXlsConverter#saveXls()} (assembling and zipping the remaining workbook parts) is timed.
+ * The stream engine writes the sheet during the fill, so its save only covers the shared parts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class SaveBenchmark {
+
+    private static final int COLUMNS = 20;
+
+    @Param({"NUMERIC", "TEXT"})
+    public CsvFixtures.Content content;
+
+    @Param({"20000"})
+    public int rows;
+
+    @Param({"POI", "STREAM"})
+    public OutputEngine engine;
+
+    private File workDir;
+    private ConverterOptions options;
+    private CsvToXlsConverter converter;
+    private OutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        workDir = Files.createTempDirectory("exceller-bench").toFile();
+        options = new ConverterOptions();
+        options.parseOptions(new String[] {"-columns", content.getPattern(), "-il", "-engine", engine.name(),
+                "bench.csv"});
+    }
+
+    @Setup(Level.Invocation)
+    public void fillWorkbook() throws Exception {
+        converter = new CsvToXlsConverter();
+        out = new BufferedOutputStream(new FileOutputStream(new File(workDir, "result.xlsx")), 1 << 16);
+        SheetWriter sheet = converter.prepareSheet(options, COLUMNS, out);
+        Random random = new Random(42);
+        for (int r = 1; r <= rows; r++) {
+            List<String> row = CsvFixtures.row(content, COLUMNS, random);
+            converter.convertToXlsRow(r, row);
+        }
+        sheet.finish(rows, COLUMNS);
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeWorkbook() throws Exception {
+        out.close();
+        converter.dispose();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        CsvFixtures.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public void saveXls() throws Exception {
+        converter.saveXls();
+    }
+}
@@ -0,0 +1,209 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Converts every csv file matched by the sources into a workbook of its own, named like the result of
+ * a single conversion and written to the output directory. Files are converted on a bounded pool and
+ * the total size of the files in flight is capped, which bounds the temp files and the heap of the
+ * conversions running at the same time. A failing file is reported without stopping the others.
+ */
+public class BatchConverter {
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final Logger log = Logger.getLogger(BatchConverter.class);
+
+    private final ConverterOptions options;
+
+    public BatchConverter(ConverterOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Result of a batch: the converted files and the error message of every failed one.
+     */
+    public static final class Report {
+
+        private final List<String> converted = new ArrayList<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private long millis;
+
+        public List<String> getConverted() {
+            return converted;
+        }
+
+        public Map<String, String> getFailures() {
+            return failures;
+        }
+
+        public String getSummary() {
+            return String.format(Locale.ENGLISH, "Converted %d of %d file(s) in %.1f s, %d failed", converted.size(),
+                    converted.size() + failures.size(), millis / 1000.0, failures.size());
+        }
+    }
+
+    public Report convert() throws IOException {
+        CsvToXlsConverter.initLogger();
+        long start = System.currentTimeMillis();
+        List<File> sources = expandSources();
+        File outDir = options.resolve((options.getOutputDirectory() != null) ? options.getOutputDirectory() : ".");
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IllegalArgumentException("The output directory cannot be created");
+        }
+        final Report report = new Report();
+        final Semaphore inFlight = new Semaphore(getInFlightPermits());
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.getJobs(), sources.size()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task, "exceller-batch-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        Set<String> destinations = new HashSet<>();
+        try {
+            for (final File source : sources) {
+                final String destination = new File(outDir, CsvToXlsConverter.getResultFileName(source.getPath()))
+                        .getPath();
+                if (!destinations.add(destination)) {
+                    fail(report, source, "Another file of the batch is converted into " + destination);
+                    continue;
+                }
+                final int permits = Math.min(getPermits(source.length()), getInFlightPermits());
+                inFlight.acquire(permits);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new CsvToXlsConverter().convertToExcel(options, source.getPath(), destination);
+                            synchronized (report) {
+                                report.converted.add(source.getPath());
+                            }
+                        }
+                        catch (Exception ex) {
+                            fail(report, source, ex.getMessage());
+                        }
+                        catch (Error error) {
+                            fail(report, source, error.toString());
+                        }
+                        finally {
+                            inFlight.release(permits);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The batch was interrupted");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        report.millis = System.currentTimeMillis() - start;
+        for (Map.Entry<String, String> failure : report.failures.entrySet()) {
+            log.info(String.format("Failed %s: %s", failure.getKey(), failure.getValue()));
+        }
+        log.info(report.getSummary());
+        return report;
+    }
+
+    private static void fail(Report report, File source, String message) {
+        synchronized (report) {
+            report.failures.put(source.getPath(), message);
+        }
+    }
+
+    /**
+     * The in-flight limit counts kilobytes, a file larger than the limit takes all of it and runs alone.
+     */
+    private int getInFlightPermits() {
+        long limit = options.getInFlightLimit();
+        return (limit == 0) ? Integer.MAX_VALUE : getPermits(limit);
+    }
+
+    private static int getPermits(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes >> 10));
+    }
+
+    /**
+     * Files of the sources: plain files, the csv files of directories and the files matching a glob in
+     * the last path element, the files of a directory or glob in name order.
+     */
+    List<File> expandSources() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String source : options.getSource()) {
+            File file = options.resolve(source);
+            if (file.isDirectory()) {
+                addMatches(files, file.toPath(), "*", true);
+            }
+            else if (isGlob(file.getName())) {
+                File dir = file.getParentFile();
+                addMatches(files, (dir != null) ? dir.toPath() : options.resolve(".").toPath(), file.getName(), false);
+            }
+            else {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No csv files found for the batch");
+        }
+        return files;
+    }
+
+    private static boolean isGlob(String name) {
+        for (char c : "*?[{".toCharArray()) {
+            if (name.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True for the names of csv files, also gzip compressed ones.
+     */
+    private static boolean isCsvName(String fileName) {
+        String name = Compression.GZIP.stripExtension(fileName).toLowerCase(Locale.ENGLISH);
+        return name.endsWith(CSV_EXTENSION);
+    }
+
+    private static void addMatches(List<File> files, Path dir, String glob, boolean csvOnly) throws IOException {
+        List<File> matches = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (Files.isRegularFile(path) && (!csvOnly || isCsvName(name))) {
+                    matches.add(path.toFile());
+                }
+            }
+        }
+        Collections.sort(matches);
+        files.addAll(matches);
+    }
+}
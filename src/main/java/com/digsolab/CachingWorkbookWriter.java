@@ -0,0 +1,28 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Workbook writer whose sheets can be kept in and added from the {@link SheetCache}, the stream engine.
+ */
+interface CachingWorkbookWriter extends WorkbookWriter {
+
+    /**
+     * Keeps a copy of the deflated parts of the sheets created for the source at {@code sourceIndex} from
+     * now on.
+     */
+    void recordSheets(int sourceIndex);
+
+    /**
+     * The sheets recorded for the source at {@code sourceIndex} once they are finished, the caller owns
+     * their parts.
+     */
+    List<SheetCache.Sheet> takeRecordedSheets(int sourceIndex);
+
+    /**
+     * Adds sheets read from the cache as the sheets of the source at {@code sourceIndex}, the writer owns
+     * their parts.
+     */
+    void addCachedSheets(int sourceIndex, List<SheetCache.Sheet> sheets) throws IOException;
+}
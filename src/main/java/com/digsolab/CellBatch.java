@@ -0,0 +1,139 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Typed cells of a batch of rows, recorded through the {@link CellWriter} calls of the column
+ * encoders and replayed into the real sheet writer later, possibly on another thread. Batches are
+ * cleared and reused, so a converted row costs no allocation beyond its text values.
+ */
+final class CellBatch implements CellWriter {
+
+    private static final byte TEXT = 0;
+    private static final byte NUMBER = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte HYPERLINK = 3;
+    private static final byte LINK_FORMULA = 4;
+
+    private int[] rowIndexes;
+    private int[] rowEnds;
+    private int rowCount;
+
+    private byte[] kinds;
+    private int[] columns;
+    private int[] styles;
+    private double[] numbers;
+    private String[] texts;
+    private int cellCount;
+
+    CellBatch(int rows, int colCount) {
+        rowIndexes = new int[rows];
+        rowEnds = new int[rows];
+        int cells = Math.max(rows * colCount, 16);
+        kinds = new byte[cells];
+        columns = new int[cells];
+        styles = new int[cells];
+        numbers = new double[cells];
+        texts = new String[cells];
+    }
+
+    void clear() {
+        Arrays.fill(texts, 0, cellCount, null);
+        rowCount = 0;
+        cellCount = 0;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void startRow(int rowIndex) {
+        if (rowCount == rowIndexes.length) {
+            rowIndexes = Arrays.copyOf(rowIndexes, rowCount * 2);
+            rowEnds = Arrays.copyOf(rowEnds, rowCount * 2);
+        }
+        rowIndexes[rowCount] = rowIndex;
+    }
+
+    private int addCell(byte kind, int column, int style) {
+        if (cellCount == kinds.length) {
+            int capacity = cellCount * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+        }
+        kinds[cellCount] = kind;
+        columns[cellCount] = column;
+        styles[cellCount] = style;
+        return cellCount++;
+    }
+
+    @Override
+    public void writeText(int column, String value, int style) {
+        int cell = addCell(TEXT, column, style);
+        texts[cell] = value;
+    }
+
+    @Override
+    public void writeNumber(int column, double value, int style) {
+        int cell = addCell(NUMBER, column, style);
+        numbers[cell] = value;
+    }
+
+    @Override
+    public void writeBoolean(int column, boolean value, int style) {
+        int cell = addCell(BOOLEAN, column, style);
+        numbers[cell] = value ? 1 : 0;
+    }
+
+    @Override
+    public void writeHyperlink(int column, String address, int style) {
+        int cell = addCell(HYPERLINK, column, style);
+        texts[cell] = address;
+    }
+
+    @Override
+    public void writeLinkFormula(int column, String address, int style) {
+        int cell = addCell(LINK_FORMULA, column, style);
+        texts[cell] = address;
+    }
+
+    @Override
+    public void endRow() {
+        rowEnds[rowCount++] = cellCount;
+    }
+
+    /**
+     * Writes the recorded rows into {@code out}.
+     */
+    void replay(CellWriter out) throws IOException {
+        int cell = 0;
+        for (int row = 0; row < rowCount; row++) {
+            out.startRow(rowIndexes[row]);
+            for (int end = rowEnds[row]; cell < end; cell++) {
+                switch (kinds[cell]) {
+                    case NUMBER:
+                        out.writeNumber(columns[cell], numbers[cell], styles[cell]);
+                        break;
+                    case BOOLEAN:
+                        out.writeBoolean(columns[cell], numbers[cell] != 0, styles[cell]);
+                        break;
+                    case HYPERLINK:
+                        out.writeHyperlink(columns[cell], texts[cell], styles[cell]);
+                        break;
+                    case LINK_FORMULA:
+                        out.writeLinkFormula(columns[cell], texts[cell], styles[cell]);
+                        break;
+                    default:
+                        out.writeText(columns[cell], texts[cell], styles[cell]);
+                        break;
+                }
+            }
+            out.endRow();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.digsolab;
+
+import java.io.IOException;
+
+/**
+ * Receives the typed cells of rows in ascending order. Cells of a row are written between
+ * {@link #startRow(int)} and {@link #endRow()}, style handles come from {@link WorkbookWriter}.
+ */
+interface CellWriter {
+
+    void startRow(int rowIndex) throws IOException;
+
+    void writeText(int column, String value, int style) throws IOException;
+
+    void writeNumber(int column, double value, int style) throws IOException;
+
+    void writeBoolean(int column, boolean value, int style) throws IOException;
+
+    void writeHyperlink(int column, String address, int style) throws IOException;
+
+    /**
+     * Writes a HYPERLINK formula cell showing {@code address}. Unlike {@link #writeHyperlink} it keeps
+     * no hyperlink record per cell, the address has to fit into a formula string.
+     */
+    void writeLinkFormula(int column, String address, int style) throws IOException;
+
+    void endRow() throws IOException;
+}
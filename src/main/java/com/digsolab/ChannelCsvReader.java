@@ -0,0 +1,304 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Csv tokenizer working on the raw bytes of a channel. A record is split into field slices of a
+ * reused buffer and a field is only decoded into a String when it is read from the record, so
+ * columns that are not written cost no allocation. Works for charsets encoding the delimiter,
+ * quote, escape and line breaks as the same single ASCII bytes without ever using these bytes
+ * inside a multi-byte sequence, see {@link #supports(CsvDialect)}.
+ */
+final class ChannelCsvReader implements CsvReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final int PLAIN = 0;
+    private static final int QUOTED = 1;
+    private static final int ESCAPED = 2;
+
+    private final ReadableByteChannel channel;
+    private final Charset charset;
+    private final byte delimiter;
+    private final byte quote;
+    private final byte escape;
+    private final Record record = new Record();
+
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(buf);
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int lineNumber = 1;
+
+    private int fieldCount;
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] kinds = new int[64];
+    private byte[] scratch = new byte[256];
+
+    ChannelCsvReader(ReadableByteChannel channel, CsvDialect dialect) throws IOException {
+        this.channel = channel;
+        this.charset = dialect.getCharset();
+        this.delimiter = (byte) dialect.getDelimiter();
+        this.quote = (byte) dialect.getQuote();
+        this.escape = (byte) dialect.getEscape();
+        fill();
+        if (charset.equals(UTF_8) && limit >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB
+                && buf[2] == (byte) 0xBF) {
+            pos = 3;
+        }
+    }
+
+    /**
+     * True when the dialect can be tokenized on the encoded bytes.
+     */
+    static boolean supports(CsvDialect dialect) {
+        Charset charset = dialect.getCharset();
+        if (!charset.equals(UTF_8) && (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1)) {
+            return false;
+        }
+        char[] structural = {dialect.getDelimiter(), dialect.getQuote(), dialect.getEscape(), '\n', '\r'};
+        for (char c : structural) {
+            byte[] encoded = String.valueOf(c).getBytes(charset);
+            if (c >= 0x80 || encoded.length != 1 || encoded[0] != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> read() throws IOException {
+        while (true) {
+            skipEmptyLines();
+            if (pos >= limit && eof) {
+                return null;
+            }
+            int next = tokenize(pos);
+            if (next >= 0) {
+                pos = next;
+                return record;
+            }
+            compactAndFill();
+        }
+    }
+
+    private void skipEmptyLines() throws IOException {
+        while (true) {
+            if (pos >= limit) {
+                if (eof) {
+                    return;
+                }
+                compactAndFill();
+                continue;
+            }
+            if (buf[pos] == LF) {
+                lineNumber++;
+            }
+            else if (buf[pos] != CR) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Splits the record starting at {@code from} into fields. Returns the position after the record
+     * or -1 when the buffer ends before the record does.
+     */
+    private int tokenize(int from) {
+        int p = from;
+        int fieldStart = from;
+        int kind = PLAIN;
+        int lines = 0;
+        boolean inQuotes = false;
+        fieldCount = 0;
+        while (true) {
+            if (p >= limit) {
+                if (!eof) {
+                    return -1;
+                }
+                if (inQuotes) {
+                    throw new IllegalArgumentException(String.format(
+                            "Unexpected end of file in the quoted field starting at line %d", lineNumber));
+                }
+                addField(fieldStart, p, kind);
+                lineNumber += lines;
+                return p;
+            }
+            byte b = buf[p];
+            if (inQuotes) {
+                if (b == quote || (b == escape && escape != quote)) {
+                    if (p + 1 >= limit && !eof) {
+                        return -1;
+                    }
+                    if (b == escape && (escape != quote || (p + 1 < limit && buf[p + 1] == quote))) {
+                        kind = ESCAPED;
+                        p += 2;
+                        continue;
+                    }
+                    inQuotes = false;
+                }
+                else if (b == LF) {
+                    lines++;
+                }
+                p++;
+            }
+            else if (b == delimiter) {
+                addField(fieldStart, p, kind);
+                fieldStart = ++p;
+                kind = PLAIN;
+            }
+            else if (b == LF || b == CR) {
+                addField(fieldStart, p, kind);
+                if (b == CR) {
+                    if (p + 1 >= limit && !eof) {
+                        return -1;
+                    }
+                    if (p + 1 < limit && buf[p + 1] == LF) {
+                        p++;
+                    }
+                }
+                lineNumber += lines + 1;
+                return p + 1;
+            }
+            else {
+                if (b == quote && p == fieldStart) {
+                    inQuotes = true;
+                    kind = QUOTED;
+                }
+                else if (kind == QUOTED) {
+                    // characters after the closing quote
+                    kind = ESCAPED;
+                }
+                p++;
+            }
+        }
+    }
+
+    private void addField(int start, int end, int kind) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            kinds = Arrays.copyOf(kinds, fieldCount * 2);
+        }
+        if (kind == QUOTED && (end - start < 2 || buf[end - 1] != quote)) {
+            kind = ESCAPED;
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        kinds[fieldCount] = kind;
+        fieldCount++;
+    }
+
+    private void compactAndFill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        else if (limit == buf.length) {
+            // a single record larger than the buffer
+            buf = Arrays.copyOf(buf, buf.length * 2);
+            byteBuffer = ByteBuffer.wrap(buf);
+        }
+        fill();
+    }
+
+    private void fill() throws IOException {
+        byteBuffer.limit(buf.length);
+        byteBuffer.position(limit);
+        int read;
+        while ((read = channel.read(byteBuffer)) == 0) {
+            if (!byteBuffer.hasRemaining()) {
+                return;
+            }
+        }
+        if (read < 0) {
+            eof = true;
+        }
+        else {
+            limit = byteBuffer.position();
+        }
+    }
+
+    private String decode(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        switch (kinds[field]) {
+            case PLAIN:
+                return (start == end) ? "" : new String(buf, start, end - start, charset);
+            case QUOTED:
+                return new String(buf, start + 1, end - start - 2, charset);
+            default:
+                return new String(scratch, 0, unquote(start, end), charset);
+        }
+    }
+
+    /**
+     * Copies the field without its quotes and escapes into the scratch buffer, returns the length.
+     */
+    private int unquote(int start, int end) {
+        if (scratch.length < end - start) {
+            scratch = new byte[Math.max(end - start, scratch.length * 2)];
+        }
+        int length = 0;
+        int p = start;
+        boolean inQuotes = false;
+        if (buf[p] == quote) {
+            inQuotes = true;
+            p++;
+        }
+        while (p < end) {
+            byte b = buf[p];
+            if (inQuotes && b == escape && p + 1 < end && (escape != quote || buf[p + 1] == quote)) {
+                scratch[length++] = buf[p + 1];
+                p += 2;
+                continue;
+            }
+            if (inQuotes && b == quote) {
+                inQuotes = false;
+            }
+            else {
+                scratch[length++] = b;
+            }
+            p++;
+        }
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * View of the current record, decoding a field each time it is read.
+     */
+    private final class Record extends AbstractList<String> implements RandomAccess {
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= fieldCount) {
+                throw new IndexOutOfBoundsException(String.format("Field %d of a record with %d field(s) at line %d",
+                        index, fieldCount, lineNumber - 1));
+            }
+            return decode(index);
+        }
+
+        @Override
+        public int size() {
+            return fieldCount;
+        }
+    }
+}
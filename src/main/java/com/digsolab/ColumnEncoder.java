@@ -0,0 +1,180 @@
+package com.digsolab;
+
+import java.io.IOException;
+
+/**
+ * Writes the csv values of a single column into cells. Encoders are compiled once per sheet from
+ * the column {@link Format}s with the value parser, the cell style and the text fallback already
+ * bound, so converting a row is one call per cell without any format lookup or type switch.
+ */
+abstract class ColumnEncoder {
+
+    final int column;
+    final int style;
+    private int fallbackCount;
+
+    ColumnEncoder(int column, int style) {
+        this.column = column;
+        this.style = style;
+    }
+
+    static ColumnEncoder compile(int column, Format format, int style, DateParser dateInputParser,
+                                 NumberParser numberParser) {
+        switch (format.getType()) {
+            case BOOLEAN:
+                return new BooleanEncoder(column, style);
+            case DATE:
+                return new DateEncoder(column, style, DateParser.forColumn(dateInputParser, format.getMask()));
+            case HYPERLINK:
+                return new HyperlinkEncoder(column, style);
+            case HYPERLINK_FORMULA:
+                return new LinkFormulaEncoder(column, style);
+            case NUMBER:
+                return new NumberEncoder(column, style, numberParser);
+            default:
+                return new TextEncoder(column, style);
+        }
+    }
+
+    abstract void encode(CellWriter out, String data) throws IOException;
+
+    /**
+     * Number of non-blank values of this column that could not be parsed and were written as text.
+     */
+    final int getFallbackCount() {
+        return fallbackCount;
+    }
+
+    final void fallback(CellWriter out, String data) throws IOException {
+        out.writeText(column, data, style);
+        if (!data.isEmpty()) {
+            fallbackCount++;
+        }
+    }
+
+    /**
+     * Returns 1 for true, yes, y and 1, 0 for false, no, n and 0 (case insensitive) and -1 otherwise.
+     */
+    static int parseBoolean(String data) {
+        String value = data.trim();
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("y")
+                || value.equals("1")) {
+            return 1;
+        }
+        if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no") || value.equalsIgnoreCase("n")
+                || value.equals("0")) {
+            return 0;
+        }
+        return -1;
+    }
+
+    private static final class TextEncoder extends ColumnEncoder {
+
+        TextEncoder(int column, int style) {
+            super(column, style);
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            out.writeText(column, data, style);
+        }
+    }
+
+    private static final class BooleanEncoder extends ColumnEncoder {
+
+        BooleanEncoder(int column, int style) {
+            super(column, style);
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            int value = parseBoolean(data);
+            if (value < 0) {
+                fallback(out, data);
+            }
+            else {
+                out.writeBoolean(column, value == 1, style);
+            }
+        }
+    }
+
+    private static final class NumberEncoder extends ColumnEncoder {
+
+        private final NumberParser parser;
+
+        NumberEncoder(int column, int style, NumberParser parser) {
+            super(column, style);
+            this.parser = parser;
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            double value = parser.parse(data);
+            if (Double.isNaN(value)) {
+                fallback(out, data);
+            }
+            else {
+                out.writeNumber(column, value, style);
+            }
+        }
+    }
+
+    private static final class DateEncoder extends ColumnEncoder {
+
+        private final DateParser parser;
+
+        DateEncoder(int column, int style, DateParser parser) {
+            super(column, style);
+            this.parser = parser;
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            double serial = parser.toExcelSerial(data);
+            if (Double.isNaN(serial)) {
+                fallback(out, data);
+            }
+            else {
+                out.writeNumber(column, serial, style);
+            }
+        }
+    }
+
+    private static final class HyperlinkEncoder extends ColumnEncoder {
+
+        HyperlinkEncoder(int column, int style) {
+            super(column, style);
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            out.writeHyperlink(column, data, style);
+        }
+    }
+
+    /**
+     * Links as HYPERLINK formulas, so a sheet with a link per row keeps no hyperlink records. Excel
+     * limits formula strings to 255 characters, longer addresses get a regular hyperlink.
+     */
+    private static final class LinkFormulaEncoder extends ColumnEncoder {
+
+        private static final int MAX_FORMULA_STRING = 255;
+
+        LinkFormulaEncoder(int column, int style) {
+            super(column, style);
+        }
+
+        @Override
+        void encode(CellWriter out, String data) throws IOException {
+            if (data.isEmpty()) {
+                out.writeText(column, data, style);
+            }
+            else if (data.length() > MAX_FORMULA_STRING) {
+                out.writeHyperlink(column, data, style);
+            }
+            else {
+                out.writeLinkFormula(column, data, style);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.digsolab;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columns of the csv converted into the sheet and their order, given by 1-based column numbers or by
+ * the names of the header record. Names are looked up per source, so files with differently ordered
+ * columns give the same sheet layout.
+ */
+final class ColumnSelection {
+
+    private final String[] columns;
+    private final int[] numbers;
+
+    private ColumnSelection(String[] columns, int[] numbers) {
+        this.columns = columns;
+        this.numbers = numbers;
+    }
+
+    static ColumnSelection parse(String[] columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("The column selection is empty");
+        }
+        int[] numbers = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i].trim();
+            if (column.isEmpty()) {
+                throw new IllegalArgumentException("The column selection contains an empty column");
+            }
+            numbers[i] = isNumber(column) ? parseNumber(column) : -1;
+        }
+        return new ColumnSelection(columns.clone(), numbers);
+    }
+
+    private static boolean isNumber(String column) {
+        for (int i = 0; i < column.length(); i++) {
+            if (!Character.isDigit(column.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseNumber(String column) {
+        try {
+            int number = Integer.parseInt(column);
+            if (number >= 1) {
+                return number;
+            }
+        }
+        catch (NumberFormatException numEx) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Invalid column number %s, columns are numbered from 1",
+                column));
+    }
+
+    boolean hasNames() {
+        for (int number : numbers) {
+            if (number < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return numbers.length;
+    }
+
+    /**
+     * Indexes of the selected columns in the records of a source, names are looked up in its first record.
+     */
+    int[] resolve(List<String> firstRecord, String source) {
+        int[] indexes = new int[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            if (numbers[i] > 0) {
+                indexes[i] = numbers[i] - 1;
+                if (indexes[i] >= firstRecord.size()) {
+                    throw new IllegalArgumentException(String.format("There is no column %d in %s, it has %d column(s)",
+                            numbers[i], source, firstRecord.size()));
+                }
+                continue;
+            }
+            indexes[i] = firstRecord.indexOf(columns[i].trim());
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException(String.format("There is no column %s in the header of %s",
+                        columns[i].trim(), source));
+            }
+        }
+        return indexes;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(columns);
+    }
+}
@@ -0,0 +1,326 @@
+package com.digsolab;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Widths of the columns of one sheet. Columns without a fixed width are sized while the rows stream
+ * through: every value written updates the longest rendered length of its column, measured in
+ * characters the way Excel displays the value with the column mask. No font metrics are involved.
+ */
+final class ColumnWidths {
+
+    static final int MAX_CHARS = 255;
+
+    private static final int GENERAL_CHARS = 11;
+    private static final int PADDING_CHARS = 1;
+
+    private final int[] fixedWidths;
+    private final RenderedLength[] lengths;
+    private final int[] maxChars;
+    private final int maxWidthChars;
+
+    ColumnWidths(Format[] formats, int maxWidthChars) {
+        this.fixedWidths = new int[formats.length];
+        this.lengths = new RenderedLength[formats.length];
+        this.maxChars = new int[formats.length];
+        this.maxWidthChars = maxWidthChars;
+        for (int column = 0; column < formats.length; column++) {
+            fixedWidths[column] = formats[column].getWidth();
+            if (fixedWidths[column] == -1) {
+                lengths[column] = RenderedLength.forMask(formats[column].getMask());
+            }
+        }
+    }
+
+    int size() {
+        return fixedWidths.length;
+    }
+
+    /**
+     * True when at least one column is sized by its content.
+     */
+    boolean isTracking() {
+        for (RenderedLength length : lengths) {
+            if (length != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void text(int column, String value) {
+        if (column < lengths.length && lengths[column] != null) {
+            int lineStart = 0;
+            int lineEnd;
+            int longest = 0;
+            while ((lineEnd = value.indexOf('\n', lineStart)) >= 0) {
+                longest = Math.max(longest, lineEnd - lineStart);
+                lineStart = lineEnd + 1;
+            }
+            update(column, Math.max(longest, value.length() - lineStart));
+        }
+    }
+
+    void number(int column, double value) {
+        if (column < lengths.length && lengths[column] != null) {
+            update(column, lengths[column].of(value));
+        }
+    }
+
+    void bool(int column, boolean value) {
+        if (column < lengths.length && lengths[column] != null) {
+            update(column, value ? 4 : 5);
+        }
+    }
+
+    private void update(int column, int chars) {
+        if (maxChars[column] < chars) {
+            maxChars[column] = chars;
+        }
+    }
+
+    /**
+     * Width in 1/256 of a character: the fixed width of the column or the longest value seen so far,
+     * capped at the maximum width.
+     */
+    int getWidth(int column) {
+        if (lengths[column] == null) {
+            return fixedWidths[column];
+        }
+        return Math.min(maxChars[column] + PADDING_CHARS, maxWidthChars) * 256;
+    }
+
+    /**
+     * Rendered length of numbers (and date serials) in a column with a given mask.
+     */
+    private abstract static class RenderedLength {
+
+        abstract int of(double value);
+
+        static RenderedLength forMask(String mask) {
+            if (mask == null || mask.equalsIgnoreCase("General")) {
+                return new GeneralLength();
+            }
+            if (DateUtil.isADateFormat(-1, mask)) {
+                return new FixedLength(dateLength(mask));
+            }
+            return NumberMaskLength.compile(mask);
+        }
+
+        static int integerDigits(double value) {
+            int digits = 1;
+            for (double limit = 10; limit <= value && digits < 309; limit *= 10) {
+                digits++;
+            }
+            return digits;
+        }
+
+        private static int dateLength(String mask) {
+            int length = 0;
+            for (int i = 0; i < mask.length(); ) {
+                char c = mask.charAt(i);
+                if (c == '"') {
+                    int end = mask.indexOf('"', i + 1);
+                    end = (end < 0) ? mask.length() : end;
+                    length += end - i - 1;
+                    i = end + 1;
+                }
+                else if (c == '[') {
+                    int end = mask.indexOf(']', i);
+                    end = (end < 0) ? mask.length() : end;
+                    // elapsed time like [h] is rendered, colours and locales are not
+                    char first = (i + 1 < end) ? Character.toLowerCase(mask.charAt(i + 1)) : ' ';
+                    length += (first == 'h' || first == 'm' || first == 's') ? Math.max(end - i - 1, 2) : 0;
+                    i = end + 1;
+                }
+                else if (c == '\\') {
+                    length++;
+                    i += 2;
+                }
+                else if (mask.regionMatches(true, i, "AM/PM", 0, 5)) {
+                    length += 2;
+                    i += 5;
+                }
+                else if (mask.regionMatches(true, i, "A/P", 0, 3)) {
+                    length++;
+                    i += 3;
+                }
+                else if (Character.isLetter(c)) {
+                    int run = i;
+                    char lower = Character.toLowerCase(c);
+                    while (run < mask.length() && Character.toLowerCase(mask.charAt(run)) == lower) {
+                        run++;
+                    }
+                    length += tokenLength(lower, run - i);
+                    i = run;
+                }
+                else {
+                    length++;
+                    i++;
+                }
+            }
+            return length;
+        }
+
+        private static int tokenLength(char letter, int count) {
+            switch (letter) {
+                case 'm':
+                    // mmm is Jan, mmmm is September, mmmmm is J
+                    return (count == 3) ? 3 : (count == 4) ? 9 : (count >= 5) ? 1 : 2;
+                case 'd':
+                    return (count == 3) ? 3 : (count >= 4) ? 9 : 2;
+                case 'y':
+                    return (count <= 2) ? 2 : 4;
+                case 'h':
+                case 's':
+                    return 2;
+                default:
+                    return count;
+            }
+        }
+    }
+
+    private static final class FixedLength extends RenderedLength {
+
+        private final int length;
+
+        FixedLength(int length) {
+            this.length = length;
+        }
+
+        @Override
+        int of(double value) {
+            return length;
+        }
+    }
+
+    /**
+     * Excel's General format: integers in full up to 11 digits, everything else within 11 characters.
+     */
+    private static final class GeneralLength extends RenderedLength {
+
+        @Override
+        int of(double value) {
+            int sign = (value < 0) ? 1 : 0;
+            double abs = Math.abs(value);
+            double integral = Math.floor(abs);
+            int digits = integerDigits(integral);
+            if (integral == abs) {
+                return sign + Math.min(digits, GENERAL_CHARS);
+            }
+            int fraction = 0;
+            double scaled = abs;
+            while (digits + 1 + fraction < GENERAL_CHARS
+                    && Math.abs(scaled - Math.rint(scaled)) > 1e-9 * Math.max(scaled, 1)) {
+                scaled *= 10;
+                fraction++;
+            }
+            return sign + Math.min(digits + 1 + fraction, GENERAL_CHARS);
+        }
+    }
+
+    /**
+     * Number masks like "#,##0.00", "0%" or "### ###.###": the integer part grows with the value,
+     * the decimals and the literals are fixed.
+     */
+    private static final class NumberMaskLength extends RenderedLength {
+
+        private final int minIntegerDigits;
+        private final int fixedChars;
+        private final boolean grouping;
+        private final boolean percent;
+        private final boolean signed;
+
+        private NumberMaskLength(int minIntegerDigits, int fixedChars, boolean grouping, boolean percent,
+                                 boolean signed) {
+            this.minIntegerDigits = minIntegerDigits;
+            this.fixedChars = fixedChars;
+            this.grouping = grouping;
+            this.percent = percent;
+            this.signed = signed;
+        }
+
+        static RenderedLength compile(String mask) {
+            int minIntegerDigits = 0;
+            int fixedChars = 0;
+            boolean grouping = false;
+            boolean percent = false;
+            boolean fraction = false;
+            boolean exponent = false;
+            boolean sections = false;
+            int i = 0;
+            for (; i < mask.length(); i++) {
+                char c = mask.charAt(i);
+                if (c == ';') {
+                    sections = true;
+                    break;
+                }
+                switch (c) {
+                    case '"':
+                        int end = mask.indexOf('"', i + 1);
+                        end = (end < 0) ? mask.length() : end;
+                        fixedChars += end - i - 1;
+                        i = end;
+                        break;
+                    case '[':
+                        end = mask.indexOf(']', i);
+                        i = (end < 0) ? mask.length() : end;
+                        break;
+                    case '\\':
+                    case '_':
+                        fixedChars++;
+                        i++;
+                        break;
+                    case '*':
+                        i++;
+                        break;
+                    case '0':
+                    case '#':
+                    case '?':
+                        if (fraction || exponent) {
+                            fixedChars += (c == '#' && exponent) ? 0 : 1;
+                        }
+                        else if (c != '#') {
+                            minIntegerDigits++;
+                        }
+                        break;
+                    case '.':
+                        fraction = true;
+                        fixedChars++;
+                        break;
+                    case ',':
+                        grouping |= !fraction;
+                        break;
+                    case '%':
+                        percent = true;
+                        fixedChars++;
+                        break;
+                    case 'E':
+                    case 'e':
+                        exponent = true;
+                        fixedChars++;
+                        break;
+                    default:
+                        fixedChars++;
+                        break;
+                }
+            }
+            if (exponent) {
+                return new FixedLength(fixedChars + Math.max(minIntegerDigits, 1) + 1);
+            }
+            return new NumberMaskLength(minIntegerDigits, fixedChars, grouping, percent, !sections);
+        }
+
+        @Override
+        int of(double value) {
+            double abs = Math.abs(percent ? value * 100 : value);
+            int digits = (abs < 1) ? 0 : integerDigits(abs);
+            digits = Math.max(digits, minIntegerDigits);
+            int length = digits + fixedChars;
+            if (grouping && digits > 3) {
+                length += (digits - 1) / 3;
+            }
+            return (signed && value < 0) ? length + 1 : length;
+        }
+    }
+}
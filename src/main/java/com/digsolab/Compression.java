@@ -0,0 +1,82 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Compression of a csv source, recognized by the file extension or else by the magic bytes.
+ */
+enum Compression {
+
+    NONE(null),
+
+    /**
+     * A single gzip compressed csv.
+     */
+    GZIP(".gz"),
+
+    /**
+     * A zip archive, every csv entry of it is a source of its own.
+     */
+    ZIP(".zip");
+
+    static final int HEADER_LENGTH = 4;
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    static Compression of(File file) throws IOException {
+        Compression byName = ofName(file.getName());
+        if (byName != NONE || !file.isFile()) {
+            return byName;
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) >= 0) {
+                length += read;
+            }
+        }
+        return of(header, length);
+    }
+
+    static Compression ofName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ENGLISH);
+        for (Compression compression : values()) {
+            if (compression.extension != null && name.endsWith(compression.extension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Recognizes the first {@code length} bytes of a source.
+     */
+    static Compression of(byte[] header, int length) {
+        if (length >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b) {
+            return GZIP;
+        }
+        if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return ZIP;
+        }
+        return NONE;
+    }
+
+    /**
+     * The file name without the extension of this compression, "data.csv.gz" gives "data.csv".
+     */
+    String stripExtension(String fileName) {
+        if (extension == null || !fileName.toLowerCase(Locale.ENGLISH).endsWith(extension)) {
+            return fileName;
+        }
+        return fileName.substring(0, fileName.length() - extension.length());
+    }
+}
@@ -0,0 +1,149 @@
+package com.digsolab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Forwards conversion command lines to a {@link ConversionServer} on the same machine. Relative paths
+ * of a job are resolved against the working directory sent with it. Every request starts with the
+ * token the server wrote to its token file.
+ */
+public class ConversionClient {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int port;
+    private final File tokenFile;
+
+    public ConversionClient(int port) {
+        this(port, ConversionServer.getDefaultTokenFile());
+    }
+
+    public ConversionClient(int port, File tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+    }
+
+    /**
+     * Converts on the server and waits until the job is finished.
+     */
+    public JobStatus run(File workingDirectory, String[] args) throws IOException {
+        return send(ConversionServer.RUN, workingDirectory, args, 0);
+    }
+
+    /**
+     * Queues the conversion on the server and returns right away.
+     */
+    public JobStatus submit(File workingDirectory, String[] args) throws IOException {
+        return send(ConversionServer.SUBMIT, workingDirectory, args, 0);
+    }
+
+    public JobStatus getStatus(long id) throws IOException {
+        return send(ConversionServer.STATUS, null, null, id);
+    }
+
+    private JobStatus send(int command, File workingDirectory, String[] args, long id) throws IOException {
+        // read for every request, a restarted server writes a new token
+        String token = new String(Files.readAllBytes(tokenFile.toPath()), UTF_8).trim();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(token);
+            out.writeInt(command);
+            if (command == ConversionServer.STATUS) {
+                out.writeLong(id);
+            }
+            else {
+                out.writeUTF(workingDirectory.getAbsolutePath());
+                out.writeInt(args.length);
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+            }
+            out.flush();
+            return JobStatus.readFrom(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+        }
+    }
+
+    /**
+     * Command line client: {@code [-port N] [-tokenfile FILE] [-async | -status ID] <conversion options>}.
+     * Returns the exit code, 0 when the job is done or queued.
+     */
+    static int run(String[] args) {
+        int port = ConversionServer.DEFAULT_PORT;
+        File tokenFile = ConversionServer.getDefaultTokenFile();
+        boolean async = false;
+        Long statusId = null;
+        int first = 0;
+        try {
+            while (first < args.length) {
+                if (args[first].equals("-port") && first + 1 < args.length) {
+                    port = Integer.parseInt(args[first + 1]);
+                    first += 2;
+                }
+                else if (args[first].equals("-tokenfile") && first + 1 < args.length) {
+                    tokenFile = new File(args[first + 1]);
+                    first += 2;
+                }
+                else if (args[first].equals("-status") && first + 1 < args.length) {
+                    statusId = Long.parseLong(args[first + 1]);
+                    first += 2;
+                }
+                else if (args[first].equals("-async")) {
+                    async = true;
+                    first++;
+                }
+                else {
+                    break;
+                }
+            }
+        }
+        catch (NumberFormatException numEx) {
+            System.out.printf("Invalid client option: %s\n", numEx.getMessage());
+            return 1;
+        }
+        String[] conversionArgs = Arrays.copyOfRange(args, first, args.length);
+        ConversionClient client = new ConversionClient(port, tokenFile);
+        JobStatus status;
+        try {
+            if (statusId != null) {
+                status = client.getStatus(statusId);
+            }
+            else if (Arrays.asList(conversionArgs).contains("-help")) {
+                new ConverterOptions().parseOptions(conversionArgs);
+                return 0;
+            }
+            else {
+                File workingDirectory = new File("").getAbsoluteFile();
+                status = async ? client.submit(workingDirectory, conversionArgs)
+                        : client.run(workingDirectory, conversionArgs);
+            }
+        }
+        catch (Exception ex) {
+            System.out.printf("Error while contacting the conversion server on port %d: %s\n", port, ex.getMessage());
+            return 1;
+        }
+        if (status.getState() == JobStatus.State.FAILED) {
+            System.out.printf("Error while performing conversion: %s\n", status.getMessage());
+        }
+        else {
+            System.out.println(status);
+        }
+        switch (status.getState()) {
+            case QUEUED:
+            case RUNNING:
+            case DONE:
+                return 0;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Timings and volumes of one conversion. Phases running on several threads, like the reader and the
+ * converter of the pipeline or parallel sheets, add up their time, so their sum can exceed the elapsed
+ * time. While the conversion runs the metrics are registered as {@code com.digsolab:type=Conversion,id=<n>}
+ * MXBean, {@code n} counting the conversions of the JVM so concurrent ones do not collide, and the temp
+ * files and the heap are sampled in the background for their high-water marks.
+ */
+public final class ConversionMetrics implements ConversionMetricsMXBean {
+
+    enum Phase {
+        /**
+         * Opening the workbook and the sources, up to the first record of every source.
+         */
+        OPEN,
+        /**
+         * Reading, filtering and tokenizing the records.
+         */
+        PARSE,
+        /**
+         * Typing the fields, measuring the column widths and writing the cells.
+         */
+        CONVERT,
+        /**
+         * Setting the column widths and the autofilter of the sheets.
+         */
+        FINISH,
+        /**
+         * Writing the remaining parts of the workbook and zipping it.
+         */
+        SAVE
+    }
+
+    private static final Logger log = Logger.getLogger(ConversionMetrics.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long SAMPLE_INTERVAL_MS = 100;
+    /**
+     * Records counted by a reader before they are added to the shared row count.
+     */
+    private static final int PUBLISHED_RECORDS = 1024;
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final String destination;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong csvBytes = new AtomicLong();
+    private final Map<String, Long> fallbacks = new LinkedHashMap<>();
+    private volatile String state = Phase.OPEN.name();
+    private volatile long endNanos;
+    private volatile WorkbookWriter workbookWriter;
+    private long peakTempFileBytes;
+    private Map<String, Long> sheetTempFileBytes = new LinkedHashMap<>();
+    private long heapHighWaterBytes;
+    private Timer sampler;
+    private ObjectName name;
+
+    ConversionMetrics(String destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Registers the MXBean and starts sampling. The heap used by the JVM is sampled, conversions running
+     * at the same time share it but do not reset each other's high-water marks.
+     */
+    void start() {
+        sampler = new Timer("exceller-metrics", true);
+        sampler.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, 0, SAMPLE_INTERVAL_MS);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("com.digsolab:type=Conversion,id=" + ids.incrementAndGet());
+            server.registerMBean(this, objectName);
+            name = objectName;
+        }
+        catch (JMException jmEx) {
+            log.warn("The conversion metrics are not published over JMX: " + jmEx.getMessage());
+        }
+    }
+
+    /**
+     * Takes the last samples, stops sampling and unregisters the MXBean.
+     */
+    void stop(boolean succeeded) {
+        sample();
+        endNanos = System.nanoTime();
+        state = succeeded ? "DONE" : "FAILED";
+        workbookWriter = null;
+        if (sampler != null) {
+            sampler.cancel();
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            catch (JMException jmEx) {
+                log.warn("The conversion metrics cannot be unregistered: " + jmEx.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Samples the temp files of {@code workbookWriter} until the conversion stops.
+     */
+    void watch(WorkbookWriter workbookWriter) {
+        this.workbookWriter = workbookWriter;
+    }
+
+    void enter(Phase phase) {
+        state = phase.name();
+    }
+
+    void addTime(Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    synchronized void addFallbacks(String source, String column, long count) {
+        String key = source + ": " + column;
+        Long previous = fallbacks.get(key);
+        fallbacks.put(key, (previous != null) ? previous + count : count);
+    }
+
+    /**
+     * Reader counting the records of {@code reader} as rows and the time spent reading them as parsing.
+     */
+    MeteredReader meter(CsvReader reader) {
+        return new MeteredReader(reader);
+    }
+
+    /**
+     * Channel counting the csv bytes read from {@code channel}.
+     */
+    ReadableByteChannel meter(ReadableByteChannel channel) {
+        return new MeteredChannel(channel);
+    }
+
+    private synchronized void sample() {
+        WorkbookWriter writer = workbookWriter;
+        if (writer != null) {
+            peakTempFileBytes = Math.max(peakTempFileBytes, writer.getTempFileBytes());
+            sheetTempFileBytes = writer.getSheetTempFileBytes();
+        }
+        heapHighWaterBytes = Math.max(heapHighWaterBytes,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    @Override
+    public String getDestination() {
+        return destination;
+    }
+
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long end = (endNanos != 0) ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            millis.put(phase.name().toLowerCase(Locale.ENGLISH),
+                    TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase.ordinal())));
+        }
+        return millis;
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public long getCsvBytes() {
+        return csvBytes.get();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return perSecond(getRows());
+    }
+
+    @Override
+    public double getCsvBytesPerSecond() {
+        return perSecond(getCsvBytes());
+    }
+
+    private double perSecond(long count) {
+        long millis = getElapsedMillis();
+        return (millis > 0) ? count * 1000.0 / millis : 0;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getFallbacks() {
+        return new LinkedHashMap<>(fallbacks);
+    }
+
+    @Override
+    public synchronized long getPeakTempFileBytes() {
+        return peakTempFileBytes;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getSheetTempFileBytes() {
+        return new LinkedHashMap<>(sheetTempFileBytes);
+    }
+
+    @Override
+    public synchronized long getHeapHighWaterBytes() {
+        return heapHighWaterBytes;
+    }
+
+    /**
+     * The metrics as a single line JSON object.
+     */
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\"destination\":");
+        appendString(json, destination);
+        json.append(",\"state\":");
+        appendString(json, state);
+        json.append(",\"elapsedMillis\":").append(getElapsedMillis()).append(",\"phaseMillis\":");
+        appendMap(json, getPhaseMillis());
+        json.append(",\"rows\":").append(getRows())
+                .append(",\"csvBytes\":").append(getCsvBytes())
+                .append(",\"rowsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getRowsPerSecond()))
+                .append(",\"csvBytesPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getCsvBytesPerSecond()))
+                .append(",\"fallbacks\":");
+        appendMap(json, getFallbacks());
+        json.append(",\"peakTempFileBytes\":").append(getPeakTempFileBytes()).append(",\"sheetTempFileBytes\":");
+        appendMap(json, getSheetTempFileBytes());
+        json.append(",\"heapHighWaterBytes\":").append(getHeapHighWaterBytes());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends the JSON of the metrics as a line to {@code file}, so batch runs collect one line per workbook.
+     */
+    void appendTo(File file) throws IOException {
+        String line = toJson() + "\n";
+        synchronized (ConversionMetrics.class) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF_8)) {
+                writer.write(line);
+            }
+        }
+    }
+
+    private static void appendMap(StringBuilder json, Map<String, Long> map) {
+        json.append('{');
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            if (json.charAt(json.length() - 1) != '{') {
+                json.append(',');
+            }
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Times the reads of the reader it decorates and counts the records returned. The counts are added to
+     * the metrics in steps, so the threads of parallel sheets rarely touch the shared counters.
+     */
+    final class MeteredReader implements CsvReader {
+
+        private final CsvReader reader;
+        private long records;
+        private long nanos;
+        private long publishedNanos;
+
+        private MeteredReader(CsvReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public List<String> read() throws IOException {
+            long start = System.nanoTime();
+            List<String> record = reader.read();
+            nanos += System.nanoTime() - start;
+            if (record == null) {
+                publish();
+            }
+            else if (++records == PUBLISHED_RECORDS) {
+                publish();
+            }
+            return record;
+        }
+
+        /**
+         * Nanoseconds spent in {@link #read()} so far.
+         */
+        long getNanos() {
+            return nanos;
+        }
+
+        private void publish() {
+            addRows(records);
+            addTime(Phase.PARSE, nanos - publishedNanos);
+            records = 0;
+            publishedNanos = nanos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            publish();
+            reader.close();
+        }
+    }
+
+    private final class MeteredChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel channel;
+
+        MeteredChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int length = channel.read(dst);
+            if (length > 0) {
+                csvBytes.addAndGet(length);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
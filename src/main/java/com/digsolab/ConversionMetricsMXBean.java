@@ -0,0 +1,45 @@
+package com.digsolab;
+
+import java.util.Map;
+
+/**
+ * Progress of a running conversion as published over JMX, see {@link ConversionMetrics}.
+ */
+public interface ConversionMetricsMXBean {
+
+    String getDestination();
+
+    /**
+     * The phase the conversion is in, DONE or FAILED once it is over.
+     */
+    String getState();
+
+    long getElapsedMillis();
+
+    /**
+     * Milliseconds spent per phase, summed over the threads working on it.
+     */
+    Map<String, Long> getPhaseMillis();
+
+    long getRows();
+
+    long getCsvBytes();
+
+    double getRowsPerSecond();
+
+    double getCsvBytesPerSecond();
+
+    /**
+     * Values written as text because they could not be parsed, per source and column.
+     */
+    Map<String, Long> getFallbacks();
+
+    long getPeakTempFileBytes();
+
+    /**
+     * Bytes of the temp file of every sheet, 0 for sheets written without one.
+     */
+    Map<String, Long> getSheetTempFileBytes();
+
+    long getHeapHighWaterBytes();
+}
@@ -0,0 +1,207 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Converts the remaining rows of a csv source on three threads: a reader thread tokenizing records
+ * into row batches, a converter thread typing them into {@link CellBatch}es and the calling thread
+ * writing the cells into the sheet. A fixed set of batches circulates through bounded queues, so a
+ * slow stage holds the others back instead of buffering the file in memory. A failure travels
+ * downstream with its batch: the rows before it are written, then it is thrown with its row index.
+ */
+final class ConversionPipeline {
+
+    private static final int BATCH_ROWS = 1024;
+    private static final int BATCHES = 8;
+
+    private final CsvReader csvReader;
+    private final ColumnEncoder[] encoders;
+    private final int colCount;
+    private final String source;
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> converted = new ArrayBlockingQueue<>(BATCHES);
+
+    ConversionPipeline(CsvReader csvReader, ColumnEncoder[] encoders, int colCount, String source) {
+        this.csvReader = csvReader;
+        this.encoders = encoders;
+        this.colCount = colCount;
+        this.source = source;
+    }
+
+    /**
+     * Converts all records left in the reader into rows starting at {@code firstRowIndex}, returns the
+     * index following the last row written.
+     */
+    int run(final CellWriter out, final int firstRowIndex) throws IOException {
+        for (int i = 0; i < BATCHES; i++) {
+            free.add(new Batch(colCount));
+        }
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(firstRowIndex);
+            }
+        }, "exceller-reader");
+        Thread converter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                convert();
+            }
+        }, "exceller-converter");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        reader.start();
+        converter.start();
+        try {
+            while (true) {
+                Batch batch = converted.take();
+                batch.cells.replay(out);
+                if (batch.failure != null) {
+                    rethrow(batch);
+                }
+                if (batch.last) {
+                    return batch.firstRowIndex + batch.cells.getRowCount();
+                }
+                free.put(batch);
+            }
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The conversion was interrupted");
+        }
+        finally {
+            // stops the stages still blocked on a queue after a failure
+            reader.interrupt();
+            converter.interrupt();
+            join(reader);
+            join(converter);
+        }
+    }
+
+    private void read(int rowIndex) {
+        try {
+            while (true) {
+                Batch batch = free.take();
+                batch.reset(rowIndex);
+                try {
+                    List<String> record;
+                    while (batch.size < BATCH_ROWS && (record = csvReader.read()) != null) {
+                        String[] row = batch.rows[batch.size];
+                        for (int cellnum = 0; cellnum < colCount; cellnum++) {
+                            row[cellnum] = record.get(cellnum);
+                        }
+                        batch.size++;
+                        rowIndex++;
+                    }
+                    batch.last = batch.size < BATCH_ROWS;
+                }
+                catch (Throwable error) {
+                    batch.fail(error, rowIndex);
+                }
+                parsed.put(batch);
+                if (batch.last) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException intEx) {
+            // the pipeline is shut down
+        }
+    }
+
+    private void convert() {
+        try {
+            while (true) {
+                Batch batch = parsed.take();
+                CellBatch cells = batch.cells;
+                int row = 0;
+                try {
+                    for (; row < batch.size; row++) {
+                        String[] fields = batch.rows[row];
+                        cells.startRow(batch.firstRowIndex + row);
+                        for (int cellnum = 0; cellnum < colCount; cellnum++) {
+                            String data = fields[cellnum];
+                            encoders[cellnum].encode(cells, (data != null) ? data : "");
+                        }
+                        cells.endRow();
+                    }
+                }
+                catch (Throwable error) {
+                    batch.fail(error, batch.firstRowIndex + row);
+                }
+                converted.put(batch);
+                if (batch.last) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException intEx) {
+            // the pipeline is shut down
+        }
+    }
+
+    private void rethrow(Batch batch) throws IOException {
+        if (batch.failure instanceof IOException) {
+            throw (IOException) batch.failure;
+        }
+        if (batch.failure instanceof RuntimeException) {
+            throw CsvToXlsConverter.rowError(source, batch.failedRowIndex, (RuntimeException) batch.failure);
+        }
+        throw (Error) batch.failure;
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException intEx) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Batch {
+
+        final String[][] rows;
+        final CellBatch cells;
+        int firstRowIndex;
+        int size;
+        boolean last;
+        Throwable failure;
+        int failedRowIndex;
+
+        Batch(int colCount) {
+            rows = new String[BATCH_ROWS][colCount];
+            cells = new CellBatch(BATCH_ROWS, colCount);
+        }
+
+        void reset(int firstRowIndex) {
+            this.firstRowIndex = firstRowIndex;
+            size = 0;
+            last = false;
+            cells.clear();
+        }
+
+        /**
+         * Keeps the rows before the earliest failing one and ends the pipeline after this batch.
+         */
+        void fail(Throwable error, int rowIndex) {
+            if (failure == null || rowIndex < failedRowIndex) {
+                failure = error;
+                failedRowIndex = rowIndex;
+            }
+            size = Math.min(size, rowIndex - firstRowIndex);
+            last = true;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.digsolab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+/**
+ * Keeps a warm JVM converting jobs sent by {@link ConversionClient}s over a loopback socket, so
+ * small conversions do not pay for the JVM start, the class loading of POI and the logger setup.
+ * A job is the command line of a regular conversion plus the working directory of the client. Jobs
+ * wait in a bounded queue for a fixed pool of workers, a job arriving at a full queue is rejected.
+ * <p>
+ * The loopback socket is open to every local user, so the server writes a random token to a file only
+ * its owner can read and rejects the connections that do not present it.
+ * <p>
+ * A request is the token, then a command followed by its arguments, the reply is a {@link JobStatus}:
+ * {@link #RUN} and {@link #SUBMIT} send the working directory and the conversion arguments, RUN
+ * answers once the job is finished, SUBMIT as soon as it is queued. {@link #STATUS} sends a job id.
+ */
+public class ConversionServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7077;
+
+    static final int RUN = 1;
+    static final int SUBMIT = 2;
+    static final int STATUS = 3;
+
+    private static final int MAX_JOBS_KEPT = 10000;
+    private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Logger log = Logger.getLogger(ConversionServer.class);
+
+    public static class ServerParams {
+
+        @Parameter(names = "-port", description = "Loopback port the server listens on")
+        public int port = DEFAULT_PORT;
+
+        @Parameter(names = "-workers", description = "Number of jobs converted at the same time")
+        public int workers = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = "-queue", description = "Number of jobs waiting for a worker before new jobs are rejected")
+        public int queue = 64;
+
+        @Parameter(names = "-tokenfile", description = "File the server writes the token its clients must present " +
+                "to, readable by its owner only")
+        public String tokenFile = getDefaultTokenFile().getPath();
+
+        @Parameter(names = "-help", help = true, hidden = true)
+        public boolean help;
+    }
+
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService connections;
+    private final AtomicLong jobIds = new AtomicLong();
+    private final byte[] token;
+    private final Map<Long, Job> jobs = new LinkedHashMap<Long, Job>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Job> eldest) {
+            return size() > MAX_JOBS_KEPT;
+        }
+    };
+
+    public ConversionServer(int port, int workerCount, int queueSize) throws IOException {
+        this(port, workerCount, queueSize, getDefaultTokenFile());
+    }
+
+    /**
+     * Server whose clients read their token from {@code tokenFile}, which is replaced by a new token.
+     */
+    public ConversionServer(int port, int workerCount, int queueSize, File tokenFile) throws IOException {
+        if (workerCount < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("The number of workers and the queue size must be at least 1");
+        }
+        token = writeToken(tokenFile).getBytes(UTF_8);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), namedThreads("exceller-worker-"));
+        connections = Executors.newCachedThreadPool(namedThreads("exceller-connection-"));
+    }
+
+    /**
+     * Runs a server with the command line options of {@link ServerParams} until the process ends.
+     */
+    static void serve(String[] args) throws IOException {
+        ServerParams params = new ServerParams();
+        JCommander jcommander = new JCommander(params, args);
+        if (params.help) {
+            System.out.printf("A csv to excel conversion server\n\n");
+            jcommander.usage();
+            return;
+        }
+        CsvToXlsConverter.initLogger();
+        try (ConversionServer server = new ConversionServer(params.port, params.workers, params.queue,
+                new File(params.tokenFile))) {
+            log.info(String.format("Conversion server listening on port %d with %d worker(s)", server.getPort(),
+                    params.workers));
+            server.serve();
+        }
+    }
+
+    /**
+     * {@code ~/.exceller/server.token}, the token file of the servers and clients not given one.
+     */
+    static File getDefaultTokenFile() {
+        return new File(new File(System.getProperty("user.home"), ".exceller"), "server.token");
+    }
+
+    /**
+     * Writes a new random token to {@code file}, created readable and writable by its owner only where the
+     * file system has POSIX permissions, and returns it.
+     */
+    private static String writeToken(File file) throws IOException {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder token = new StringBuilder();
+        for (byte b : random) {
+            token.append(String.format("%02x", b & 0xFF));
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        Path temp;
+        try {
+            if (!directory.isDirectory()) {
+                Files.createDirectories(directory.toPath(),
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            temp = Files.createTempFile(directory.toPath(), "server", ".token",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch (UnsupportedOperationException unsEx) {
+            Files.createDirectories(directory.toPath());
+            temp = Files.createTempFile(directory.toPath(), "server", ".token");
+            File tempFile = temp.toFile();
+            tempFile.setReadable(false, false);
+            tempFile.setWritable(false, false);
+            tempFile.setReadable(true, true);
+            tempFile.setWritable(true, true);
+        }
+        try {
+            Files.write(temp, (token + "\n").getBytes(UTF_8));
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        return token.toString();
+    }
+
+    private static ThreadFactory namedThreads(final String prefix) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, prefix + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections on a background thread.
+     */
+    public void start() {
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serve();
+                }
+                catch (IOException ioEx) {
+                    log.error("The conversion server stopped: " + ioEx.getMessage());
+                }
+            }
+        }, "exceller-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (IOException ioEx) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw ioEx;
+            }
+            connections.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+        connections.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            connection.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+            if (!MessageDigest.isEqual(token, in.readUTF().getBytes(UTF_8))) {
+                log.warn("Rejected a client connection without the server token");
+                new JobStatus(0, JobStatus.State.REJECTED, "The server token is missing or wrong").writeTo(out);
+                out.flush();
+                return;
+            }
+            int command = in.readInt();
+            JobStatus status;
+            if (command == STATUS) {
+                status = getStatus(in.readLong());
+            }
+            else if (command == RUN || command == SUBMIT) {
+                File workingDirectory = new File(in.readUTF());
+                String[] args = new String[in.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+                Job job = submit(workingDirectory, args);
+                if (command == RUN) {
+                    job.done.await();
+                }
+                status = job.status;
+            }
+            else {
+                throw new IOException("Unknown command " + command);
+            }
+            status.writeTo(out);
+            out.flush();
+        }
+        catch (IOException ioEx) {
+            log.warn("Client connection failed: " + ioEx.getMessage());
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Job submit(File workingDirectory, String[] args) {
+        Job job = new Job(jobIds.incrementAndGet(), workingDirectory, args);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+        }
+        try {
+            workers.execute(job);
+        }
+        catch (RejectedExecutionException rejEx) {
+            job.finish(JobStatus.State.REJECTED, "The job queue is full");
+        }
+        return job;
+    }
+
+    JobStatus getStatus(long id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        return (job != null) ? job.status : new JobStatus(id, JobStatus.State.UNKNOWN, null);
+    }
+
+    private static final class Job implements Runnable {
+
+        final long id;
+        final File workingDirectory;
+        final String[] args;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile JobStatus status;
+
+        Job(long id, File workingDirectory, String[] args) {
+            this.id = id;
+            this.workingDirectory = workingDirectory;
+            this.args = args;
+            this.status = new JobStatus(id, JobStatus.State.QUEUED, null);
+        }
+
+        @Override
+        public void run() {
+            status = new JobStatus(id, JobStatus.State.RUNNING, null);
+            try {
+                if (Arrays.asList(args).contains("-help")) {
+                    // the usage would end the server process, the client prints it instead
+                    throw new IllegalArgumentException("The usage is not printed by the server");
+                }
+                ConverterOptions options = new ConverterOptions();
+                options.parseOptions(args, workingDirectory);
+                if (options.readsStandardInput() || options.writesToStandardOutput()) {
+                    throw new IllegalArgumentException("The server does not read or write the standard streams");
+                }
+                Exceller.convert(options);
+                finish(JobStatus.State.DONE, null);
+            }
+            catch (Exception ex) {
+                finish(JobStatus.State.FAILED, ex.getMessage());
+            }
+            catch (Throwable error) {
+                finish(JobStatus.State.FAILED, error.toString());
+            }
+        }
+
+        void finish(JobStatus.State state, String message) {
+            status = new JobStatus(id, state, message);
+            done.countDown();
+        }
+    }
+}
@@ -1,20 +1,35 @@
 package com.digsolab;
 
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.cli.ParseException;
+import org.apache.poi.ss.SpreadsheetVersion;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.beust.jcommander.JCommander;
+import com.beust.jcommander.converters.IParameterSplitter;
 
+/**
+ * Conversion settings, parsed from the command line by {@link #parseOptions(String[])} or assembled with
+ * a {@link Builder}. Options are not changed once parsed or built, so one instance can be shared by any
+ * number of concurrent conversions.
+ */
 public class ConverterOptions {
 
     @Parameters(commandDescription = "A csv to excel conversion tool")
     private class JCommanderParams {
 
-        @Parameter(description = "Input csv files (separated by semicolon) and destination folder (optional)")
+        @Parameter(description = "Input csv files (separated by semicolon, - for stdin) and destination folder (optional)")
         public List<String> files = new ArrayList<>();
 
         @Parameter(names = "-h", description = "String containing header names separated by semicolon")
@@ -26,6 +41,10 @@ public class ConverterOptions {
         @Parameter(names = "-columns", description = "String containing column patterns separated by semicolon")
         public String columnPatterns;
 
+        @Parameter(names = "-infer", description = "Number of rows sampled to infer the formats of the columns " +
+                "without a pattern, 0 for text columns")
+        public int inferRows = 0;
+
         @Parameter(names = "-il", description = "Iterate last pattern. Apply last column pattern " +
                 "to the rest of the columns in the table")
         public boolean shouldRepeatLastFormat = false;
@@ -33,25 +52,224 @@ public class ConverterOptions {
         @Parameter(names = "-n", description = "Perform a slice. Retrieve only n columns from csv")
         public int colCount;
 
-        @Parameter(names = "-output", description = "Output path")
+        @Parameter(names = "-select", description = "Columns to convert in their sheet order, separated by " +
+                "semicolon: column numbers starting at 1 or header names (with -H)")
+        public String selection;
+
+        @Parameter(names = "-where", description = "Row condition on a raw field, e.g. status=open, amount>=100 " +
+                "or email~@example\\.com$ (=, !=, <, <=, >, >=, ~ for a regex). Repeat for several conditions, " +
+                "which all have to hold", splitter = WholeValueSplitter.class)
+        public List<String> conditions = new ArrayList<>();
+
+        @Parameter(names = "-skip", description = "Number of csv records skipped before the conditions are tested")
+        public long skip = 0;
+
+        @Parameter(names = "-head", description = "Maximum number of rows converted, 0 for all")
+        public long head = 0;
+
+        @Parameter(names = "-every", description = "Converts every n-th record matching the conditions")
+        public long every = 1;
+
+        @Parameter(names = "-sample", description = "Fraction of the records converted, picked at random")
+        public double sample = 1;
+
+        @Parameter(names = "-seed", description = "Seed of the random -sample, for repeatable samples")
+        public Long seed;
+
+        @Parameter(names = "-output", description = "Output path, - for stdout")
         public String outPath;
 
+        @Parameter(names = "-dateinput", description = "Input pattern of date values, e.g. dd.MM.yyyy HH:mm " +
+                "(y, M, d, H, h, m, s, S, a, E). By default ISO timestamps and values laid out like the column mask are accepted")
+        public String dateInputPattern;
+
+        @Parameter(names = "-numlocale", description = "Locale of number values, e.g. de-DE. Sets the decimal " +
+                "and grouping separators and the currency symbol")
+        public String numberLocale;
+
+        @Parameter(names = "-decimalsep", description = "Decimal separator of number values")
+        public String decimalSeparator;
+
+        @Parameter(names = "-groupsep", description = "Grouping (thousands) separator of number values")
+        public String groupingSeparator;
+
+        @Parameter(names = "-currency", description = "Currency symbols separated by semicolon, accepted " +
+                "before or after number values")
+        public String currencySymbols;
+
+        @Parameter(names = "-percent", description = "Accept a percent suffix on number values, 50% is written as 0.5")
+        public boolean percent = false;
+
+        @Parameter(names = "-charset", description = "Charset of the csv files, e.g. UTF-8 or windows-1251. " +
+                "Defaults to the platform charset")
+        public String charset;
+
+        @Parameter(names = "-delimiter", description = "Field delimiter of the csv files, \\t for tab")
+        public String delimiter = ",";
+
+        @Parameter(names = "-quote", description = "Quote character of the csv files")
+        public String quote = "\"";
+
+        @Parameter(names = "-escape", description = "Escape character inside quoted fields, e.g. \\. " +
+                "Defaults to the quote character (doubled quotes)")
+        public String escape;
+
+        @Parameter(names = "-reader", description = "Csv reader: nio (byte level tokenizer) or supercsv")
+        public String reader = "nio";
+
+        @Parameter(names = "-pipeline", description = "Read, convert and write on separate threads")
+        public boolean pipelined = false;
+
+        @Parameter(names = "-threads", description = "Number of csv files converted at the same time, " +
+                "each into its own sheet. Requires the stream engine")
+        public int threads = 1;
+
+        @Parameter(names = "-batch", description = "Convert every csv file of the sources (files, directories " +
+                "or globs like data/*.csv) into a workbook of its own")
+        public boolean batch = false;
+
+        @Parameter(names = "-outdir", description = "Output directory of the workbooks in batch mode, of the " +
+                "csv files with -tocsv")
+        public String outDir;
+
+        @Parameter(names = "-jobs", description = "Number of files converted at the same time in batch mode")
+        public int jobs = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = "-inflight", description = "Maximum total size in MB of the csv files converted " +
+                "at the same time in batch mode, bounds the temp files and heap used. 0 for no limit")
+        public int inFlightMb = 0;
+
+        @Parameter(names = "-maxwidth", description = "Maximum width in characters of the columns sized " +
+                "by their content")
+        public int maxWidth = ColumnWidths.MAX_CHARS;
+
+        @Parameter(names = "-maxrows", description = "Maximum number of rows of a sheet including the header, " +
+                "further rows continue on a new sheet with the same header")
+        public int maxRows = MAX_ROWS;
+
+        @Parameter(names = "-engine", description = "Output engine: poi (Apache POI SXSSF) or stream " +
+                "(sheet xml streamed straight into the xlsx zip, sheets with content sized columns are deflated " +
+                "into a temp file first)")
+        public String engine = "poi";
+
+        @Parameter(names = "-window", description = "Rows of a sheet the poi engine keeps in memory before " +
+                "flushing them to its temp file, or auto to adapt the window to the free heap")
+        public String window = String.valueOf(DEFAULT_WINDOW);
+
+        @Parameter(names = "-tempdir", description = "Directory of the temp files, defaults to java.io.tmpdir")
+        public String tempDir;
+
+        @Parameter(names = "-compresstemp", description = "Gzip the temp files of the poi engine, which " +
+                "are several times the size of the workbook otherwise")
+        public boolean compressTemp = false;
+
+        @Parameter(names = "-level", description = "Compression level of the xlsx, from 0 (stored blocks, " +
+                "fastest) to 9 (smallest)")
+        public int level = DEFAULT_LEVEL;
+
+        @Parameter(names = "-deflatethreads", description = "Number of threads deflating the parts of the " +
+                "xlsx in blocks, 1 deflates on the thread writing the part")
+        public int deflateThreads = 1;
+
+        @Parameter(names = "-cache", description = "Directory caching the sheets of the stream engine, a " +
+                "source unchanged since an earlier run with the same options reuses its sheets")
+        public String cacheDir;
+
+        @Parameter(names = "-cachesize", description = "Maximum size in MB of the sheet cache, the least " +
+                "recently used sheets are evicted")
+        public int cacheMb = DEFAULT_CACHE_MB;
+
+        @Parameter(names = "-tocsv", description = "Convert the sheets of xlsx workbooks back into csv files, " +
+                "with the column patterns, charset, delimiter and quotes of the csv options")
+        public boolean toCsv = false;
+
+        @Parameter(names = "-sheets", description = "Sheets converted with -tocsv, separated by semicolon: " +
+                "sheet numbers starting at 1 or sheet names. All sheets by default")
+        public String sheets;
+
+        @Parameter(names = "-metrics", description = "File the timings and volumes of every conversion are " +
+                "appended to as a line of JSON")
+        public String metricsFile;
+
         @Parameter(names = "-help", help = true, hidden = true)
         public boolean help;
 
     }
 
+    /**
+     * Keeps the value of a list option in one piece, a regex of a condition may contain commas.
+     */
+    public static final class WholeValueSplitter implements IParameterSplitter {
+
+        @Override
+        public List<String> split(String value) {
+            return Collections.singletonList(value);
+        }
+    }
+
+    static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    static final int DEFAULT_WINDOW = 100;
+    static final int DEFAULT_LEVEL = 6;
+    static final int DEFAULT_CACHE_MB = 1024;
+    /**
+     * Row window of the poi engine following the free heap.
+     */
+    public static final int ADAPTIVE_WINDOW = 0;
+    private static final String ADAPTIVE_WINDOW_ARG = "auto";
+    /**
+     * Source or output path standing for stdin or stdout.
+     */
+    static final String STANDARD_STREAM = "-";
+    private static final String STANDARD_INPUT_ARG = "<standard input>";
+
     private JCommanderParams jcp = null;
     private static final String COLUMNS_DELIMETER = ";";
     private static final String FORMAT_STRING_PATTERN = "^([BDHNT])([^W]*)(W([\\d]+))?$";
+    private static final Format DEFAULT_FORMAT = new Format(Type.TEXT, null, -1);
+    /**
+     * Mask of the H pattern selecting links written as HYPERLINK formulas, e.g. HFW8000.
+     */
+    private static final String LINK_FORMULA_MASK = "F";
 
     private Format[] formats = null;
+    private boolean repeatLastFormat = false;
+    private int inferRows = 0;
+    private String[] headers = null;
+    private boolean readHeaders = false;
+    private int colCount = 0;
+    private ColumnSelection selection = null;
+    private RowFilter rowFilter = null;
     private String[] sourceFiles = null;
+    private String destination = null;
     private Pattern formatPattern = null;
+    private DateParser dateInputParser = null;
+    private NumberParser numberParser = NumberParser.DEFAULT;
+    private OutputEngine engine = OutputEngine.POI;
+    private InputEngine inputEngine = InputEngine.NIO;
+    private CsvDialect dialect = CsvDialect.STANDARD;
+    private boolean pipelined = false;
+    private int threads = 1;
+    private boolean batch = false;
+    private boolean toCsv = false;
+    private String[] sheets = null;
+    private String outDir = null;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private int inFlightMb = 0;
+    private int maxWidth = ColumnWidths.MAX_CHARS;
+    private int maxRows = MAX_ROWS;
+    private int window = DEFAULT_WINDOW;
+    private String tempDir = null;
+    private boolean compressTemp = false;
+    private int level = DEFAULT_LEVEL;
+    private int deflateThreads = 1;
+    private String cacheDir = null;
+    private int cacheMb = DEFAULT_CACHE_MB;
+    private String metricsFile = null;
+    private File workingDirectory = null;
 
     private void getCLIArgs(String[] args) throws ParseException {
         jcp = new JCommanderParams();
-        JCommander jcommander = new JCommander(jcp, args);
+        JCommander jcommander = new JCommander(jcp, markStandardInput(args));
         if (jcp.help) {
             System.out.printf("A csv to excel conversion tool\n\n");
             jcommander.usage();
@@ -59,15 +277,115 @@ public class ConverterOptions {
         }
     }
 
+    /**
+     * Masks a leading "-" source (e.g. "-" or "-;b.csv"), which JCommander takes for an unknown option.
+     * A "-" following an option with a value is left to be that value, e.g. "-output -".
+     */
+    private static String[] markStandardInput(String[] args) {
+        Set<String> valueOptions = new HashSet<>();
+        for (Field field : JCommanderParams.class.getFields()) {
+            Parameter parameter = field.getAnnotation(Parameter.class);
+            if (parameter != null && field.getType() != boolean.class) {
+                valueOptions.addAll(Arrays.asList(parameter.names()));
+            }
+        }
+        String[] marked = args.clone();
+        for (int i = 0; i < marked.length; i++) {
+            boolean standardInput = marked[i].equals(STANDARD_STREAM)
+                    || marked[i].startsWith(STANDARD_STREAM + COLUMNS_DELIMETER);
+            if (standardInput && (i == 0 || !valueOptions.contains(args[i - 1]))) {
+                marked[i] = STANDARD_INPUT_ARG + marked[i].substring(STANDARD_STREAM.length());
+            }
+        }
+        return marked;
+    }
+
     private void parseConverterOptions() {
         parseFilenames();
         parseFormats();
+        parseDateInputPattern();
+        parseNumberOptions();
+        parseEngine();
+        parseDialect();
+        if (jcp.headerNames != null) {
+            headers = jcp.headerNames.split(COLUMNS_DELIMETER);
+        }
+        readHeaders = jcp.shouldReadHeaderString;
+        repeatLastFormat = jcp.shouldRepeatLastFormat;
+        inferRows = jcp.inferRows;
+        colCount = jcp.colCount;
+        if (jcp.selection != null) {
+            selection = ColumnSelection.parse(jcp.selection.split(COLUMNS_DELIMETER));
+        }
+        rowFilter = new RowFilter(jcp.conditions, numberParser, jcp.skip, jcp.head, jcp.every, jcp.sample,
+                jcp.seed);
+        destination = jcp.outPath;
+        pipelined = jcp.pipelined;
+        threads = jcp.threads;
+        batch = jcp.batch;
+        toCsv = jcp.toCsv;
+        if (jcp.sheets != null) {
+            sheets = jcp.sheets.split(COLUMNS_DELIMETER);
+        }
+        outDir = jcp.outDir;
+        jobs = jcp.jobs;
+        inFlightMb = jcp.inFlightMb;
+        maxWidth = jcp.maxWidth;
+        maxRows = jcp.maxRows;
+        window = parseWindow(jcp.window);
+        tempDir = jcp.tempDir;
+        compressTemp = jcp.compressTemp;
+        level = jcp.level;
+        deflateThreads = jcp.deflateThreads;
+        cacheDir = jcp.cacheDir;
+        cacheMb = jcp.cacheMb;
+        metricsFile = jcp.metricsFile;
+        validate();
+    }
+
+    private void validate() {
+        if (inferRows < 0) {
+            throw new IllegalArgumentException("The number of rows sampled for the inference must not be negative");
+        }
+        checkThreads();
+        checkMaxWidth();
+        checkMaxRows();
+        checkWindow();
+        checkCompression();
+        checkCache();
+        checkBatch();
+        checkToCsv();
+        checkStandardStreams();
+        checkSelection();
+        checkRowFilter();
+    }
+
+    private void checkSelection() {
+        if (selection == null) {
+            return;
+        }
+        if (colCount != 0) {
+            throw new IllegalArgumentException("A column selection cannot be combined with -n");
+        }
+        if (selection.hasNames() && !readHeaders) {
+            throw new IllegalArgumentException("Selecting columns by name requires the header record (-H)");
+        }
+    }
+
+    private void checkRowFilter() {
+        if (rowFilter != null && rowFilter.hasNames() && !readHeaders) {
+            throw new IllegalArgumentException("Row conditions on column names require the header record (-H)");
+        }
     }
 
     private void parseFilenames() {
         List<String> args = jcp.files;
         if (args.size() > 0) {
-            this.sourceFiles = args.get(0).split(COLUMNS_DELIMETER);
+            String sources = args.get(0);
+            if (sources.startsWith(STANDARD_INPUT_ARG)) {
+                sources = STANDARD_STREAM + sources.substring(STANDARD_INPUT_ARG.length());
+            }
+            this.sourceFiles = sources.split(COLUMNS_DELIMETER);
         }
         else {
             throw new IllegalArgumentException("You haven't provided the CSV source");
@@ -77,19 +395,195 @@ public class ConverterOptions {
     private void parseFormats()  {
         String columnsParamsString = jcp.columnPatterns;
         if (columnsParamsString != null) {
-            String[] columnParams = columnsParamsString.split(COLUMNS_DELIMETER);
-            formats = new Format[columnParams.length];
-            String currentFormat;
-            formatPattern = Pattern.compile(FORMAT_STRING_PATTERN);
-            for (int i = 0; i < columnParams.length; i++) {
-                currentFormat = columnParams[i];
-                Format format = createFormat(currentFormat);
-                if (format == null) {
-                    throw new IllegalArgumentException("The columns pattern string is in invalid format");
-                }
-                formats[i] = format;
+            parseFormats(columnsParamsString.split(COLUMNS_DELIMETER));
+        }
+    }
+
+    private void parseFormats(String[] columnParams) {
+        formats = new Format[columnParams.length];
+        String currentFormat;
+        formatPattern = Pattern.compile(FORMAT_STRING_PATTERN);
+        for (int i = 0; i < columnParams.length; i++) {
+            currentFormat = columnParams[i];
+            if (currentFormat.isEmpty()) {
+                // the column keeps the default or the inferred format
+                continue;
+            }
+            Format format = createFormat(currentFormat);
+            if (format == null) {
+                throw new IllegalArgumentException("The columns pattern string is in invalid format");
+            }
+            formats[i] = format;
+        }
+    }
+
+    private void parseDateInputPattern() {
+        if (jcp.dateInputPattern != null) {
+            dateInputParser = DateParser.forPattern(jcp.dateInputPattern);
+        }
+    }
+
+    private void parseNumberOptions() {
+        NumberParser parser = (jcp.numberLocale != null) ? NumberParser.forLocale(jcp.numberLocale)
+                : NumberParser.DEFAULT;
+        parser = parser.withSeparators(parseCharacter(jcp.decimalSeparator, "decimal separator"),
+                parseCharacter(jcp.groupingSeparator, "grouping separator"));
+        if (jcp.currencySymbols != null) {
+            parser = parser.withCurrencySymbols(jcp.currencySymbols.split(COLUMNS_DELIMETER));
+        }
+        numberParser = parser.withPercent(jcp.percent);
+    }
+
+    private void parseEngine() {
+        try {
+            engine = OutputEngine.valueOf(jcp.engine.toUpperCase(Locale.ENGLISH));
+        }
+        catch (IllegalArgumentException illArgEx) {
+            throw new IllegalArgumentException(String.format("Unknown output engine: %s", jcp.engine));
+        }
+    }
+
+    private void checkThreads() {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        if (threads > 1 && !engine.isConcurrent()) {
+            throw new IllegalArgumentException("Parallel conversion requires the stream engine");
+        }
+    }
+
+    private void checkMaxWidth() {
+        if (maxWidth < 1 || maxWidth > ColumnWidths.MAX_CHARS) {
+            throw new IllegalArgumentException(String.format("The maximum column width must be between 1 and %d",
+                    ColumnWidths.MAX_CHARS));
+        }
+    }
+
+    private static int parseWindow(String window) {
+        if (window.equalsIgnoreCase(ADAPTIVE_WINDOW_ARG)) {
+            return ADAPTIVE_WINDOW;
+        }
+        try {
+            int rows = Integer.parseInt(window);
+            if (rows >= 1) {
+                return rows;
+            }
+        }
+        catch (NumberFormatException numEx) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Invalid window %s, expected a number of rows or auto",
+                window));
+    }
+
+    private void checkWindow() {
+        if (window < 0) {
+            throw new IllegalArgumentException("The window must be a positive number of rows or auto");
+        }
+    }
+
+    private void checkCompression() {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("The compression level must be between 0 and 9");
+        }
+        if (deflateThreads < 1) {
+            throw new IllegalArgumentException("The number of deflate threads must be at least 1");
+        }
+    }
+
+    private void checkCache() {
+        if (cacheDir == null) {
+            return;
+        }
+        if (engine != OutputEngine.STREAM) {
+            throw new IllegalArgumentException("The sheet cache requires the stream engine");
+        }
+        if (cacheMb < 1) {
+            throw new IllegalArgumentException("The sheet cache size must be at least 1 MB");
+        }
+    }
+
+    private void checkMaxRows() {
+        if (maxRows < 2 || maxRows > MAX_ROWS) {
+            throw new IllegalArgumentException(String.format("The maximum number of rows must be between 2 and %d",
+                    MAX_ROWS));
+        }
+    }
+
+    private void checkBatch() {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("The number of batch jobs must be at least 1");
+        }
+        if (inFlightMb < 0) {
+            throw new IllegalArgumentException("The batch in-flight limit must not be negative");
+        }
+        if (batch && destination != null) {
+            throw new IllegalArgumentException("Batch mode writes into the -outdir directory, not to -output");
+        }
+    }
+
+    private void checkToCsv() {
+        if (!toCsv) {
+            if (sheets != null) {
+                throw new IllegalArgumentException("Selecting sheets requires -tocsv");
             }
+            return;
+        }
+        if (batch) {
+            throw new IllegalArgumentException("The csv conversion cannot be combined with -batch");
+        }
+        if (readsStandardInput()) {
+            throw new IllegalArgumentException("The csv conversion reads the workbooks from files");
+        }
+        if (destination != null && (outDir != null || sourceFiles.length > 1)) {
+            throw new IllegalArgumentException("The csv files of several sheets are written into -outdir, "
+                    + "not to -output");
+        }
+    }
+
+    private void checkStandardStreams() {
+        if (!readsStandardInput()) {
+            return;
+        }
+        if (Collections.frequency(Arrays.asList(sourceFiles), STANDARD_STREAM) > 1) {
+            throw new IllegalArgumentException("The standard input can only be read once");
+        }
+        if (batch) {
+            throw new IllegalArgumentException("Batch mode does not read the standard input");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("Converting the standard input requires an -output path or -");
+        }
+    }
+
+    private void parseDialect() {
+        try {
+            inputEngine = InputEngine.valueOf(jcp.reader.toUpperCase(Locale.ENGLISH));
+        }
+        catch (IllegalArgumentException illArgEx) {
+            throw new IllegalArgumentException(String.format("Unknown csv reader: %s", jcp.reader));
+        }
+        Charset charset;
+        try {
+            charset = (jcp.charset != null) ? Charset.forName(jcp.charset) : Charset.defaultCharset();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            throw new IllegalArgumentException(String.format("Unknown charset: %s", jcp.charset));
+        }
+        char delimiter = parseCharacter("\\t".equals(jcp.delimiter) ? "\t" : jcp.delimiter, "delimiter");
+        char quote = parseCharacter(jcp.quote, "quote character");
+        Character escape = parseCharacter(jcp.escape, "escape character");
+        dialect = new CsvDialect(charset, delimiter, quote, (escape != null) ? escape : quote);
+    }
+
+    private Character parseCharacter(String value, String name) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() != 1) {
+            throw new IllegalArgumentException(String.format("The %s must be a single character", name));
         }
+        return value.charAt(0);
     }
 
     private Format createFormat(String formatOptionsString) {
@@ -108,7 +602,8 @@ public class ConverterOptions {
                     format = new Format(Type.DATE,  mask, width);
                     break;
                 case "H":
-                    format = new Format(Type.HYPERLINK,  mask, width);
+                    format = LINK_FORMULA_MASK.equals(mask) ? new Format(Type.HYPERLINK_FORMULA, null, width)
+                            : new Format(Type.HYPERLINK,  mask, width);
                     break;
                 case "N":
                     format = new Format(Type.NUMBER, mask, width);
@@ -122,46 +617,613 @@ public class ConverterOptions {
         return format;
     }
 
+    /**
+     * The pattern string of {@code formats}, the counterpart of {@link #createFormat(String)}.
+     */
+    static String toPatterns(Format[] formats) {
+        StringBuilder patterns = new StringBuilder();
+        for (Format format : formats) {
+            if (patterns.length() > 0) {
+                patterns.append(COLUMNS_DELIMETER);
+            }
+            switch (format.getType()) {
+                case BOOLEAN:
+                    patterns.append('B');
+                    break;
+                case DATE:
+                    patterns.append('D');
+                    break;
+                case HYPERLINK:
+                    patterns.append('H');
+                    break;
+                case HYPERLINK_FORMULA:
+                    patterns.append('H').append(LINK_FORMULA_MASK);
+                    break;
+                case NUMBER:
+                    patterns.append('N');
+                    break;
+                default:
+                    patterns.append('T');
+                    break;
+            }
+            if (format.getMask() != null) {
+                patterns.append(format.getMask());
+            }
+            if (format.getWidth() >= 0) {
+                patterns.append('W').append(format.getWidth());
+            }
+        }
+        return patterns.toString();
+    }
+
     public void parseOptions(String[] args) throws ParseException {
+        parseOptions(args, null);
+    }
+
+    /**
+     * Parses the options of a conversion whose relative paths are resolved against {@code workingDirectory}
+     * instead of the current directory of the process, used for jobs submitted to a {@link ConversionServer}.
+     */
+    void parseOptions(String[] args, File workingDirectory) throws ParseException {
+        this.workingDirectory = workingDirectory;
         getCLIArgs(args);
         parseConverterOptions();
     }
 
+    File resolve(String path) {
+        File file = new File(path);
+        return (workingDirectory == null || file.isAbsolute()) ? file : new File(workingDirectory, path);
+    }
+
     public Format getFormat(int index) {
-        if (this.formats == null) {
-            return new Format(Type.TEXT, null, -1);
+        Format format = getPattern(index);
+        return (format != null) ? format : DEFAULT_FORMAT;
+    }
+
+    /**
+     * The format given by a column pattern, null when the column has none.
+     */
+    Format getPattern(int index) {
+        if (this.formats == null || formats.length == 0) {
+            return null;
         }
         else if (index < formats.length) {
             return formats[index];
         }
-        else if (jcp.shouldRepeatLastFormat) {
+        else if (repeatLastFormat) {
             return formats[formats.length - 1];
         }
         else {
-            return new Format(Type.TEXT, null, -1);
+            return null;
         }
     }
 
+    /**
+     * Number of rows sampled per source to infer the formats of the columns without a pattern, 0 for none.
+     */
+    public int getInferRows() {
+        return inferRows;
+    }
+
     public String[] getSource() {
         return this.sourceFiles;
     }
 
+    /**
+     * True when one of the sources is stdin.
+     */
+    public boolean readsStandardInput() {
+        return sourceFiles != null && Arrays.asList(sourceFiles).contains(STANDARD_STREAM);
+    }
+
+    /**
+     * True when the workbook is streamed to stdout.
+     */
+    public boolean writesToStandardOutput() {
+        return STANDARD_STREAM.equals(destination);
+    }
+
     public String getDestination() {
-        return jcp.outPath;
+        return destination;
     }
 
     public boolean shouldReadHeaderString() {
-        return jcp.shouldReadHeaderString;
+        return readHeaders;
     }
 
     public String[] getHeaders() {
-        if (jcp.headerNames != null) {
-            return jcp.headerNames.split(COLUMNS_DELIMETER);
-        }
-        return null;
+        return (headers != null) ? headers.clone() : null;
     }
 
     public int getColCount() {
-        return jcp.colCount;
+        return colCount;
+    }
+
+    /**
+     * Columns to convert, null for the columns of the csv in their order.
+     */
+    ColumnSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Records to convert, null for all of them.
+     */
+    RowFilter getRowFilter() {
+        return (rowFilter != null && !rowFilter.isEmpty()) ? rowFilter : null;
+    }
+
+    DateParser getDateInputParser() {
+        return dateInputParser;
+    }
+
+    NumberParser getNumberParser() {
+        return numberParser;
+    }
+
+    public InputEngine getInputEngine() {
+        return inputEngine;
+    }
+
+    CsvDialect getDialect() {
+        return dialect;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public String getOutputDirectory() {
+        return outDir;
+    }
+
+    /**
+     * True when the sources are workbooks converted back into csv files.
+     */
+    public boolean isToCsv() {
+        return toCsv;
+    }
+
+    /**
+     * Sheets converted back into csv, by number starting at 1 or by name, null for all.
+     */
+    String[] getSheets() {
+        return (sheets != null) ? sheets.clone() : null;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * In-flight limit of batch mode in bytes, 0 for no limit.
+     */
+    public long getInFlightLimit() {
+        return inFlightMb * (1L << 20);
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public OutputEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Rows of a sheet the poi engine keeps in memory, {@link #ADAPTIVE_WINDOW} when it follows the free heap.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Directory of the temp files, null for java.io.tmpdir.
+     */
+    File getTempDirectory() {
+        if (tempDir == null) {
+            return null;
+        }
+        File directory = resolve(tempDir);
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException(String.format("The temp directory %s does not exist", tempDir));
+        }
+        return directory;
+    }
+
+    public boolean isTempCompressed() {
+        return compressTemp;
+    }
+
+    /**
+     * Deflate level of the parts of the xlsx, 0 to 9.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Threads deflating the parts of the xlsx in blocks, 1 when the writing thread deflates them itself.
+     */
+    public int getDeflateThreads() {
+        return deflateThreads;
+    }
+
+    /**
+     * Directory of the sheet cache, null for none.
+     */
+    File getCacheDirectory() {
+        return (cacheDir != null) ? resolve(cacheDir) : null;
+    }
+
+    long getCacheBytes() {
+        return cacheMb * (1L << 20);
+    }
+
+    /**
+     * The options that shape the sheets of a source, sheets converted with equal fingerprints from the
+     * same csv bytes are equal.
+     */
+    String getSheetFingerprint() {
+        StringBuilder fingerprint = new StringBuilder("formats ");
+        if (formats != null) {
+            for (Format format : formats) {
+                if (format != null) {
+                    fingerprint.append(format.getType()).append(' ').append(format.getMask()).append(' ')
+                            .append(format.getWidth());
+                }
+                fingerprint.append(';');
+            }
+        }
+        fingerprint.append("\nrepeat last ").append(repeatLastFormat)
+                .append("\ninfer ").append(inferRows)
+                .append("\nheaders ").append((headers != null) ? Arrays.asList(headers) : null)
+                .append("\nread headers ").append(readHeaders)
+                .append("\ncolumns ").append(colCount)
+                .append("\nselection ").append(selection)
+                .append("\nrows ").append(rowFilter)
+                .append("\ndate input ").append(dateInputParser)
+                .append("\nnumbers ").append(numberParser)
+                .append("\ndialect ").append(dialect)
+                .append("\nengine ").append(engine)
+                .append("\nmax width ").append(maxWidth)
+                .append("\nmax rows ").append(maxRows)
+                .append("\nlevel ").append(level);
+        return fingerprint.toString();
+    }
+
+    /**
+     * File the metrics of the conversions are appended to, null for none.
+     */
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Programmatic counterpart of the command line options for conversions of streams. Every call of
+     * {@link #build()} returns new options, the builder can be changed and built again afterwards.
+     */
+    public static final class Builder {
+
+        private String[] headers;
+        private boolean readHeaders;
+        private String[] columnPatterns;
+        private Format[] formats;
+        private boolean repeatLastFormat;
+        private int inferRows;
+        private int colCount;
+        private String[] selection;
+        private List<String> conditions = new ArrayList<>();
+        private long skip;
+        private long head;
+        private long every = 1;
+        private double sample = 1;
+        private Long seed;
+        private String dateInputPattern;
+        private String numberLocale;
+        private Character decimalSeparator;
+        private Character groupingSeparator;
+        private String[] currencySymbols;
+        private boolean percent;
+        private Charset charset = Charset.defaultCharset();
+        private char delimiter = ',';
+        private char quote = '"';
+        private Character escape;
+        private InputEngine reader = InputEngine.NIO;
+        private OutputEngine engine = OutputEngine.POI;
+        private boolean pipelined;
+        private int threads = 1;
+        private int maxWidth = ColumnWidths.MAX_CHARS;
+        private int maxRows = MAX_ROWS;
+        private int window = DEFAULT_WINDOW;
+        private File tempDir;
+        private boolean compressTemp;
+        private int level = DEFAULT_LEVEL;
+        private int deflateThreads = 1;
+        private File cacheDir;
+        private int cacheMb = DEFAULT_CACHE_MB;
+        private File workingDirectory;
+
+        private Builder() {
+        }
+
+        public Builder headers(String... headers) {
+            this.headers = headers.clone();
+            return this;
+        }
+
+        /**
+         * Takes the headers from the first record of every source.
+         */
+        public Builder readHeaders(boolean readHeaders) {
+            this.readHeaders = readHeaders;
+            return this;
+        }
+
+        /**
+         * Column patterns like the ones of the -columns option, e.g. "Dyyyy-mm-ddW7000".
+         */
+        public Builder columns(String... patterns) {
+            this.columnPatterns = patterns.clone();
+            this.formats = null;
+            return this;
+        }
+
+        public Builder columns(Format... formats) {
+            this.formats = formats.clone();
+            this.columnPatterns = null;
+            return this;
+        }
+
+        public Builder repeatLastColumn(boolean repeatLastFormat) {
+            this.repeatLastFormat = repeatLastFormat;
+            return this;
+        }
+
+        /**
+         * Infers the formats of the columns without a pattern from the first {@code rows} rows of every
+         * source, 0 leaves them text.
+         */
+        public Builder infer(int rows) {
+            this.inferRows = rows;
+            return this;
+        }
+
+        /**
+         * Converts only the first {@code colCount} columns, 0 for all of them.
+         */
+        public Builder columnCount(int colCount) {
+            this.colCount = colCount;
+            return this;
+        }
+
+        /**
+         * Converts the given columns in this order, column numbers starting at 1 or header names.
+         */
+        public Builder select(String... columns) {
+            this.selection = columns.clone();
+            return this;
+        }
+
+        /**
+         * Adds a row condition on a raw field like the -where option, e.g. "amount>=100".
+         */
+        public Builder where(String condition) {
+            this.conditions.add(condition);
+            return this;
+        }
+
+        public Builder skip(long skip) {
+            this.skip = skip;
+            return this;
+        }
+
+        public Builder head(long head) {
+            this.head = head;
+            return this;
+        }
+
+        public Builder every(long every) {
+            this.every = every;
+            return this;
+        }
+
+        /**
+         * Converts a random fraction of the records, repeatably with a non-null seed.
+         */
+        public Builder sample(double sample, Long seed) {
+            this.sample = sample;
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder dateInput(String pattern) {
+            this.dateInputPattern = pattern;
+            return this;
+        }
+
+        public Builder numberLocale(String languageTag) {
+            this.numberLocale = languageTag;
+            return this;
+        }
+
+        public Builder separators(Character decimalSeparator, Character groupingSeparator) {
+            this.decimalSeparator = decimalSeparator;
+            this.groupingSeparator = groupingSeparator;
+            return this;
+        }
+
+        public Builder currencySymbols(String... currencySymbols) {
+            this.currencySymbols = currencySymbols.clone();
+            return this;
+        }
+
+        public Builder percent(boolean percent) {
+            this.percent = percent;
+            return this;
+        }
+
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        public Builder delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        public Builder quote(char quote) {
+            this.quote = quote;
+            return this;
+        }
+
+        public Builder escape(char escape) {
+            this.escape = escape;
+            return this;
+        }
+
+        public Builder reader(InputEngine reader) {
+            this.reader = reader;
+            return this;
+        }
+
+        public Builder engine(OutputEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        public Builder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * Number of sources of a workbook converted at the same time, requires the stream engine.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder maxWidth(int maxWidth) {
+            this.maxWidth = maxWidth;
+            return this;
+        }
+
+        public Builder maxRows(int maxRows) {
+            this.maxRows = maxRows;
+            return this;
+        }
+
+        /**
+         * Rows of a sheet the poi engine keeps in memory, {@link #ADAPTIVE_WINDOW} to follow the free heap.
+         */
+        public Builder window(int window) {
+            this.window = window;
+            return this;
+        }
+
+        public Builder tempDirectory(File tempDir) {
+            this.tempDir = tempDir;
+            return this;
+        }
+
+        public Builder compressTemp(boolean compressTemp) {
+            this.compressTemp = compressTemp;
+            return this;
+        }
+
+        public Builder level(int level) {
+            this.level = level;
+            return this;
+        }
+
+        public Builder deflateThreads(int deflateThreads) {
+            this.deflateThreads = deflateThreads;
+            return this;
+        }
+
+        /**
+         * Caches the sheets of the stream engine in {@code cacheDir}, bounded to {@code cacheMb} MB.
+         */
+        public Builder cache(File cacheDir, int cacheMb) {
+            this.cacheDir = cacheDir;
+            this.cacheMb = cacheMb;
+            return this;
+        }
+
+        /**
+         * Directory the relative temp and cache directories are resolved against instead of the current
+         * directory of the process.
+         */
+        public Builder workingDirectory(File workingDirectory) {
+            this.workingDirectory = workingDirectory;
+            return this;
+        }
+
+        /**
+         * Compiles the options, failing like the command line with an IllegalArgumentException.
+         */
+        public ConverterOptions build() {
+            ConverterOptions options = new ConverterOptions();
+            if (columnPatterns != null) {
+                options.parseFormats(columnPatterns);
+            }
+            else if (formats != null) {
+                options.formats = Arrays.copyOf(formats, formats.length);
+            }
+            options.repeatLastFormat = repeatLastFormat;
+            options.inferRows = inferRows;
+            options.headers = (headers != null) ? headers.clone() : null;
+            options.readHeaders = readHeaders;
+            options.colCount = colCount;
+            if (selection != null) {
+                options.selection = ColumnSelection.parse(selection);
+            }
+            if (dateInputPattern != null) {
+                options.dateInputParser = DateParser.forPattern(dateInputPattern);
+            }
+            NumberParser parser = (numberLocale != null) ? NumberParser.forLocale(numberLocale) : NumberParser.DEFAULT;
+            parser = parser.withSeparators(decimalSeparator, groupingSeparator);
+            if (currencySymbols != null) {
+                parser = parser.withCurrencySymbols(currencySymbols.clone());
+            }
+            options.numberParser = parser.withPercent(percent);
+            options.rowFilter = new RowFilter(conditions, options.numberParser, skip, head, every, sample, seed);
+            options.dialect = new CsvDialect(charset, delimiter, quote, (escape != null) ? escape : quote);
+            options.inputEngine = reader;
+            options.engine = engine;
+            options.pipelined = pipelined;
+            options.threads = threads;
+            options.maxWidth = maxWidth;
+            options.maxRows = maxRows;
+            options.window = window;
+            options.tempDir = (tempDir != null) ? tempDir.getPath() : null;
+            options.compressTemp = compressTemp;
+            options.level = level;
+            options.deflateThreads = deflateThreads;
+            options.cacheDir = (cacheDir != null) ? cacheDir.getPath() : null;
+            options.cacheMb = cacheMb;
+            options.workingDirectory = workingDirectory;
+            options.validate();
+            return options;
+        }
     }
 }
@@ -0,0 +1,45 @@
+package com.digsolab;
+
+import java.nio.charset.Charset;
+
+/**
+ * Charset and structural characters of the csv input. The escape character equals the quote
+ * character for the standard doubled quotes.
+ */
+final class CsvDialect {
+
+    static final CsvDialect STANDARD = new CsvDialect(Charset.defaultCharset(), ',', '"', '"');
+
+    private final Charset charset;
+    private final char delimiter;
+    private final char quote;
+    private final char escape;
+
+    CsvDialect(Charset charset, char delimiter, char quote, char escape) {
+        this.charset = charset;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    char getDelimiter() {
+        return delimiter;
+    }
+
+    char getQuote() {
+        return quote;
+    }
+
+    char getEscape() {
+        return escape;
+    }
+
+    @Override
+    public String toString() {
+        return charset.name() + " delimiter " + delimiter + " quote " + quote + " escape " + escape;
+    }
+}
@@ -0,0 +1,17 @@
+package com.digsolab;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads csv records one after another.
+ */
+interface CsvReader extends Closeable {
+
+    /**
+     * Returns the next record or null at the end of the input. The returned list is only valid until
+     * the next call, fields are read from it as they are needed.
+     */
+    List<String> read() throws IOException;
+}
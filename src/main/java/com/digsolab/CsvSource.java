@@ -0,0 +1,297 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.poi.ss.util.WorkbookUtil;
+
+/**
+ * Csv input of one sheet: a file of the command line, a csv entry of a zip archive or a stream handed
+ * to {@link XlsxConverter}. Gzip compressed input is inflated on a read-ahead thread. Streams are read
+ * to their end but not closed, they belong to the caller.
+ */
+public final class CsvSource {
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+
+    private final String sheetName;
+    private final String path;
+    private final String entryName;
+    private final ReadableByteChannel channel;
+
+    private CsvSource(String sheetName, String path, String entryName, ReadableByteChannel channel) {
+        if (sheetName != null) {
+            WorkbookUtil.validateSheetName(sheetName);
+        }
+        this.sheetName = sheetName;
+        this.path = path;
+        this.entryName = entryName;
+        this.channel = channel;
+    }
+
+    /**
+     * Source of the sheet {@code sheetName}, null for the default name Sheet<i>index</i>.
+     */
+    public static CsvSource of(String sheetName, InputStream in) {
+        return new CsvSource(sheetName, null, null, Channels.newChannel(in));
+    }
+
+    public static CsvSource of(String sheetName, ReadableByteChannel channel) {
+        return new CsvSource(sheetName, null, null, channel);
+    }
+
+    /**
+     * Source of a file of the command line, stdin for "-".
+     */
+    static CsvSource ofFile(String path) {
+        if (path.equals(ConverterOptions.STANDARD_STREAM)) {
+            return new CsvSource(null, path, null, new FileInputStream(FileDescriptor.in).getChannel());
+        }
+        return new CsvSource(null, path, null, null);
+    }
+
+    /**
+     * Sources of a file of the command line: the csv entries of a zip archive in archive order, else the
+     * file itself.
+     */
+    static List<CsvSource> expand(String path, ConverterOptions options) throws IOException {
+        if (path.equals(ConverterOptions.STANDARD_STREAM)) {
+            return Collections.singletonList(ofFile(path));
+        }
+        File file = options.resolve(path);
+        if (!file.isFile() || Compression.of(file) != Compression.ZIP) {
+            return Collections.singletonList(ofFile(path));
+        }
+        List<CsvSource> sources = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.ENGLISH).endsWith(CSV_EXTENSION)) {
+                    sources.add(new CsvSource(null, path, entry.getName(), null));
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException(String.format("There is no csv file in the archive %s", path));
+        }
+        return sources;
+    }
+
+    String getSheetName() {
+        return sheetName;
+    }
+
+    /**
+     * Names the source in messages: the path of a file, the entry of an archive, the sheet of a stream.
+     */
+    String getDescription() {
+        if (entryName != null) {
+            return path + "!/" + entryName;
+        }
+        if (path != null) {
+            return (channel != null) ? "the standard input" : path;
+        }
+        return (sheetName != null) ? "sheet " + sheetName : "the csv stream";
+    }
+
+    /**
+     * Adds the bytes of the file of the source, the whole archive for an entry, to {@code digest}. False
+     * for a stream, its bytes can only be read once.
+     */
+    boolean digest(MessageDigest digest, ConverterOptions options) throws IOException {
+        if (path == null || channel != null) {
+            return false;
+        }
+        try (FileChannel file = FileChannel.open(options.resolve(path).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(INFLATER_BUFFER_SIZE);
+            while (file.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return true;
+    }
+
+    CsvReader open(ConverterOptions options) throws IOException {
+        return open(options, null);
+    }
+
+    /**
+     * Opens the reader of the source, counting the csv bytes into {@code metrics} unless it is null.
+     */
+    CsvReader open(ConverterOptions options, ConversionMetrics metrics) throws IOException {
+        ReadableByteChannel in = openChannel(options);
+        try {
+            return options.getInputEngine().open((metrics != null) ? metrics.meter(in) : in, options.getDialect());
+        }
+        catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * The csv bytes of the source, inflated when compressed.
+     */
+    private ReadableByteChannel openChannel(ConverterOptions options) throws IOException {
+        if (channel != null) {
+            return decompress(new BorrowedChannel(channel));
+        }
+        File source = options.resolve(path);
+        if (!source.exists()) {
+            throw new IllegalArgumentException("The source for the"
+                    + ".csv file(s) cannot be found");
+        }
+        if (source.isDirectory()) {
+            throw new IllegalArgumentException("The source path"
+                    + " is a directory");
+        }
+        if (entryName != null) {
+            return openEntry(source);
+        }
+        if (Compression.of(source) == Compression.GZIP) {
+            InputStream in = new FileInputStream(source);
+            try {
+                return inflate(in);
+            }
+            catch (IOException | RuntimeException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+        return FileChannel.open(source.toPath(), StandardOpenOption.READ);
+    }
+
+    private ReadableByteChannel openEntry(File source) throws IOException {
+        final ZipFile zip = new ZipFile(source);
+        try {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null) {
+                throw new IllegalArgumentException(String.format("%s cannot be found", getDescription()));
+            }
+            InputStream in = new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    zip.close();
+                }
+            };
+            return new ReadAheadChannel(in, "exceller-inflater");
+        }
+        catch (IOException | RuntimeException ex) {
+            zip.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Inflates a gzip stream, recognized by its magic bytes, on a read-ahead thread.
+     */
+    private ReadableByteChannel decompress(ReadableByteChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Compression.HEADER_LENGTH);
+        while (header.hasRemaining() && in.read(header) >= 0) {
+            // a pipe may hand out the header in pieces
+        }
+        header.flip();
+        Compression compression = Compression.of(header.array(), header.limit());
+        if (compression == Compression.ZIP) {
+            throw new IllegalArgumentException(String.format(
+                    "The zip archive of %s can only be read from a file", getDescription()));
+        }
+        if (compression == Compression.GZIP) {
+            return inflate(new SequenceInputStream(new ByteArrayInputStream(header.array(), 0, header.limit()),
+                    Channels.newInputStream(in)));
+        }
+        return new PrefixedChannel(header, in);
+    }
+
+    private static ReadableByteChannel inflate(InputStream in) throws IOException {
+        return new ReadAheadChannel(new GZIPInputStream(in, INFLATER_BUFFER_SIZE), "exceller-inflater");
+    }
+
+    /**
+     * Channel returning the bytes read ahead for recognizing the compression before the rest.
+     */
+    private static final class PrefixedChannel implements ReadableByteChannel {
+
+        private final ByteBuffer prefix;
+        private final ReadableByteChannel channel;
+
+        PrefixedChannel(ByteBuffer prefix, ReadableByteChannel channel) {
+            this.prefix = prefix;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!prefix.hasRemaining()) {
+                return channel.read(dst);
+            }
+            int length = Math.min(prefix.remaining(), dst.remaining());
+            for (int i = 0; i < length; i++) {
+                dst.put(prefix.get());
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Channel of the caller, closing it only stops reading from it.
+     */
+    private static final class BorrowedChannel implements ReadableByteChannel {
+
+        private final ReadableByteChannel channel;
+        private boolean open = true;
+
+        BorrowedChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open && channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -1,169 +1,544 @@
 package com.digsolab;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.streaming.SXSSFWorkbook;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
-import org.apache.poi.xssf.usermodel.XSSFFont;
-import org.supercsv.io.ICsvListReader;
-import org.supercsv.io.CsvListReader;
-import org.supercsv.prefs.CsvPreference;
 
 public class CsvToXlsConverter {
 
     private static final String EXCEL_EXTENSION = ".xlsx";
-    private static final String DATE_JAVA_PATTERN = "yyyy-mm-dd hh:mm:ss";
-    private static final int rowAccessWindowSize = 100;
+    private static final String PARTIAL_EXTENSION = ".part";
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
     private static final Logger log = Logger.getLogger(CsvToXlsConverter.class);
+    private static boolean loggerConfigured = false;
     private ConverterOptions options = null;
-    private ICsvListReader listReader = null;
-    private SXSSFWorkbook wb = null;
-    private ArrayList<CellStyle> cellStyles = null;
+    private CsvReader csvReader = null;
+    private WorkbookWriter workbookWriter = null;
+    private SheetWriter sheetWriter = null;
+    private ColumnEncoder[] encoders = null;
+    private Format[] formats = null;
+    private ConversionMetrics metrics = null;
     private int colCount;
 
+    public CsvToXlsConverter() {
+    }
+
+    /**
+     * Converter of single sources into sheets of a shared workbook, see {@link #convertInParallel}.
+     */
+    private CsvToXlsConverter(ConverterOptions options, WorkbookWriter workbookWriter, ConversionMetrics metrics) {
+        this.options = options;
+        this.workbookWriter = workbookWriter;
+        this.metrics = metrics;
+    }
+
     public void convertToExcel(ConverterOptions options) throws ParseException, NumberFormatException,
             IOException {
         this.options = options;
         String strDestination = options.getDestination();
         String[] sourceFiles = options.getSource();
-        initLogger();
+        // a workbook streamed to stdout must not get log lines mixed into it
+        initLogger(options.writesToStandardOutput() ? ConsoleAppender.SYSTEM_ERR : ConsoleAppender.SYSTEM_OUT);
         convertToXls(sourceFiles, strDestination);
     }
 
+    /**
+     * Converts a single source into a workbook of its own, used by {@link BatchConverter}.
+     */
+    void convertToExcel(ConverterOptions options, String source, String destination) throws ParseException,
+            IOException {
+        this.options = options;
+        initLogger();
+        convertToXls(new String[] {source}, destination);
+    }
+
+    /**
+     * Converts the sources into a workbook written to {@code out}, which is flushed but left open. Used
+     * by {@link XlsxConverter}, leaves the logger setup to the application: the column patterns, the values
+     * written as text and the save are logged at info level like on the command line.
+     */
+    void convertToXlsx(ConverterOptions options, List<CsvSource> sources, final OutputStream out) throws IOException {
+        this.options = options;
+        if (metrics == null) {
+            metrics = new ConversionMetrics(null);
+        }
+        OutputStream bufferedOut = new BufferedOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the stream belongs to the caller
+                flush();
+            }
+        }, OUTPUT_BUFFER_SIZE);
+        try {
+            long start = System.nanoTime();
+            workbookWriter = options.getEngine().open(bufferedOut, options);
+            metrics.addTime(ConversionMetrics.Phase.OPEN, System.nanoTime() - start);
+            metrics.watch(workbookWriter);
+            convertToXls(sources);
+            start = System.nanoTime();
+            metrics.enter(ConversionMetrics.Phase.SAVE);
+            saveXls();
+            bufferedOut.flush();
+            metrics.addTime(ConversionMetrics.Phase.SAVE, System.nanoTime() - start);
+        }
+        catch (ParseException parseEx) {
+            throw new IllegalArgumentException(parseEx.getMessage(), parseEx);
+        }
+        finally {
+            dispose();
+            if (csvReader != null) {
+                csvReader.close();
+            }
+        }
+    }
+
+    /**
+     * Converts the sources into {@code destination} with its metrics published over JMX and appended to
+     * the metrics file of the options.
+     */
     private void convertToXls(String[] sourceFiles, String destination)
             throws ParseException, NumberFormatException, IOException {
+        if (destination == null) {
+            destination = createResultFileName(sourceFiles[0]);
+        }
+        metrics = new ConversionMetrics(destination);
+        metrics.start();
+        boolean converted = false;
+        try {
+            convertToWorkbook(sourceFiles, destination);
+            converted = true;
+        }
+        finally {
+            metrics.stop(converted);
+            if (options.getMetricsFile() != null) {
+                try {
+                    metrics.appendTo(options.resolve(options.getMetricsFile()));
+                }
+                catch (IOException ioEx) {
+                    log.warn(String.format("The metrics cannot be written to %s: %s", options.getMetricsFile(),
+                            ioEx.getMessage()));
+                }
+            }
+        }
+        log.info(String.format("%d row(s) and %d csv byte(s) converted in %d ms", metrics.getRows(),
+                metrics.getCsvBytes(), metrics.getElapsedMillis()));
+    }
+
+    private void convertToWorkbook(String[] sourceFiles, String destination)
+            throws ParseException, NumberFormatException, IOException {
+        long start = System.nanoTime();
+        List<CsvSource> sources = new ArrayList<>(sourceFiles.length);
+        for (String strSource : sourceFiles) {
+            sources.addAll(CsvSource.expand(strSource, options));
+        }
+        if (ConverterOptions.STANDARD_STREAM.equals(destination)) {
+            log.info("Starting conversion to the standard output");
+            convertToXlsx(options, sources, new FileOutputStream(FileDescriptor.out));
+            log.info("Successfully saved");
+            return;
+        }
+        File outFile = prepareDestination(destination);
+        // the workbook is written next to the destination and only moved there once complete
+        File partFile = new File(outFile.getPath() + PARTIAL_EXTENSION);
+        OutputStream fout = null;
+        boolean saved = false;
         try {
             log.info("Starting conversion");
+            fout = new BufferedOutputStream(new FileOutputStream(partFile), OUTPUT_BUFFER_SIZE);
+            workbookWriter = options.getEngine().open(fout, options);
+            metrics.addTime(ConversionMetrics.Phase.OPEN, System.nanoTime() - start);
+            metrics.watch(workbookWriter);
             log.info("Converting csv to excel...");
-            convertToXls(sourceFiles);
-            log.info("Conversion complete. Starting saving process");
-            saveXls(destination != null ? destination : createResultFileName(sourceFiles[0]));
+            convertToXls(sources);
+            StyleRegistry styles = workbookWriter.getStyleRegistry();
+            log.info(String.format("Conversion complete, %d cell style(s) shared by %d column(s) and headers."
+                    + " Starting saving process", styles.getUniqueCount(), styles.getRequestedCount()));
+            start = System.nanoTime();
+            metrics.enter(ConversionMetrics.Phase.SAVE);
+            saveXls();
+            fout.close();
+            Files.move(partFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            metrics.addTime(ConversionMetrics.Phase.SAVE, System.nanoTime() - start);
+            saved = true;
         }
         finally {
-            if (wb != null) {
-                wb.dispose();
+            dispose();
+            if (csvReader != null) {
+                csvReader.close();
+            }
+            if (fout != null) {
+                fout.close();
             }
-            if (listReader != null) {
-                listReader.close();
+            if (!saved) {
+                partFile.delete();
             }
         }
         log.info("Successfully saved");
     }
 
+    /**
+     * Prepares an empty workbook with a single sheet and the column encoders for {@code colCount} columns
+     * without reading any csv. Used by the benchmarks to drive the row and cell conversion in isolation.
+     */
+    SheetWriter prepareSheet(ConverterOptions options, int colCount, OutputStream out) throws IOException {
+        this.options = options;
+        this.colCount = colCount;
+        workbookWriter = options.getEngine().open(out, options);
+        formats = resolveFormats(null);
+        encoders = compileEncoders();
+        sheetWriter = workbookWriter.createSheet(0, "Sheet0",
+                new ColumnWidths(formats, options.getMaxWidth()));
+        return sheetWriter;
+    }
+
+    void dispose() {
+        if (workbookWriter != null) {
+            workbookWriter.dispose();
+            workbookWriter = null;
+        }
+        sheetWriter = null;
+    }
+
     private String createResultFileName(String strSource) {
-        File source = new File(strSource);
-        String fileName = source.getName();
-        return "./" + fileName.substring(0, fileName.lastIndexOf('.')) + EXCEL_EXTENSION;
+        return "./" + getResultFileName(strSource);
     }
 
-    private void initLogger() {
+    static String getResultFileName(String strSource) {
+        String fileName = new File(strSource).getName();
+        fileName = Compression.ofName(fileName).stripExtension(fileName);
+        int extension = fileName.lastIndexOf('.');
+        return ((extension > 0) ? fileName.substring(0, extension) : fileName) + EXCEL_EXTENSION;
+    }
+
+    static void initLogger() {
+        initLogger(ConsoleAppender.SYSTEM_OUT);
+    }
+
+    /**
+     * Configures the console logging to {@code target} once per JVM, a warm server converts many jobs
+     * without paying for it again.
+     */
+    static synchronized void initLogger(String target) {
+        if (loggerConfigured) {
+            return;
+        }
+        loggerConfigured = true;
         Properties log4jProperties = new Properties();
         log4jProperties.setProperty("log4j.rootLogger", "INFO, myConsoleAppender");
         log4jProperties.setProperty("log4j.appender.myConsoleAppender", "org.apache.log4j.ConsoleAppender");
+        log4jProperties.setProperty("log4j.appender.myConsoleAppender.Target", target);
         log4jProperties.setProperty("log4j.appender.myConsoleAppender.layout", "org.apache.log4j.PatternLayout");
         log4jProperties.setProperty("log4j.appender.myConsoleAppender.layout.ConversionPattern", "%m%n");
         PropertyConfigurator.configure(log4jProperties);
     }
 
-    private void openCSV(String strSource) throws IOException {
-        File source = new File(strSource);
-        if (!source.exists()) {
-            throw new IllegalArgumentException("The source for the"
-                    + ".csv file(s) cannot be found");
+    private void convertToXls(List<CsvSource> sources) throws ParseException,
+            NumberFormatException, IOException {
+        Set<String> sheetNames = new HashSet<>();
+        for (CsvSource source : sources) {
+            String sheetName = source.getSheetName();
+            if (sheetName != null && !sheetNames.add(sheetName.toLowerCase(Locale.ENGLISH))) {
+                throw new IllegalArgumentException(String.format("Duplicate sheet name: %s", sheetName));
+            }
         }
-        if (source.isDirectory()) {
-            throw new IllegalArgumentException("The source path"
-                    + " is a directory");
+        int threads = Math.min(options.getThreads(), sources.size());
+        if (threads > 1) {
+            convertInParallel(sources, threads);
+            return;
+        }
+        for (int sheetIndex = 0; sheetIndex < sources.size(); sheetIndex++) {
+            convertToSheet(sources.get(sheetIndex), sheetIndex);
         }
-        listReader = new CsvListReader(new FileReader(source), CsvPreference.STANDARD_PREFERENCE);
     }
 
-    private void convertToXls(String[] sourceFiles) throws ParseException,
-            NumberFormatException, IOException {
-        wb = new SXSSFWorkbook(rowAccessWindowSize);
-        String[] headers;
-        for (String strSource : sourceFiles) {
-            int rowIndex = 1;
+    /**
+     * Converts the sources on a pool of threads, each source by its own converter into its own sheet
+     * of the shared workbook. The first failure in source order is thrown once all tasks are done.
+     */
+    private void convertInParallel(List<CsvSource> sources, int threads) throws ParseException, IOException {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "exceller-sheet-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> results = new ArrayList<>(sources.size());
+            for (int sheetIndex = 0; sheetIndex < sources.size(); sheetIndex++) {
+                final CsvSource source = sources.get(sheetIndex);
+                final int index = sheetIndex;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        new CsvToXlsConverter(options, workbookWriter, metrics).convertToSheet(source, index);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                awaitSheet(result);
+            }
+        }
+        finally {
+            // interrupting stops the remaining sheets after a failure
+            executor.shutdownNow();
             try {
-                openCSV(strSource);
-                Sheet sh = wb.createSheet();
-                List<String> fieldsList;
-                fieldsList = listReader.read();
-                colCount = (options.getColCount() == 0) ? fieldsList.size()
-                        : Math.min(fieldsList.size(), options.getColCount());
-                cellStyles = getCellStyles();
-                if ((headers = options.getHeaders()) != null) {
-                    headers = extendWithDefaultHeaders(headers);
-                }
-                else if (options.shouldReadHeaderString()) {
-                    headers = fieldsList.toArray(new String[colCount]);
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException intEx) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void awaitSheet(Future<Void> result) throws ParseException, IOException {
+        try {
+            result.get();
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The conversion was interrupted");
+        }
+        catch (ExecutionException execEx) {
+            Throwable cause = execEx.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Converts a source into its sheets, or adds the sheets of the {@link SheetCache} when the source and
+     * the options did not change since they were stored.
+     */
+    private void convertToSheet(CsvSource source, int sheetIndex) throws ParseException,
+            NumberFormatException, IOException {
+        SheetCache sheetCache = (workbookWriter instanceof CachingWorkbookWriter) ? SheetCache.of(options) : null;
+        String key = (sheetCache != null) ? sheetCache.key(source, sheetIndex, options) : null;
+        CachingWorkbookWriter cachingWriter = (key != null) ? (CachingWorkbookWriter) workbookWriter : null;
+        if (key != null) {
+            SheetCache.Entry cached = sheetCache.load(key);
+            if (cached != null && cached.addTo(cachingWriter, sheetIndex)) {
+                log.info(String.format("%s: %d sheet(s) reused from the cache", source.getDescription(),
+                        cached.getSheetCount()));
+                return;
+            }
+            cachingWriter.recordSheets(sheetIndex);
+        }
+        boolean converted = false;
+        try {
+            convertCSV(source, sheetIndex);
+            converted = true;
+        }
+        finally {
+            if (csvReader != null) {
+                csvReader.close();
+                csvReader = null;
+            }
+            if (key != null) {
+                List<SheetCache.Sheet> recorded = cachingWriter.takeRecordedSheets(sheetIndex);
+                if (converted) {
+                    sheetCache.store(key, cachingWriter.getStyleRegistry().getStyles(), recorded);
                 }
                 else {
-                    headers = extendWithDefaultHeaders(new String[] {});
-                }
-                createHeaders(sh, headers);
-                if (!options.shouldReadHeaderString()) {
-                    convertToXlsRow(sh, rowIndex++, fieldsList);
+                    for (SheetCache.Sheet sheet : recorded) {
+                        sheet.delete();
+                    }
                 }
-                while ((fieldsList = listReader.read()) != null) {
-                    convertToXlsRow(sh, rowIndex++, fieldsList);
-                }
-                applyColumnWidths(sh);
-                applyAutoFilters(sh, rowIndex - 1);
             }
-            catch (ParseException pEX) {
-                throw new ParseException(String.format("Error while parsing Date field in row: %s", rowIndex), pEX.getErrorOffset());
+        }
+    }
+
+    private void convertCSV(CsvSource source, int sheetIndex) throws IOException {
+        String[] headers;
+        int rowIndex = 1;
+        String strSource = source.getDescription();
+        long start = System.nanoTime();
+        metrics.enter(ConversionMetrics.Phase.OPEN);
+        csvReader = source.open(options, metrics);
+        List<String> fieldsList;
+        fieldsList = csvReader.read();
+        metrics.addTime(ConversionMetrics.Phase.OPEN, System.nanoTime() - start);
+        if (fieldsList == null) {
+            throw new IllegalArgumentException(String.format("There is no csv record in %s", strSource));
+        }
+        FilteringCsvReader filteringReader = null;
+        if (options.getRowFilter() != null) {
+            filteringReader = new FilteringCsvReader(csvReader, options.getRowFilter(),
+                    options.getRowFilter().resolve(fieldsList, strSource));
+            csvReader = filteringReader;
+        }
+        List<String> firstRecord = fieldsList;
+        if (options.getSelection() != null) {
+            ProjectingCsvReader projectingReader = new ProjectingCsvReader(csvReader,
+                    options.getSelection().resolve(fieldsList, strSource));
+            csvReader = projectingReader;
+            fieldsList = projectingReader.project(fieldsList);
+        }
+        ConversionMetrics.MeteredReader meteredReader = metrics.meter(csvReader);
+        csvReader = meteredReader;
+        colCount = (options.getColCount() == 0) ? fieldsList.size()
+                : Math.min(fieldsList.size(), options.getColCount());
+        if ((headers = options.getHeaders()) != null) {
+            headers = extendWithDefaultHeaders(headers);
+        }
+        else if (options.shouldReadHeaderString()) {
+            headers = fieldsList.toArray(new String[colCount]);
+        }
+        else {
+            headers = extendWithDefaultHeaders(new String[] {});
+        }
+        start = System.nanoTime();
+        metrics.enter(ConversionMetrics.Phase.CONVERT);
+        boolean firstIsRow = !options.shouldReadHeaderString()
+                && (filteringReader == null || filteringReader.accept(firstRecord));
+        List<List<String>> sample = null;
+        if (options.getInferRows() > 0) {
+            // the readers may reuse the record of the first row for the following ones
+            fieldsList = new ArrayList<>(fieldsList);
+            sample = readSample(firstIsRow ? fieldsList : null, strSource, rowIndex);
+        }
+        formats = resolveFormats(sample);
+        if (sample != null) {
+            log.info(String.format("%s: column patterns %s", strSource, ConverterOptions.toPatterns(formats)));
+        }
+        encoders = compileEncoders();
+        String sheetName = (source.getSheetName() != null) ? source.getSheetName() : "Sheet" + sheetIndex;
+        sheetWriter = new RolloverSheetWriter(workbookWriter, sheetIndex, sheetName, headers, formats,
+                options.getMaxWidth(), options.getMaxRows());
+        try {
+            if (firstIsRow) {
+                convertToXlsRow(rowIndex, fieldsList);
+                rowIndex++;
+                metrics.addRows(1);
+            }
+            for (int i = (sample != null && firstIsRow) ? 1 : 0; sample != null && i < sample.size(); i++) {
+                convertToXlsRow(rowIndex, sample.get(i));
+                rowIndex++;
             }
-            catch (NumberFormatException nEX) {
-                throw new NumberFormatException(String.format("Error while parsing Number field in row: %s", rowIndex));
+            while (!options.isPipelined() && (fieldsList = csvReader.read()) != null) {
+                convertToXlsRow(rowIndex, fieldsList);
+                rowIndex++;
             }
         }
+        catch (RuntimeException ex) {
+            throw rowError(strSource, rowIndex, ex);
+        }
+        if (options.isPipelined()) {
+            rowIndex = new ConversionPipeline(csvReader, encoders, colCount, strSource).run(sheetWriter, rowIndex);
+        }
+        // the pipeline reads on its own thread, else the reads are part of the loop
+        long readNanos = options.isPipelined() ? 0 : meteredReader.getNanos();
+        metrics.addTime(ConversionMetrics.Phase.CONVERT, System.nanoTime() - start - readNanos);
+        start = System.nanoTime();
+        sheetWriter.finish(rowIndex - 1, colCount);
+        sheetWriter = null;
+        metrics.addTime(ConversionMetrics.Phase.FINISH, System.nanoTime() - start);
+        logFallbacks(strSource, headers);
+    }
+
+    static IllegalArgumentException rowError(String source, int rowIndex, RuntimeException cause) {
+        return new IllegalArgumentException(String.format("Error in row %d of %s: %s", rowIndex, source,
+                cause.getMessage()), cause);
     }
 
-    private void applyColumnWidths(Sheet sh) {
-        int currentWidth;
+    private void logFallbacks(String strSource, String[] headers) {
+        int fallbackCount;
         for (int column = 0; column < colCount; column++) {
-            Format cellFormat = options.getFormat(column);
-            currentWidth = cellFormat.getWidth();
-            if (currentWidth != -1) {
-                sh.setColumnWidth(column, currentWidth);
-            }
-            else {
-                sh.autoSizeColumn(column);
+            if ((fallbackCount = encoders[column].getFallbackCount()) > 0) {
+                log.info(String.format("%s: %d value(s) of column %s written as text", strSource,
+                        fallbackCount, headers[column]));
+                metrics.addFallbacks(strSource, headers[column], fallbackCount);
             }
         }
     }
 
-    private void applyAutoFilters(Sheet sh, int lastRow) {
-        CellRangeAddress cr = new CellRangeAddress(0, lastRow, 0, colCount - 1);
-        sh.setAutoFilter(cr);
+    /**
+     * Reads up to the number of inference rows of the options, starting with {@code firstRow} unless it
+     * is null. The rows are copied, they are converted once the formats are known.
+     */
+    private List<List<String>> readSample(List<String> firstRow, String strSource, int rowIndex)
+            throws IOException {
+        List<List<String>> sample = new ArrayList<>(Math.min(options.getInferRows(), 1 << 16));
+        if (firstRow != null) {
+            sample.add(firstRow);
+        }
+        List<String> record;
+        try {
+            while (sample.size() < options.getInferRows() && (record = csvReader.read()) != null) {
+                sample.add(new ArrayList<>(record));
+            }
+        }
+        catch (RuntimeException ex) {
+            throw rowError(strSource, rowIndex + sample.size(), ex);
+        }
+        return sample;
     }
 
-    private void createHeaders(Sheet sh, String[] headers) {
-        Row row = sh.createRow(0);
-        Cell cell;
-        XSSFCellStyle headerStyle = (XSSFCellStyle)wb.createCellStyle();
-        Font font = wb.createFont();
-        font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        headerStyle.setFont(font);
-        for (int cellnum = 0; cellnum < this.colCount; cellnum++) {
-            cell = row.createCell(cellnum);
-            cell.setCellValue(headers[cellnum]);
-            cell.setCellStyle(headerStyle);
+    /**
+     * Formats of the columns: the column patterns of the options, else the format inferred from
+     * {@code sample} or text without a sample.
+     */
+    private Format[] resolveFormats(List<List<String>> sample) {
+        FormatInference inference = null;
+        if (sample != null) {
+            inference = new FormatInference(colCount, options.getDateInputParser(), options.getNumberParser());
+            for (List<String> record : sample) {
+                inference.add(record);
+            }
+        }
+        Format[] result = new Format[colCount];
+        for (int column = 0; column < colCount; column++) {
+            Format pattern = options.getPattern(column);
+            if (pattern != null || inference == null) {
+                result[column] = options.getFormat(column);
+            }
+            else {
+                result[column] = inference.getFormat(column);
+            }
         }
+        return result;
     }
 
     private String[] extendWithDefaultHeaders(String[] headers) {
@@ -176,115 +551,46 @@ public class CsvToXlsConverter {
         return result;
     }
 
-    private void convertToXlsRow(Sheet sh, int rowIndex, List<String> csvRow) throws ParseException,
-            NumberFormatException {
-        Row row = sh.createRow(rowIndex);
-        Cell cell;
+    void convertToXlsRow(int rowIndex, List<String> csvRow) throws IOException {
+        String data;
+        sheetWriter.startRow(rowIndex);
         for (int cellnum = 0; cellnum < this.colCount; cellnum++) {
-            cell = row.createCell(cellnum);
-            applyFormatting(cell, (csvRow.get(cellnum) != null) ? csvRow.get(cellnum) : "", cellnum);
+            data = csvRow.get(cellnum);
+            encoders[cellnum].encode(sheetWriter, (data != null) ? data : "");
         }
+        sheetWriter.endRow();
     }
 
-    private XSSFCellStyle getHyperlinkStyle () {
-        XSSFCellStyle hlinkStyle = (XSSFCellStyle)wb.createCellStyle();
-        XSSFFont hlink_font = (XSSFFont)wb.createFont();
-        hlink_font.setUnderline(Font.U_SINGLE);
-        hlink_font.setColor(IndexedColors.BLUE.getIndex());
-        hlinkStyle.setFont(hlink_font);
-        return hlinkStyle;
-    }
-
-    private ArrayList<CellStyle> getCellStyles() {
-        ArrayList<CellStyle> styles = new ArrayList<>();
+    private ColumnEncoder[] compileEncoders() {
+        ColumnEncoder[] result = new ColumnEncoder[this.colCount];
+        DateParser dateInputParser = options.getDateInputParser();
+        NumberParser numberParser = options.getNumberParser();
         for (int i = 0; i < this.colCount; i++) {
-            Format cellFormat = options.getFormat(i);
-            XSSFCellStyle cellStyle;
-            if (cellFormat.getType() == Type.HYPERLINK) {
-                cellStyle = getHyperlinkStyle();
-            }
-            else {
-                 cellStyle = (XSSFCellStyle)wb.createCellStyle();
-            }
-            String mask = cellFormat.getMask();
-            if (mask != null) {
-                cellStyle.setDataFormat(
-                        wb.getCreationHelper().createDataFormat().getFormat(mask));
-            }
-            cellStyle.setWrapText(true);
-            styles.add(cellStyle);
+            Format cellFormat = formats[i];
+            result[i] = ColumnEncoder.compile(i, cellFormat, workbookWriter.createStyle(cellFormat),
+                    dateInputParser, numberParser);
         }
-        return styles;
+        return result;
     }
 
-    private void applyFormatting(Cell cell, String data, int cellIndex) throws ParseException,
-            NumberFormatException {
-        setCellValue(cell, data, cellIndex);
-        setCellStyle(cell, cellIndex);
+    void setCellValue(String data, int cellIndex) throws IOException {
+        encoders[cellIndex].encode(sheetWriter, data);
     }
 
-    private void setCellValue(Cell cell, String data, int cellIndex) throws ParseException,
-            NumberFormatException {
-        Format cellFormat = options.getFormat(cellIndex);
-        Type cellType = cellFormat.getType();
-        try {
-            switch (cellType) {
-                case BOOLEAN:
-                    boolean boolValue = Boolean.parseBoolean(data);
-                    cell.setCellValue(boolValue);
-                    break;
-                case DATE:
-                    Date dateValue = (new SimpleDateFormat(DATE_JAVA_PATTERN)).parse(data);
-                    cell.setCellValue(dateValue);
-                    break;
-                case HYPERLINK:
-                    cell.setCellValue(data);
-                    Hyperlink link = wb.getCreationHelper().createHyperlink(Hyperlink.LINK_URL);
-                    cell.setHyperlink(link);
-                    link.setAddress(data);
-                    break;
-                case NUMBER:
-                    double numValue = Double.parseDouble(data);
-                    cell.setCellValue(numValue);
-                    break;
-                case TEXT:
-                    cell.setCellValue(data);
-                    break;
-                default: break;
-            }
-        }
-        catch (ParseException pEx) {
-            cell.setCellValue(data);
-        }
-        catch (NumberFormatException nEx) {
-            cell.setCellValue(data);
-        }
+    void saveXls() throws IOException {
+        log.info("Saving Excel file...");
+        workbookWriter.write();
     }
 
-    private void setCellStyle(Cell cell, int cellIndex) {
-        cell.setCellStyle(cellStyles.get(cellIndex));
-    }
-
-    private void saveXls(String destination) throws IOException {
-        FileOutputStream fout = null;
-        try {
-            if (new File(destination).getParentFile() == null) {
-                destination = "./" + destination;
-            }
-            File outFile = new File (destination);
-            if (!outFile.exists()) {
-                File parent = outFile.getParentFile();
-                parent.mkdirs();
-                outFile.createNewFile();
-            }
-            fout = new FileOutputStream(new File (destination));
-            log.info("Saving Excel file...");
-            wb.write(fout);
+    private File prepareDestination(String destination) throws IOException {
+        if (new File(destination).getParentFile() == null) {
+            destination = "./" + destination;
         }
-        finally {
-            if (fout != null) {
-                fout.close();
-            }
+        File outFile = options.resolve(destination);
+        if (!outFile.exists()) {
+            File parent = outFile.getParentFile();
+            parent.mkdirs();
         }
+        return outFile;
     }
 }
@@ -0,0 +1,539 @@
+package com.digsolab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable, thread-safe parser turning date strings straight into Excel serial numbers (1900 date
+ * system) without going through {@link java.util.Date} or {@link java.util.Calendar}. Fixed-width
+ * ISO timestamps take a hand-written fast path, other layouts are parsed with a pattern compiled
+ * once from a java style input pattern or from the Excel mask of the column.
+ */
+final class DateParser {
+
+    static final DateParser ISO = new DateParser(null, true);
+
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int YEAR2 = 2;
+    private static final int MONTH = 3;
+    private static final int MONTH_NAME = 4;
+    private static final int DAY = 5;
+    private static final int DAY_NAME = 6;
+    private static final int HOUR = 7;
+    private static final int HOUR12 = 8;
+    private static final int MINUTE = 9;
+    private static final int SECOND = 10;
+    private static final int FRACTION = 11;
+    private static final int AM_PM = 12;
+
+    private static final String[] MONTH_NAMES = {"january", "february", "march", "april", "may", "june",
+            "july", "august", "september", "october", "november", "december"};
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int[] FRACTION_SCALE = {1, 100, 10, 1};
+    private static final int[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final String KIND_CODES = " YyMNDEHhmsSa";
+    private static final String[] ISO_LAYOUTS = {"Y4-M2-D2", "Y4-M2-D2 H2:m2", "Y4-M2-D2 H2:m2:s2",
+            "Y4-M2-D2 H2:m2:s2.S1", "Y4-M2-D2TH2:m2", "Y4-M2-D2TH2:m2:s2", "Y4-M2-D2TH2:m2:s2.S1"};
+    private static final long DAY_MILLISECONDS = 24L * 60 * 60 * 1000;
+    private static final long EPOCH_1899_12_31 = daysFromCivil(1899, 12, 31);
+
+    private final int[] kinds;
+    private final int[] minDigits;
+    private final int[] maxDigits;
+    private final char[] literals;
+    private final boolean tryIso;
+
+    private DateParser(List<int[]> tokens, boolean tryIso) {
+        int count = (tokens != null) ? tokens.size() : 0;
+        this.kinds = new int[count];
+        this.minDigits = new int[count];
+        this.maxDigits = new int[count];
+        this.literals = new char[count];
+        for (int i = 0; i < count; i++) {
+            int[] token = tokens.get(i);
+            kinds[i] = token[0];
+            minDigits[i] = token[1];
+            maxDigits[i] = token[2];
+            literals[i] = (char) token[3];
+        }
+        this.tryIso = tryIso;
+    }
+
+    /**
+     * Parser for a date column: the explicit input pattern wins, otherwise ISO timestamps and values
+     * laid out like the column mask are accepted.
+     */
+    static DateParser forColumn(DateParser inputParser, String mask) {
+        if (inputParser != null) {
+            return inputParser;
+        }
+        List<int[]> tokens = (mask != null) ? compileMask(mask) : null;
+        return (tokens != null) ? new DateParser(tokens, true) : ISO;
+    }
+
+    /**
+     * Compiles a java style input pattern (y, M, d, H, h, m, s, S, a, E and quoted literals).
+     */
+    static DateParser forPattern(String pattern) {
+        List<int[]> tokens = compilePattern(pattern);
+        if (isIsoLayout(tokens)) {
+            return ISO;
+        }
+        return new DateParser(tokens, false);
+    }
+
+    /**
+     * Returns the Excel serial number of the given value or {@link Double#NaN} when the value is
+     * not a date in this layout or cannot be represented in the 1900 date system.
+     */
+    double toExcelSerial(String value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (tryIso) {
+            double serial = parseIso(value, start, end);
+            if (!Double.isNaN(serial) || kinds.length == 0) {
+                return serial;
+            }
+        }
+        return parsePattern(value, start, end);
+    }
+
+    private static double parseIso(String s, int start, int end) {
+        int len = end - start;
+        if (len > 0 && s.charAt(end - 1) == 'Z') {
+            len--;
+        }
+        if (len < 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            return Double.NaN;
+        }
+        int year = digits(s, start, 4);
+        int month = digits(s, start + 5, 2);
+        int day = digits(s, start + 8, 2);
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        if (len > 10) {
+            char separator = s.charAt(start + 10);
+            if (len < 16 || (separator != ' ' && separator != 'T') || s.charAt(start + 13) != ':') {
+                return Double.NaN;
+            }
+            hour = digits(s, start + 11, 2);
+            minute = digits(s, start + 14, 2);
+            if (len > 16) {
+                if (len < 19 || s.charAt(start + 16) != ':') {
+                    return Double.NaN;
+                }
+                second = digits(s, start + 17, 2);
+                if (len > 19) {
+                    int fractionDigits = len - 20;
+                    if (s.charAt(start + 19) != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                        return Double.NaN;
+                    }
+                    int used = Math.min(fractionDigits, 3);
+                    millis = digits(s, start + 20, used);
+                    if (millis < 0 || (fractionDigits > used && digits(s, start + 23, fractionDigits - used) < 0)) {
+                        return Double.NaN;
+                    }
+                    millis *= FRACTION_SCALE[used];
+                }
+            }
+        }
+        return toExcelSerial(year, month, day, hour, minute, second, millis);
+    }
+
+    private double parsePattern(String s, int start, int end) {
+        if (kinds.length == 0) {
+            return Double.NaN;
+        }
+        int year = -1;
+        int month = 1;
+        int day = 1;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        int pm = -1;
+        boolean hour12 = false;
+        int pos = start;
+        for (int t = 0; t < kinds.length; t++) {
+            int kind = kinds[t];
+            if (kind == LITERAL) {
+                if (pos >= end || s.charAt(pos) != literals[t]) {
+                    return Double.NaN;
+                }
+                pos++;
+                continue;
+            }
+            if (kind == MONTH_NAME || kind == DAY_NAME || kind == AM_PM) {
+                int wordEnd = pos;
+                while (wordEnd < end && Character.isLetter(s.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+                if (wordEnd == pos) {
+                    return Double.NaN;
+                }
+                if (kind == MONTH_NAME) {
+                    month = monthOf(s, pos, wordEnd);
+                    if (month < 0) {
+                        return Double.NaN;
+                    }
+                }
+                else if (kind == AM_PM) {
+                    char first = Character.toUpperCase(s.charAt(pos));
+                    if (first != 'A' && first != 'P') {
+                        return Double.NaN;
+                    }
+                    pm = (first == 'P') ? 1 : 0;
+                }
+                pos = wordEnd;
+                continue;
+            }
+            int digitsEnd = pos;
+            int limit = Math.min(end, pos + maxDigits[t]);
+            int number = 0;
+            while (digitsEnd < limit) {
+                int digit = s.charAt(digitsEnd) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                number = number * 10 + digit;
+                digitsEnd++;
+            }
+            int count = digitsEnd - pos;
+            if (count < minDigits[t]) {
+                return Double.NaN;
+            }
+            pos = digitsEnd;
+            switch (kind) {
+                case YEAR:
+                    year = number;
+                    break;
+                case YEAR2:
+                    year = (number < 50) ? 2000 + number : 1900 + number;
+                    break;
+                case MONTH:
+                    month = number;
+                    break;
+                case DAY:
+                    day = number;
+                    break;
+                case HOUR:
+                    hour = number;
+                    break;
+                case HOUR12:
+                    hour = number;
+                    hour12 = true;
+                    break;
+                case MINUTE:
+                    minute = number;
+                    break;
+                case SECOND:
+                    second = number;
+                    break;
+                default:
+                    millis = (count >= 3) ? number / POW10[count - 3] : number * FRACTION_SCALE[count];
+                    break;
+            }
+        }
+        if (pos != end || year < 0) {
+            return Double.NaN;
+        }
+        if (hour12) {
+            if (hour < 1 || hour > 12) {
+                return Double.NaN;
+            }
+            hour = (hour % 12) + ((pm == 1) ? 12 : 0);
+        }
+        return toExcelSerial(year, month, day, hour, minute, second, millis);
+    }
+
+    static double toExcelSerial(int year, int month, int day, int hour, int minute, int second, int millis) {
+        if (year < 1900 || year > 9999 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Double.NaN;
+        }
+        int monthDays = DAYS_IN_MONTH[month - 1];
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            monthDays++;
+        }
+        if (day > monthDays) {
+            return Double.NaN;
+        }
+        // same arithmetic as DateUtil.getExcelDate, including the fictitious 1900-02-29
+        double fraction = (((hour * 60 + minute) * 60 + second) * 1000 + millis) / (double) DAY_MILLISECONDS;
+        double value = fraction + (daysFromCivil(year, month, day) - EPOCH_1899_12_31);
+        if (value >= 60) {
+            value++;
+        }
+        return value;
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra;
+    }
+
+    private static int digits(String s, int from, int count) {
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int monthOf(String s, int from, int to) {
+        int len = to - from;
+        if (len < 3) {
+            return -1;
+        }
+        for (int m = 0; m < MONTH_NAMES.length; m++) {
+            String name = MONTH_NAMES[m];
+            if ((len == 3 || len == name.length()) && name.regionMatches(true, 0, s, from, len)) {
+                return m + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIsoLayout(List<int[]> tokens) {
+        StringBuilder layout = new StringBuilder();
+        for (int[] token : tokens) {
+            if (token[0] == LITERAL) {
+                layout.append((char) token[3]);
+            }
+            else {
+                layout.append(KIND_CODES.charAt(token[0])).append(token[1]);
+            }
+        }
+        for (String iso : ISO_LAYOUTS) {
+            if (iso.contentEquals(layout)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] token(int kind, int minDigits, int maxDigits) {
+        return new int[] {kind, minDigits, maxDigits, 0};
+    }
+
+    private static int[] literal(char c) {
+        return new int[] {LITERAL, 0, 0, c};
+    }
+
+    private static List<int[]> compilePattern(String pattern) {
+        List<int[]> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                int close = pattern.indexOf('\'', i + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("The date input pattern is in invalid format");
+                }
+                if (close == i + 1) {
+                    tokens.add(literal('\''));
+                }
+                for (int j = i + 1; j < close; j++) {
+                    tokens.add(literal(pattern.charAt(j)));
+                }
+                i = close + 1;
+                continue;
+            }
+            int run = 1;
+            while (i + run < pattern.length() && pattern.charAt(i + run) == c) {
+                run++;
+            }
+            switch (c) {
+                case 'y':
+                    tokens.add((run == 2) ? token(YEAR2, 2, 2) : token(YEAR, (run == 1) ? 1 : run, Math.max(run, 4)));
+                    break;
+                case 'M':
+                    tokens.add((run >= 3) ? token(MONTH_NAME, 0, 0) : token(MONTH, run, 2));
+                    break;
+                case 'd':
+                    tokens.add(token(DAY, run, 2));
+                    break;
+                case 'E':
+                    tokens.add(token(DAY_NAME, 0, 0));
+                    break;
+                case 'H':
+                    tokens.add(token(HOUR, run, 2));
+                    break;
+                case 'h':
+                    tokens.add(token(HOUR12, run, 2));
+                    break;
+                case 'm':
+                    tokens.add(token(MINUTE, run, 2));
+                    break;
+                case 's':
+                    tokens.add(token(SECOND, run, 2));
+                    break;
+                case 'S':
+                    tokens.add(token(FRACTION, 1, 9));
+                    break;
+                case 'a':
+                    tokens.add(token(AM_PM, 0, 0));
+                    break;
+                default:
+                    if (Character.isLetter(c)) {
+                        throw new IllegalArgumentException("The date input pattern is in invalid format");
+                    }
+                    for (int j = 0; j < run; j++) {
+                        tokens.add(literal(c));
+                    }
+                    break;
+            }
+            i += run;
+        }
+        return tokens;
+    }
+
+    /**
+     * Derives the input layout from an Excel number format. Returns null when the mask does not
+     * describe a date (numeric placeholders, text placeholder or no date part at all).
+     */
+    private static List<int[]> compileMask(String mask) {
+        int section = mask.indexOf(';');
+        String m = (section >= 0) ? mask.substring(0, section) : mask;
+        List<int[]> tokens = new ArrayList<>();
+        boolean hasDatePart = false;
+        String upper = m.toUpperCase(Locale.ENGLISH);
+        boolean hasAmPm = upper.contains("AM/PM") || upper.contains("A/P");
+        int i = 0;
+        while (i < m.length()) {
+            char c = m.charAt(i);
+            char lower = Character.toLowerCase(c);
+            if (c == '"') {
+                int close = m.indexOf('"', i + 1);
+                close = (close < 0) ? m.length() : close;
+                for (int j = i + 1; j < close; j++) {
+                    tokens.add(literal(m.charAt(j)));
+                }
+                i = close + 1;
+                continue;
+            }
+            if (c == '\\' && i + 1 < m.length()) {
+                tokens.add(literal(m.charAt(i + 1)));
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                int close = m.indexOf(']', i);
+                i = (close < 0) ? m.length() : close + 1;
+                continue;
+            }
+            if (c == '_' || c == '*') {
+                i += 2;
+                continue;
+            }
+            if (m.regionMatches(true, i, "AM/PM", 0, 5)) {
+                tokens.add(token(AM_PM, 0, 0));
+                i += 5;
+                continue;
+            }
+            if (m.regionMatches(true, i, "A/P", 0, 3)) {
+                tokens.add(token(AM_PM, 0, 0));
+                i += 3;
+                continue;
+            }
+            int run = 1;
+            while (i + run < m.length() && Character.toLowerCase(m.charAt(i + run)) == lower) {
+                run++;
+            }
+            switch (lower) {
+                case 'y':
+                    tokens.add((run <= 2) ? token(YEAR2, 2, 2) : token(YEAR, 4, 4));
+                    hasDatePart = true;
+                    break;
+                case 'm':
+                    // resolved to month or minute once the neighbouring tokens are known
+                    tokens.add((run >= 3) ? token(MONTH_NAME, 0, 0) : token(MONTH, run, 2));
+                    hasDatePart = true;
+                    break;
+                case 'd':
+                    tokens.add((run >= 3) ? token(DAY_NAME, 0, 0) : token(DAY, run, 2));
+                    hasDatePart = true;
+                    break;
+                case 'h':
+                    tokens.add(token(hasAmPm ? HOUR12 : HOUR, Math.min(run, 2), 2));
+                    hasDatePart = true;
+                    break;
+                case 's':
+                    tokens.add(token(SECOND, Math.min(run, 2), 2));
+                    hasDatePart = true;
+                    break;
+                case '0':
+                    if (tokens.size() < 2 || tokens.get(tokens.size() - 2)[0] != SECOND) {
+                        return null;
+                    }
+                    tokens.add(token(FRACTION, 1, 9));
+                    break;
+                case '#':
+                case '?':
+                case '@':
+                    return null;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        return null;
+                    }
+                    for (int j = 0; j < run; j++) {
+                        tokens.add(literal(c));
+                    }
+                    break;
+            }
+            i += run;
+        }
+        if (!hasDatePart) {
+            return null;
+        }
+        resolveMinutes(tokens);
+        return tokens;
+    }
+
+    private static void resolveMinutes(List<int[]> tokens) {
+        int previous = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            int[] token = tokens.get(i);
+            if (token[0] == LITERAL) {
+                continue;
+            }
+            if (token[0] == MONTH) {
+                int next = -1;
+                for (int j = i + 1; j < tokens.size() && next < 0; j++) {
+                    if (tokens.get(j)[0] != LITERAL) {
+                        next = tokens.get(j)[0];
+                    }
+                }
+                if (previous == HOUR || previous == HOUR12 || next == SECOND) {
+                    token[0] = MINUTE;
+                }
+            }
+            previous = token[0];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(kinds) + Arrays.toString(minDigits) + Arrays.toString(maxDigits)
+                + Arrays.toString(literals) + (tryIso ? " or ISO" : "");
+    }
+}
@@ -0,0 +1,291 @@
+package com.digsolab;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Package part deflated into a temp file by the thread producing it, ready to be copied into the
+ * zip by {@link ZipWriter#putEntry(String, DeflatedPart)}. A part may start with a head deflated in
+ * memory, which is written after the rest, like the column definitions of a sheet that are only
+ * known once all rows are measured.
+ */
+final class DeflatedPart {
+
+    private static final int CRC_POLYNOMIAL = 0xEDB88320;
+
+    private final File file;
+    private final byte[] head;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+
+    private DeflatedPart(File file, byte[] head, long crc, long size, long compressedSize) {
+        this.file = file;
+        this.head = head;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+    }
+
+    long getCrc() {
+        return crc;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getCompressedSize() {
+        return compressedSize;
+    }
+
+    long getFileLength() {
+        return file.length();
+    }
+
+    InputStream open() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        return (head != null) ? new SequenceInputStream(new ByteArrayInputStream(head), in) : in;
+    }
+
+    /**
+     * The part preceded by {@code content}, deflated with {@code level} and ending on a sync flush, so the
+     * deflate stream of the part continues it.
+     */
+    DeflatedPart withHead(byte[] content, int level) {
+        if (head != null) {
+            throw new IllegalStateException("The part already has a head");
+        }
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(content.length / 4 + 64);
+        try {
+            deflater.setInput(content);
+            byte[] buffer = new byte[1 << 12];
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                deflated.write(buffer, 0, count);
+            }
+            while (count == buffer.length);
+        }
+        finally {
+            deflater.end();
+        }
+        CRC32 headCrc = new CRC32();
+        headCrc.update(content);
+        return new DeflatedPart(file, deflated.toByteArray(), combineCrc(headCrc.getValue(), crc, size),
+                content.length + size, deflated.size() + compressedSize);
+    }
+
+    /**
+     * CRC-32 of two byte sequences one after the other from their CRCs and the length of the second, the
+     * way zlib's crc32_combine does it: appending {@code length} zeros is a linear map in GF(2), applied
+     * to the first CRC by squaring the operator for one zero bit.
+     */
+    static long combineCrc(long first, long second, long length) {
+        if (length <= 0) {
+            return first;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = CRC_POLYNOMIAL & 0xFFFFFFFFL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);
+        square(odd, even);
+        long crc = first;
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+            length >>= 1;
+            if (length == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+            length >>= 1;
+        }
+        while (length != 0);
+        return crc ^ second;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    void delete() {
+        file.delete();
+    }
+
+    /**
+     * Copy of the part in a new temp file in {@code directory}, the default temp directory for null.
+     */
+    DeflatedPart copy(File directory) throws IOException {
+        try (InputStream in = open()) {
+            return read(in, crc, size, compressedSize, directory);
+        }
+    }
+
+    /**
+     * Part of the {@code compressedSize} deflated bytes read from {@code in}, e.g. a part kept in a cache.
+     */
+    static DeflatedPart read(InputStream in, long crc, long size, long compressedSize, File directory)
+            throws IOException {
+        File file = File.createTempFile("exceller-part", ".deflate", directory);
+        try (OutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            long remaining = compressedSize;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("The deflated part ends early");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        catch (IOException ioEx) {
+            file.delete();
+            throw ioEx;
+        }
+        return new DeflatedPart(file, null, crc, size, compressedSize);
+    }
+
+    /**
+     * Deflates everything written into a new temp file, {@link #finish()} returns the part.
+     */
+    static final class Output extends OutputStream {
+
+        private final File file;
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater;
+        private final ParallelDeflater blocks;
+        private final byte[] buffer = new byte[1 << 16];
+        private final byte[] single = new byte[1];
+        private long size;
+        private long compressedSize;
+        private boolean finished;
+        private boolean closed;
+
+        Output(int level, File directory) throws IOException {
+            this(level, directory, null);
+        }
+
+        /**
+         * Output into a temp file in {@code directory}, the default temp directory for null, deflated on
+         * the threads of {@code deflatePool} or on the writing thread for null.
+         */
+        Output(int level, File directory, ParallelDeflater.Pool deflatePool) throws IOException {
+            file = File.createTempFile("exceller-part", ".deflate", directory);
+            out = new FileOutputStream(file);
+            if (deflatePool != null) {
+                deflater = null;
+                blocks = new ParallelDeflater(out, level, deflatePool);
+            }
+            else {
+                deflater = new Deflater(level, true);
+                blocks = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            size += len;
+            if (blocks != null) {
+                blocks.write(b, off, len);
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            int length = deflater.deflate(buffer, 0, buffer.length);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+                compressedSize += length;
+            }
+        }
+
+        long getFileLength() {
+            return file.length();
+        }
+
+        DeflatedPart finish() throws IOException {
+            if (blocks != null) {
+                blocks.finish();
+                compressedSize = blocks.getCompressedSize();
+            }
+            else {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+            }
+            finished = true;
+            close();
+            return new DeflatedPart(file, null, crc.getValue(), size, compressedSize);
+        }
+
+        /**
+         * Closes the temp file. Without {@link #finish()} the temp file is deleted.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (deflater != null) {
+                deflater.end();
+            }
+            out.close();
+            if (!finished) {
+                file.delete();
+            }
+        }
+    }
+}
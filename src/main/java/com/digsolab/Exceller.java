@@ -1,22 +1,61 @@
 package com.digsolab;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.Arrays;
 
 public class Exceller {
 
+    private static final String SERVER_MODE = "-server";
+    private static final String CLIENT_MODE = "-client";
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(CLIENT_MODE)) {
+            System.exit(ConversionClient.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        PrintStream console = System.out;
         try {
-            CsvToXlsConverter converter = new CsvToXlsConverter();
+            if (args.length > 0 && args[0].equals(SERVER_MODE)) {
+                ConversionServer.serve(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
             ConverterOptions co = new ConverterOptions();
             co.parseOptions(args);
-            converter.convertToExcel(co);
+            if (co.writesToStandardOutput()) {
+                // stdout carries the workbook, a failure has to show in the exit status of the pipe
+                console = System.err;
+            }
+            convert(co);
         }
         catch (Exception ex) {
-            System.out.printf("Error while performing conversion: %s\n", ex.getMessage());
+            console.printf("Error while performing conversion: %s\n", ex.getMessage());
+            if (console == System.err) {
+                System.exit(1);
+            }
         }
         catch (Throwable error) {
-            System.out.printf("Fatal error while performing conversion: %s\n", error.getMessage() + error.toString());
+            console.printf("Fatal error while performing conversion: %s\n", error.getMessage() + error.toString());
             System.exit(1);
         }
     }
 
+    /**
+     * Runs a single conversion, a batch or a conversion back into csv. A batch with failed files throws
+     * after all files are done.
+     */
+    static void convert(ConverterOptions options) throws ParseException, IOException {
+        if (options.isToCsv()) {
+            new XlsxToCsvConverter(options).convert();
+            return;
+        }
+        if (!options.isBatch()) {
+            new CsvToXlsConverter().convertToExcel(options);
+            return;
+        }
+        BatchConverter.Report report = new BatchConverter(options).convert();
+        if (!report.getFailures().isEmpty()) {
+            throw new IllegalArgumentException(report.getSummary());
+        }
+    }
 }
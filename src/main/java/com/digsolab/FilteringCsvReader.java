@@ -0,0 +1,69 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reader returning the records of another reader accepted by a {@link RowFilter}. The conditions are
+ * tested on the raw fields, only the tested fields are read from a rejected record. Reading ends
+ * without touching the rest of the input once the head count is reached.
+ */
+final class FilteringCsvReader implements CsvReader {
+
+    private final CsvReader reader;
+    private final RowFilter filter;
+    private final int[] columns;
+    private final Random random;
+    private long skipped;
+    private long matched;
+    private long accepted;
+
+    FilteringCsvReader(CsvReader reader, RowFilter filter, int[] columns) {
+        this.reader = reader;
+        this.filter = filter;
+        this.columns = columns;
+        this.random = (filter.getSeed() != null) ? new Random(filter.getSeed()) : new Random();
+    }
+
+    @Override
+    public List<String> read() throws IOException {
+        List<String> record;
+        while (!isExhausted() && (record = reader.read()) != null) {
+            if (accept(record)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private boolean isExhausted() {
+        return filter.getHead() > 0 && accepted >= filter.getHead();
+    }
+
+    /**
+     * Counts {@code record} and tells if it is converted, also for a record read before the filter was set up.
+     */
+    boolean accept(List<String> record) {
+        if (skipped < filter.getSkip()) {
+            skipped++;
+            return false;
+        }
+        if (isExhausted() || !filter.matches(record, columns)) {
+            return false;
+        }
+        if (matched++ % filter.getEvery() != 0) {
+            return false;
+        }
+        if (filter.getSample() < 1 && random.nextDouble() >= filter.getSample()) {
+            return false;
+        }
+        accepted++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
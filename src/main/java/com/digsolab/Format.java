@@ -2,9 +2,9 @@ package com.digsolab;
 
 public class Format {
 
-    private Type type = null;
-    private String mask = null;
-    private int width = -1;
+    private final Type type;
+    private final String mask;
+    private final int width;
 
     public Format(Type type, String mask, int width) {
         this.type = type;
@@ -0,0 +1,135 @@
+package com.digsolab;
+
+import java.util.List;
+
+/**
+ * Infers the formats of the columns from a sample of their values. A column becomes BOOLEAN, NUMBER,
+ * DATE or HYPERLINK when every non-empty sampled value parses as such, else it stays TEXT. Numbers
+ * with leading zeros or more digits than a double keeps, like zip codes or card numbers, stay text.
+ */
+final class FormatInference {
+
+    /**
+     * Digits of the integers Excel shows in full with the General format.
+     */
+    private static final int MAX_GENERAL_DIGITS = 11;
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final String[] LINK_PREFIXES = {"http://", "https://", "ftp://", "mailto:"};
+    private static final String DATE_MASK = "yyyy-mm-dd";
+    private static final String TIMESTAMP_MASK = "yyyy-mm-dd hh:mm:ss";
+    private static final String INTEGER_MASK = "0";
+    private static final String PERCENT_MASK = "0.00%";
+
+    private final DateParser dateParser;
+    private final NumberParser numberParser;
+    private final Column[] columns;
+
+    FormatInference(int colCount, DateParser dateInputParser, NumberParser numberParser) {
+        this.dateParser = (dateInputParser != null) ? dateInputParser : DateParser.ISO;
+        this.numberParser = numberParser;
+        this.columns = new Column[colCount];
+        for (int i = 0; i < colCount; i++) {
+            columns[i] = new Column();
+        }
+    }
+
+    void add(List<String> record) {
+        for (int i = 0; i < columns.length && i < record.size(); i++) {
+            String value = record.get(i);
+            if (value != null) {
+                columns[i].add(value.trim());
+            }
+        }
+    }
+
+    Format getFormat(int column) {
+        return columns[column].getFormat();
+    }
+
+    private final class Column {
+
+        private int values;
+        private boolean bool = true;
+        private boolean boolWords;
+        private boolean number = true;
+        private boolean percent;
+        private boolean longInteger;
+        private boolean date = true;
+        private boolean time;
+        private boolean link = true;
+
+        void add(String value) {
+            if (value.isEmpty()) {
+                return;
+            }
+            values++;
+            if (bool) {
+                bool = ColumnEncoder.parseBoolean(value) >= 0;
+                boolWords |= bool && !value.equals("0") && !value.equals("1");
+            }
+            if (number) {
+                number = addNumber(value);
+            }
+            if (date) {
+                date = !Double.isNaN(dateParser.toExcelSerial(value));
+                time |= date && value.indexOf(':') >= 0;
+            }
+            if (link) {
+                link = isLink(value);
+            }
+        }
+
+        private boolean addNumber(String value) {
+            double parsed = numberParser.parse(value);
+            if (Double.isNaN(parsed)) {
+                return false;
+            }
+            int digits = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (Character.isDigit(value.charAt(i))) {
+                    if (digits == 0 && value.charAt(i) == '0' && i + 1 < value.length()
+                            && Character.isDigit(value.charAt(i + 1))) {
+                        return false;
+                    }
+                    digits++;
+                }
+            }
+            if (digits > MAX_EXACT_DIGITS) {
+                return false;
+            }
+            percent |= value.endsWith("%");
+            longInteger |= parsed == Math.rint(parsed) && Math.abs(parsed) >= Math.pow(10, MAX_GENERAL_DIGITS);
+            return true;
+        }
+
+        private boolean isLink(String value) {
+            for (String prefix : LINK_PREFIXES) {
+                if (value.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    for (int i = prefix.length(); i < value.length(); i++) {
+                        if (Character.isWhitespace(value.charAt(i))) {
+                            return false;
+                        }
+                    }
+                    return value.length() > prefix.length();
+                }
+            }
+            return false;
+        }
+
+        Format getFormat() {
+            if (values == 0) {
+                return new Format(Type.TEXT, null, -1);
+            }
+            if (bool && boolWords) {
+                return new Format(Type.BOOLEAN, null, -1);
+            }
+            if (number) {
+                return new Format(Type.NUMBER, percent ? PERCENT_MASK : (longInteger ? INTEGER_MASK : null), -1);
+            }
+            if (date) {
+                return new Format(Type.DATE, time ? TIMESTAMP_MASK : DATE_MASK, -1);
+            }
+            return new Format(link ? Type.HYPERLINK : Type.TEXT, null, -1);
+        }
+    }
+}
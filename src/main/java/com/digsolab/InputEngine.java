@@ -0,0 +1,37 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+public enum InputEngine {
+
+    /**
+     * Byte level tokenizer over a channel, the default. Charsets it cannot tokenize byte by byte are
+     * read with SUPERCSV.
+     */
+    NIO {
+        @Override
+        CsvReader open(ReadableByteChannel source, CsvDialect dialect) throws IOException {
+            if (!ChannelCsvReader.supports(dialect)) {
+                return SUPERCSV.open(source, dialect);
+            }
+            return new ChannelCsvReader(source, dialect);
+        }
+    },
+
+    /**
+     * SuperCSV, the former reader.
+     */
+    SUPERCSV {
+        @Override
+        CsvReader open(ReadableByteChannel source, CsvDialect dialect) {
+            return new SuperCsvReader(Channels.newInputStream(source), dialect);
+        }
+    };
+
+    /**
+     * Opens a reader on the channel, the reader closes the channel.
+     */
+    abstract CsvReader open(ReadableByteChannel source, CsvDialect dialect) throws IOException;
+}
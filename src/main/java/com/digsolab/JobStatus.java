@@ -0,0 +1,62 @@
+package com.digsolab;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * State of a conversion job submitted to a {@link ConversionServer} as reported to its clients.
+ */
+public final class JobStatus {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, REJECTED, UNKNOWN
+    }
+
+    private final long id;
+    private final State state;
+    private final String message;
+
+    JobStatus(long id, State state, String message) {
+        this.id = id;
+        this.state = state;
+        this.message = message;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Error message of a failed or rejected job, null otherwise.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isFinished() {
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(id);
+        out.writeUTF(state.name());
+        out.writeUTF((message != null) ? message : "");
+    }
+
+    static JobStatus readFrom(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        State state = State.valueOf(in.readUTF());
+        String message = in.readUTF();
+        return new JobStatus(id, state, message.isEmpty() ? null : message);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Job %d: %s", id, state) + ((message != null) ? " - " + message : "");
+    }
+}
@@ -0,0 +1,244 @@
+package com.digsolab;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Immutable, thread-safe validating scanner for numeric csv values. It decides number versus text
+ * without throwing, so dirty columns (blanks, "N/A", ...) cost no more than clean ones. Decimal and
+ * grouping separators, currency symbols and a percent suffix are configurable.
+ */
+final class NumberParser {
+
+    static final NumberParser DEFAULT = new NumberParser('.', (char) 0, new String[0], false);
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_DIGITS = 18;
+
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+    private final String[] currencySymbols;
+    private final boolean percent;
+
+    NumberParser(char decimalSeparator, char groupingSeparator, String[] currencySymbols, boolean percent) {
+        this.decimalSeparator = decimalSeparator;
+        this.groupingSeparator = groupingSeparator;
+        this.currencySymbols = currencySymbols.clone();
+        this.percent = percent;
+    }
+
+    /**
+     * Separators and currency symbol of the given locale, e.g. "de-DE" or "fr_FR".
+     */
+    static NumberParser forLocale(String languageTag) {
+        Locale locale = Locale.forLanguageTag(languageTag.replace('_', '-'));
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        return new NumberParser(symbols.getDecimalSeparator(), symbols.getGroupingSeparator(),
+                new String[] {symbols.getCurrencySymbol()}, false);
+    }
+
+    NumberParser withSeparators(Character decimalSeparator, Character groupingSeparator) {
+        return new NumberParser((decimalSeparator != null) ? decimalSeparator : this.decimalSeparator,
+                (groupingSeparator != null) ? groupingSeparator : this.groupingSeparator, currencySymbols, percent);
+    }
+
+    NumberParser withCurrencySymbols(String[] currencySymbols) {
+        return new NumberParser(decimalSeparator, groupingSeparator, currencySymbols, percent);
+    }
+
+    NumberParser withPercent(boolean percent) {
+        return new NumberParser(decimalSeparator, groupingSeparator, currencySymbols, percent);
+    }
+
+    /**
+     * Returns the numeric value or {@link Double#NaN} when the value is not a number.
+     */
+    double parse(String s) {
+        int pos = 0;
+        int end = s.length();
+        while (pos < end && Character.isWhitespace(s.charAt(pos))) {
+            pos++;
+        }
+        while (end > pos && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        boolean scaled = false;
+        if (percent && end > pos && s.charAt(end - 1) == '%') {
+            scaled = true;
+            end = trimEnd(s, pos, end - 1);
+        }
+        int suffixStart = currencySuffix(s, pos, end);
+        if (suffixStart >= 0) {
+            end = trimEnd(s, pos, suffixStart);
+        }
+        boolean negative = false;
+        if (pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+            negative = s.charAt(pos) == '-';
+            pos++;
+        }
+        int prefixEnd = (suffixStart < 0) ? currencyPrefix(s, pos, end) : -1;
+        if (prefixEnd >= 0) {
+            pos = prefixEnd;
+            while (pos < end && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+            if (pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '+') && !negative) {
+                negative = s.charAt(pos) == '-';
+                pos++;
+            }
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean lastWasDigit = false;
+        boolean truncated = false;
+        int numberStart = pos;
+        for (; pos < end; pos++) {
+            char c = s.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (significant < MAX_DIGITS) {
+                    if (mantissa != 0 || c != '0') {
+                        mantissa = mantissa * 10 + (c - '0');
+                        significant++;
+                    }
+                }
+                else {
+                    exponent++;
+                    truncated |= c != '0';
+                }
+                digits++;
+                lastWasDigit = true;
+            }
+            else if (isGrouping(c) && lastWasDigit && pos + 1 < end && isDigit(s.charAt(pos + 1))) {
+                lastWasDigit = false;
+            }
+            else {
+                break;
+            }
+        }
+        if (pos < end && s.charAt(pos) == decimalSeparator) {
+            pos++;
+            for (; pos < end; pos++) {
+                char c = s.charAt(pos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                if (significant < MAX_DIGITS) {
+                    if (mantissa != 0 || c != '0') {
+                        mantissa = mantissa * 10 + (c - '0');
+                        significant++;
+                    }
+                    exponent--;
+                }
+                else {
+                    truncated |= c != '0';
+                }
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (pos < end && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+                negativeExponent = s.charAt(pos) == '-';
+                pos++;
+            }
+            int exponentDigits = 0;
+            int explicitExponent = 0;
+            for (; pos < end && isDigit(s.charAt(pos)); pos++) {
+                explicitExponent = Math.min(explicitExponent * 10 + (s.charAt(pos) - '0'), 100000);
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (pos != end) {
+            return Double.NaN;
+        }
+        if (scaled) {
+            exponent -= 2;
+        }
+        double value;
+        if (!truncated && significant <= MAX_EXACT_DIGITS && exponent >= -22 && exponent <= 22) {
+            value = (exponent >= 0) ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+        }
+        else {
+            value = slowPath(s, numberStart, end, scaled);
+            if (Double.isInfinite(value)) {
+                return Double.NaN;
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    private double slowPath(String s, int from, int to, boolean scaled) {
+        // the value is already validated, rebuild it in the form Double.parseDouble accepts
+        StringBuilder normalized = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (isDigit(c) || c == 'e' || c == 'E' || c == '-' || c == '+') {
+                normalized.append(c);
+            }
+            else if (c == decimalSeparator) {
+                normalized.append('.');
+            }
+        }
+        double value = Double.parseDouble(normalized.toString());
+        return scaled ? value / 100 : value;
+    }
+
+    private boolean isGrouping(char c) {
+        if (groupingSeparator == 0) {
+            return false;
+        }
+        if (Character.isSpaceChar(groupingSeparator)) {
+            return Character.isSpaceChar(c);
+        }
+        return c == groupingSeparator;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private int currencySuffix(String s, int start, int end) {
+        for (String symbol : currencySymbols) {
+            int from = end - symbol.length();
+            if (from >= start && s.startsWith(symbol, from)) {
+                return from;
+            }
+        }
+        return -1;
+    }
+
+    private int currencyPrefix(String s, int start, int end) {
+        for (String symbol : currencySymbols) {
+            if (end - start >= symbol.length() && s.startsWith(symbol, start)) {
+                return start + symbol.length();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "decimal " + decimalSeparator + " grouping " + (int) groupingSeparator + " currency "
+                + Arrays.toString(currencySymbols) + (percent ? " percent" : "");
+    }
+}
@@ -0,0 +1,47 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public enum OutputEngine {
+
+    /**
+     * Apache POI SXSSF, the default.
+     */
+    POI {
+        @Override
+        WorkbookWriter open(OutputStream out, ConverterOptions options) {
+            return new PoiWorkbookWriter(out, options);
+        }
+
+        @Override
+        boolean isConcurrent() {
+            return false;
+        }
+    },
+
+    /**
+     * Sheet xml streamed straight into the zip output, without intermediate cell objects or temp files.
+     */
+    STREAM {
+        @Override
+        WorkbookWriter open(OutputStream out, ConverterOptions options) throws IOException {
+            return new StreamingWorkbookWriter(out, options);
+        }
+
+        @Override
+        boolean isConcurrent() {
+            return true;
+        }
+    };
+
+    /**
+     * Opens a writer on {@code out} with the temp file and compression settings of {@code options}.
+     */
+    abstract WorkbookWriter open(OutputStream out, ConverterOptions options) throws IOException;
+
+    /**
+     * True when several sheets of a workbook can be written at the same time from different threads.
+     */
+    abstract boolean isConcurrent();
+}
@@ -0,0 +1,165 @@
+package com.digsolab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Raw deflate stream compressed in blocks on a {@link Pool} of threads, the way pigz does it. Every
+ * block is primed with the last 32 KiB of the input before it, so the ratio stays close to the one of a
+ * single deflater, and ends on a sync flush, so the blocks concatenate into one deflate stream any
+ * inflater reads. The blocks are written to the underlying stream in order by the writing thread, at
+ * most two per pool thread are in flight.
+ */
+final class ParallelDeflater {
+
+    static final int BLOCK_SIZE = 1 << 17;
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    private final OutputStream out;
+    private final int level;
+    private final Pool pool;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int length;
+    private byte[] dictionary;
+    private long compressedSize;
+
+    ParallelDeflater(OutputStream out, int level, Pool pool) {
+        this.out = out;
+        this.level = level;
+        this.pool = pool;
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, count);
+            length += count;
+            off += count;
+            len -= count;
+            if (length == block.length) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Deflates the last block and writes the blocks still in flight. The underlying stream is not closed.
+     */
+    void finish() throws IOException {
+        submit(true);
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Bytes written to the underlying stream so far.
+     */
+    long getCompressedSize() {
+        return compressedSize;
+    }
+
+    private void submit(final boolean last) throws IOException {
+        final byte[] input = block;
+        final int inputLength = length;
+        final byte[] preset = dictionary;
+        dictionary = Arrays.copyOfRange(input, Math.max(0, inputLength - DICTIONARY_SIZE), inputLength);
+        block = new byte[BLOCK_SIZE];
+        length = 0;
+        if (pending.size() >= pool.maxPending) {
+            writeNext();
+        }
+        pending.add(pool.executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return deflate(input, inputLength, preset, last);
+            }
+        }));
+    }
+
+    private void writeNext() throws IOException {
+        byte[] deflated;
+        try {
+            deflated = pending.poll().get();
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deflating");
+        }
+        catch (ExecutionException execEx) {
+            throw new IOException("A block could not be deflated", execEx.getCause());
+        }
+        out.write(deflated);
+        compressedSize += deflated.length;
+    }
+
+    private byte[] deflate(byte[] input, int inputLength, byte[] preset, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (preset != null) {
+                deflater.setDictionary(preset);
+            }
+            deflater.setInput(input, 0, inputLength);
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(inputLength / 4 + 64);
+            byte[] buffer = new byte[1 << 16];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflated.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    deflated.write(buffer, 0, count);
+                }
+                while (count == buffer.length);
+            }
+            return deflated.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Daemon threads shared by the deflaters of a workbook.
+     */
+    static final class Pool {
+
+        private final ExecutorService executor;
+        private final int maxPending;
+
+        Pool(int threads) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "exceller-deflate-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.maxPending = 2 * threads;
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.digsolab;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.GZIPSheetDataWriter;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+
+class PoiWorkbookWriter implements WorkbookWriter {
+
+    /**
+     * Rows written between two adjustments of the adaptive window.
+     */
+    private static final int ADAPT_INTERVAL = 1024;
+    private static final int MIN_WINDOW = 16;
+    private static final int MAX_WINDOW = 8192;
+    /**
+     * Heap use below which the adaptive window grows and above which it shrinks.
+     */
+    private static final double LOW_HEAP = 0.5;
+    private static final double HIGH_HEAP = 0.8;
+    /**
+     * Temp directory of the sheet data writer being constructed, it creates its file before a field of
+     * its own could be set.
+     */
+    private static final ThreadLocal<File> sheetDirectory = new ThreadLocal<>();
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] SHEET_DATA_START = "<sheetData".getBytes(US_ASCII);
+    private static final byte[] SHEET_DATA_END = "</sheetData>".getBytes(US_ASCII);
+    private static final AtomicBoolean tempFileWarned = new AtomicBoolean();
+    private static final Logger log = Logger.getLogger(PoiWorkbookWriter.class);
+
+    private final OutputStream out;
+    private final SXSSFWorkbook wb;
+    private final int window;
+    private final File tempDirectory;
+    private final boolean compressTemp;
+    private final int level;
+    private final ParallelDeflater.Pool deflatePool;
+    private final CreationHelper creationHelper;
+    private final DataFormat dataFormat;
+    private final List<CellStyle> styles = new ArrayList<>();
+    /**
+     * Temp files by sheet name, their sizes are final once the workbook is written.
+     */
+    private final Map<String, File> tempFiles = new LinkedHashMap<>();
+    private volatile Map<String, Long> writtenTempFileBytes;
+    private final StyleRegistry styleRegistry = new StyleRegistry(new StyleRegistry.Factory() {
+        @Override
+        public int createStyle(StyleRegistry.Key key) {
+            return newStyle(key);
+        }
+    });
+    private Font boldFont;
+    private Font hyperlinkFont;
+    private int lastSourceIndex;
+    private volatile boolean linkFormulas;
+
+    /**
+     * Writer keeping the window of rows of the options per sheet in memory and flushing the older rows to
+     * temp files, the xlsx is deflated with the level and threads of the options.
+     */
+    PoiWorkbookWriter(OutputStream out, ConverterOptions options) {
+        this.out = out;
+        this.window = options.getWindow();
+        this.tempDirectory = options.getTempDirectory();
+        this.compressTemp = options.isTempCompressed();
+        this.level = options.getLevel();
+        this.deflatePool = (options.getDeflateThreads() > 1)
+                ? new ParallelDeflater.Pool(options.getDeflateThreads()) : null;
+        this.wb = new SXSSFWorkbook((window != ConverterOptions.ADAPTIVE_WINDOW) ? window
+                : ConverterOptions.DEFAULT_WINDOW);
+        wb.setCompressTempFiles(compressTemp);
+        this.creationHelper = wb.getCreationHelper();
+        this.dataFormat = creationHelper.createDataFormat();
+    }
+
+    @Override
+    public int createStyle(Format format) {
+        return styleRegistry.getStyle(StyleRegistry.Key.of(format));
+    }
+
+    @Override
+    public int getHeaderStyle() {
+        return styleRegistry.getStyle(StyleRegistry.Key.HEADER);
+    }
+
+    @Override
+    public StyleRegistry getStyleRegistry() {
+        return styleRegistry;
+    }
+
+    private int newStyle(StyleRegistry.Key key) {
+        XSSFCellStyle cellStyle = (XSSFCellStyle)wb.createCellStyle();
+        if (key.hyperlink) {
+            cellStyle.setFont(getHyperlinkFont());
+        }
+        else if (key.bold) {
+            cellStyle.setFont(getBoldFont());
+        }
+        if (key.mask != null) {
+            cellStyle.setDataFormat(dataFormat.getFormat(key.mask));
+        }
+        if (key.wrap) {
+            cellStyle.setWrapText(true);
+        }
+        return addStyle(cellStyle);
+    }
+
+    private Font getBoldFont() {
+        if (boldFont == null) {
+            boldFont = wb.createFont();
+            boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        }
+        return boldFont;
+    }
+
+    private Font getHyperlinkFont() {
+        if (hyperlinkFont == null) {
+            XSSFFont hlink_font = (XSSFFont)wb.createFont();
+            hlink_font.setUnderline(Font.U_SINGLE);
+            hlink_font.setColor(IndexedColors.BLUE.getIndex());
+            hyperlinkFont = hlink_font;
+        }
+        return hyperlinkFont;
+    }
+
+    private int addStyle(CellStyle style) {
+        styles.add(style);
+        return styles.size() - 1;
+    }
+
+    @Override
+    public SheetWriter createSheet(int sourceIndex, String name, ColumnWidths columnWidths) throws IOException {
+        if (sourceIndex < lastSourceIndex) {
+            throw new IllegalStateException("Sheets are created one after another");
+        }
+        lastSourceIndex = sourceIndex;
+        SXSSFSheet sheet = createSheet(name);
+        try {
+            File tempFile = getTempFile(sheet);
+            synchronized (tempFiles) {
+                tempFiles.put(name, tempFile);
+            }
+        }
+        catch (IllegalStateException stEx) {
+            if (tempDirectory != null || compressTemp) {
+                // options tuning the temp files must not get their sizes reported as 0
+                throw stEx;
+            }
+            if (!tempFileWarned.getAndSet(true)) {
+                log.warn(stEx.getMessage() + ", the metrics do not report the temp file bytes of the poi engine: "
+                        + stEx.getCause());
+            }
+        }
+        return new PoiSheetWriter(sheet, columnWidths);
+    }
+
+    /**
+     * Creates a sheet with its temp file in the temp directory. The sheet data writers of POI 3.9 always
+     * create their file in java.io.tmpdir, so the writer of the new sheet is replaced by one using the
+     * directory before any row is flushed.
+     */
+    private SXSSFSheet createSheet(String name) throws IOException {
+        SXSSFSheet sheet = (SXSSFSheet) wb.createSheet(name);
+        if (tempDirectory == null) {
+            return sheet;
+        }
+        File defaultFile = getTempFile(sheet);
+        SheetDataWriter writer;
+        sheetDirectory.set(tempDirectory);
+        try {
+            writer = compressTemp ? new GzipDirectoryDataWriter() : new DirectoryDataWriter();
+        }
+        finally {
+            sheetDirectory.remove();
+        }
+        try {
+            Field writerField = SXSSFSheet.class.getDeclaredField("_writer");
+            writerField.setAccessible(true);
+            SheetDataWriter defaultWriter = (SheetDataWriter) writerField.get(sheet);
+            writerField.set(sheet, writer);
+            defaultWriter.close();
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            writer.close();
+            try {
+                getTempFile(writer).delete();
+            }
+            catch (IllegalStateException stEx) {
+                // the replacement writer is gone, only its empty file may be left
+            }
+            throw new IllegalStateException("The temp directory of the poi engine cannot be set", ex);
+        }
+        defaultFile.delete();
+        return sheet;
+    }
+
+    /**
+     * The file SXSSF flushes the rows of {@code sheet} to. POI 3.9 keeps it to its own package, an
+     * IllegalStateException tells it cannot be reached.
+     */
+    private static File getTempFile(Sheet sheet) {
+        SheetDataWriter writer;
+        try {
+            Method getWriter = SXSSFSheet.class.getDeclaredMethod("getSheetDataWriter");
+            getWriter.setAccessible(true);
+            writer = (SheetDataWriter) getWriter.invoke(sheet);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IllegalStateException("The temp file of the poi engine cannot be found", ex);
+        }
+        return getTempFile(writer);
+    }
+
+    private static File getTempFile(SheetDataWriter writer) {
+        try {
+            Method getFile = SheetDataWriter.class.getDeclaredMethod("getTempFile");
+            getFile.setAccessible(true);
+            return (File) getFile.invoke(writer);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IllegalStateException("The temp file of the poi engine cannot be found", ex);
+        }
+    }
+
+    @Override
+    public long getTempFileBytes() {
+        long bytes = 0;
+        synchronized (tempFiles) {
+            for (File file : tempFiles.values()) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Long> getSheetTempFileBytes() {
+        Map<String, Long> written = writtenTempFileBytes;
+        if (written != null) {
+            return new LinkedHashMap<>(written);
+        }
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        synchronized (tempFiles) {
+            for (Map.Entry<String, File> entry : tempFiles.entrySet()) {
+                bytes.put(entry.getKey(), entry.getValue().length());
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void write() throws IOException {
+        // the cached results of the link formulas are 0, Excel has to compute the link texts on load
+        wb.setForceFormulaRecalculation(linkFormulas);
+        if (level == ConverterOptions.DEFAULT_LEVEL && deflatePool == null) {
+            wb.write(out);
+        }
+        else {
+            // like SXSSFWorkbook.write, but zipped by our own writer for the compression level and threads
+            File template = File.createTempFile("exceller-template", ".xlsx", tempDirectory);
+            try {
+                try (OutputStream templateOut = new FileOutputStream(template)) {
+                    wb.getXSSFWorkbook().write(templateOut);
+                }
+                injectSheets(template);
+            }
+            finally {
+                template.delete();
+            }
+        }
+        // writing closed the temp files, dispose deletes them
+        writtenTempFileBytes = getSheetTempFileBytes();
+    }
+
+    /**
+     * Copies the parts of the template workbook into the xlsx, with the rows of the temp files injected
+     * into the empty sheet data of the sheets.
+     */
+    private void injectSheets(File template) throws IOException {
+        Map<String, SXSSFSheet> sheets = new HashMap<>();
+        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
+            SXSSFSheet sheet = (SXSSFSheet) wb.getSheetAt(i);
+            sheet.flushRows();
+            String partName = wb.getXSSFWorkbook().getSheetAt(i).getPackagePart().getPartName().getName();
+            sheets.put(partName.substring(1), sheet);
+        }
+        ZipWriter zip = new ZipWriter(out, level, deflatePool);
+        try (ZipFile templateZip = new ZipFile(template)) {
+            Enumeration<? extends ZipEntry> entries = templateZip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                OutputStream entryOut = zip.putEntry(entry.getName());
+                try (InputStream in = templateZip.getInputStream(entry)) {
+                    SXSSFSheet sheet = sheets.get(entry.getName());
+                    if (sheet == null) {
+                        copy(in, entryOut);
+                    }
+                    else {
+                        try (InputStream rows = sheet.getWorksheetXMLInputStream()) {
+                            injectWorksheet(in, entryOut, rows);
+                        }
+                    }
+                }
+                entryOut.close();
+            }
+        }
+        zip.finish();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Copies the sheet xml of the template with the rows in place of its empty sheet data, written as
+     * {@code <sheetData/>} or {@code <sheetData></sheetData>}. The xml is UTF-8, where the bytes of the
+     * ascii tags never occur inside other characters, so it is spliced as bytes.
+     */
+    static void injectWorksheet(InputStream in, OutputStream out, InputStream rows) throws IOException {
+        InputStream template = new BufferedInputStream(in, 1 << 16);
+        if (!copyUntil(template, out, SHEET_DATA_START)) {
+            throw new IOException("The sheet xml has no sheet data");
+        }
+        int b = template.read();
+        while (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            b = template.read();
+        }
+        if (b == '/') {
+            b = template.read();
+        }
+        else if (b == '>') {
+            b = copyUntil(template, null, SHEET_DATA_END) ? '>' : -1;
+        }
+        if (b != '>') {
+            throw new IOException("The sheet xml has no empty sheet data");
+        }
+        out.write(SHEET_DATA_START);
+        out.write('>');
+        copy(rows, out);
+        out.write(SHEET_DATA_END);
+        copy(template, out);
+    }
+
+    /**
+     * Copies {@code in} to {@code out}, or skips it for a null {@code out}, up to and excluding the first
+     * {@code tag}, false when there is none. The tag starts with its only '<'.
+     */
+    private static boolean copyUntil(InputStream in, OutputStream out, byte[] tag) throws IOException {
+        int matched = 0;
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == tag[matched]) {
+                if (++matched == tag.length) {
+                    return true;
+                }
+                continue;
+            }
+            if (out != null) {
+                out.write(tag, 0, matched);
+            }
+            matched = (b == tag[0]) ? 1 : 0;
+            if (out != null && matched == 0) {
+                out.write(b);
+            }
+        }
+        if (out != null) {
+            out.write(tag, 0, matched);
+        }
+        return false;
+    }
+
+    @Override
+    public void dispose() {
+        wb.dispose();
+        if (deflatePool != null) {
+            deflatePool.shutdown();
+        }
+    }
+
+    private class PoiSheetWriter implements SheetWriter {
+
+        private final SXSSFSheet sh;
+        private final ColumnWidths columnWidths;
+        private int currentWindow = ConverterOptions.DEFAULT_WINDOW;
+        private Row row;
+
+        PoiSheetWriter(SXSSFSheet sh, ColumnWidths columnWidths) {
+            this.sh = sh;
+            this.columnWidths = columnWidths;
+        }
+
+        @Override
+        public void startRow(int rowIndex) throws IOException {
+            if (window == ConverterOptions.ADAPTIVE_WINDOW && rowIndex % ADAPT_INTERVAL == 0) {
+                adaptWindow();
+            }
+            row = sh.createRow(rowIndex);
+        }
+
+        /**
+         * Doubles the window while less than half of the heap is used and halves it, flushing the rows
+         * beyond it, once more than 80% are.
+         */
+        private void adaptWindow() throws IOException {
+            Runtime runtime = Runtime.getRuntime();
+            double used = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+            if (used < LOW_HEAP && currentWindow < MAX_WINDOW) {
+                currentWindow = Math.min(currentWindow * 2, MAX_WINDOW);
+                sh.setRandomAccessWindowSize(currentWindow);
+            }
+            else if (used > HIGH_HEAP && currentWindow > MIN_WINDOW) {
+                currentWindow = Math.max(currentWindow / 2, MIN_WINDOW);
+                sh.setRandomAccessWindowSize(currentWindow);
+                sh.flushRows(currentWindow);
+            }
+        }
+
+        private Cell createCell(int column, int style) {
+            Cell cell = row.createCell(column);
+            cell.setCellStyle(styles.get(style));
+            return cell;
+        }
+
+        @Override
+        public void writeText(int column, String value, int style) {
+            createCell(column, style).setCellValue(value);
+            columnWidths.text(column, value);
+        }
+
+        @Override
+        public void writeNumber(int column, double value, int style) {
+            createCell(column, style).setCellValue(value);
+            columnWidths.number(column, value);
+        }
+
+        @Override
+        public void writeBoolean(int column, boolean value, int style) {
+            createCell(column, style).setCellValue(value);
+            columnWidths.bool(column, value);
+        }
+
+        @Override
+        public void writeHyperlink(int column, String address, int style) {
+            Cell cell = createCell(column, style);
+            cell.setCellValue(address);
+            Hyperlink link = creationHelper.createHyperlink(Hyperlink.LINK_URL);
+            cell.setHyperlink(link);
+            link.setAddress(address);
+            columnWidths.text(column, address);
+        }
+
+        @Override
+        public void writeLinkFormula(int column, String address, int style) {
+            Cell cell = createCell(column, style);
+            cell.setCellFormula("HYPERLINK(\"" + address.replace("\"", "\"\"") + "\")");
+            linkFormulas = true;
+            columnWidths.text(column, address);
+        }
+
+        @Override
+        public void endRow() {
+            row = null;
+        }
+
+        @Override
+        public void finish(int lastRow, int colCount) {
+            for (int column = 0; column < colCount; column++) {
+                sh.setColumnWidth(column, columnWidths.getWidth(column));
+            }
+            sh.setAutoFilter(new CellRangeAddress(0, lastRow, 0, colCount - 1));
+        }
+    }
+
+    private static final class DirectoryDataWriter extends SheetDataWriter {
+
+        DirectoryDataWriter() throws IOException {
+        }
+
+        @Override
+        public File createTempFile() throws IOException {
+            return File.createTempFile("poi-sxssf-sheet", ".xml", sheetDirectory.get());
+        }
+    }
+
+    private static final class GzipDirectoryDataWriter extends GZIPSheetDataWriter {
+
+        GzipDirectoryDataWriter() throws IOException {
+        }
+
+        @Override
+        public File createTempFile() throws IOException {
+            return File.createTempFile("poi-sxssf-sheet-xml", ".gz", sheetDirectory.get());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Reader returning the selected columns of the records of another reader, in the order of the
+ * selection. Only the selected fields are read from the underlying records, so with the nio reader the
+ * other fields are never decoded into Strings.
+ */
+final class ProjectingCsvReader implements CsvReader {
+
+    private final CsvReader reader;
+    private final int[] columns;
+    private final Projection projection = new Projection();
+
+    ProjectingCsvReader(CsvReader reader, int[] columns) {
+        this.reader = reader;
+        this.columns = columns;
+    }
+
+    @Override
+    public List<String> read() throws IOException {
+        List<String> record = reader.read();
+        return (record != null) ? project(record) : null;
+    }
+
+    /**
+     * The selected columns of {@code record}, a record read before the projection was set up.
+     */
+    List<String> project(List<String> record) {
+        projection.record = record;
+        return projection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private final class Projection extends AbstractList<String> implements RandomAccess {
+
+        private List<String> record;
+
+        @Override
+        public String get(int index) {
+            return record.get(columns[index]);
+        }
+
+        @Override
+        public int size() {
+            return columns.length;
+        }
+    }
+}
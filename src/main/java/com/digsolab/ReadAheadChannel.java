@@ -0,0 +1,151 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Channel over a stream read on a thread of its own, so inflating a compressed csv overlaps with the
+ * tokenizing and converting of the blocks read before. A fixed set of blocks circulates through
+ * bounded queues, the read-ahead never exceeds their size. A read failure is thrown by the channel
+ * after the bytes read before it.
+ */
+final class ReadAheadChannel implements ReadableByteChannel {
+
+    private static final int BLOCK_SIZE = 1 << 18;
+    private static final int BLOCKS = 4;
+
+    private final InputStream in;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS);
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(BLOCKS);
+    private final Thread reader;
+    private Block current;
+    private boolean open = true;
+
+    ReadAheadChannel(InputStream in, String threadName) {
+        this.in = in;
+        for (int i = 0; i < BLOCKS; i++) {
+            free.add(new Block());
+        }
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, threadName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readAhead() {
+        try {
+            while (true) {
+                Block block = free.take();
+                block.fill(in);
+                filled.put(block);
+                if (block.last) {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException intEx) {
+            // the channel is closed
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        while (current == null || current.position == current.length) {
+            if (current != null) {
+                if (current.last) {
+                    current.rethrow();
+                    return -1;
+                }
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            }
+            catch (InterruptedException intEx) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reading the csv was interrupted");
+            }
+        }
+        int length = Math.min(dst.remaining(), current.length - current.position);
+        dst.put(current.data, current.position, length);
+        current.position += length;
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        reader.interrupt();
+        boolean interrupted = false;
+        while (reader.isAlive()) {
+            try {
+                reader.join();
+            }
+            catch (InterruptedException intEx) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+
+    private static final class Block {
+
+        final byte[] data = new byte[BLOCK_SIZE];
+        int length;
+        int position;
+        boolean last;
+        Throwable failure;
+
+        void fill(InputStream in) {
+            length = 0;
+            position = 0;
+            try {
+                int read = 0;
+                while (length < data.length && (read = in.read(data, length, data.length - length)) >= 0) {
+                    length += read;
+                }
+                last = read < 0;
+            }
+            catch (Throwable error) {
+                failure = error;
+                last = true;
+            }
+        }
+
+        void rethrow() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw (Error) failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.digsolab;
+
+import java.io.IOException;
+
+/**
+ * Spreads the rows of one source over as many sheets as the row limit requires. Row indexes keep
+ * counting across the sheets, every continuation sheet repeats the header row and gets its own
+ * autofilter and column widths.
+ */
+final class RolloverSheetWriter implements SheetWriter {
+
+    private static final int MAX_NAME_LENGTH = 31;
+
+    private final WorkbookWriter workbookWriter;
+    private final int sourceIndex;
+    private final String sheetName;
+    private final String[] headers;
+    private final Format[] formats;
+    private final int maxWidth;
+    private final int rowsPerSheet;
+    private SheetWriter current;
+    private int part = -1;
+
+    RolloverSheetWriter(WorkbookWriter workbookWriter, int sourceIndex, String sheetName, String[] headers,
+                        Format[] formats, int maxWidth, int maxRows) throws IOException {
+        this.workbookWriter = workbookWriter;
+        this.sourceIndex = sourceIndex;
+        this.sheetName = sheetName;
+        this.headers = headers;
+        this.formats = formats;
+        this.maxWidth = maxWidth;
+        this.rowsPerSheet = maxRows - 1;
+        startSheet(0);
+    }
+
+    /**
+     * Name of a continuation sheet, shortening the name of the first sheet to keep within the 31
+     * characters of a sheet name.
+     */
+    static String getSheetName(String sheetName, int part) {
+        if (part == 0) {
+            return sheetName;
+        }
+        String suffix = " (" + (part + 1) + ")";
+        return sheetName.substring(0, Math.min(sheetName.length(), MAX_NAME_LENGTH - suffix.length())) + suffix;
+    }
+
+    private void startSheet(int nextPart) throws IOException {
+        if (current != null) {
+            current.finish(rowsPerSheet, formats.length);
+        }
+        part = nextPart;
+        current = workbookWriter.createSheet(sourceIndex, getSheetName(sheetName, part),
+                new ColumnWidths(formats, maxWidth));
+        int headerStyle = workbookWriter.getHeaderStyle();
+        current.startRow(0);
+        for (int cellnum = 0; cellnum < formats.length; cellnum++) {
+            current.writeText(cellnum, headers[cellnum], headerStyle);
+        }
+        current.endRow();
+    }
+
+    @Override
+    public void startRow(int rowIndex) throws IOException {
+        int rowPart = (rowIndex - 1) / rowsPerSheet;
+        if (rowPart != part) {
+            startSheet(rowPart);
+        }
+        current.startRow(rowIndex - part * rowsPerSheet);
+    }
+
+    @Override
+    public void writeText(int column, String value, int style) throws IOException {
+        current.writeText(column, value, style);
+    }
+
+    @Override
+    public void writeNumber(int column, double value, int style) throws IOException {
+        current.writeNumber(column, value, style);
+    }
+
+    @Override
+    public void writeBoolean(int column, boolean value, int style) throws IOException {
+        current.writeBoolean(column, value, style);
+    }
+
+    @Override
+    public void writeHyperlink(int column, String address, int style) throws IOException {
+        current.writeHyperlink(column, address, style);
+    }
+
+    @Override
+    public void writeLinkFormula(int column, String address, int style) throws IOException {
+        current.writeLinkFormula(column, address, style);
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        current.endRow();
+    }
+
+    @Override
+    public void finish(int lastRow, int colCount) throws IOException {
+        current.finish(lastRow - part * rowsPerSheet, colCount);
+    }
+}
@@ -0,0 +1,211 @@
+package com.digsolab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Selection of the csv records converted into rows: conditions on raw fields like {@code status=open},
+ * {@code amount>=100} or {@code email~@example\.com$}, which all have to hold, and the sampling options.
+ * Records are first skipped, then tested by the conditions, thinned to every n-th one, randomly sampled
+ * and finally limited to a head count. The per source counting happens in a {@link FilteringCsvReader}.
+ */
+final class RowFilter {
+
+    private static final Pattern CONDITION_PATTERN = Pattern.compile("^(.+?)(!=|>=|<=|=|<|>|~)(.*)$");
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private final long skip;
+    private final long head;
+    private final long every;
+    private final double sample;
+    private final Long seed;
+
+    /**
+     * Filter with the given conditions, whose ordering operators read numbers with {@code numberParser}.
+     */
+    RowFilter(List<String> conditions, NumberParser numberParser, long skip, long head, long every, double sample,
+            Long seed) {
+        if (skip < 0) {
+            throw new IllegalArgumentException("The number of skipped rows must not be negative");
+        }
+        if (head < 0) {
+            throw new IllegalArgumentException("The number of head rows must not be negative");
+        }
+        if (every < 1) {
+            throw new IllegalArgumentException("The row interval must be at least 1");
+        }
+        if (!(sample > 0 && sample <= 1)) {
+            throw new IllegalArgumentException("The sample fraction must be greater than 0 and at most 1");
+        }
+        for (String condition : conditions) {
+            this.conditions.add(parseCondition(condition, numberParser));
+        }
+        this.skip = skip;
+        this.head = head;
+        this.every = every;
+        this.sample = sample;
+        this.seed = seed;
+    }
+
+    private static Condition parseCondition(String condition, NumberParser numberParser) {
+        Matcher matcher = CONDITION_PATTERN.matcher(condition);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(String.format("Invalid row condition %s, expected e.g. name=value",
+                    condition));
+        }
+        ColumnSelection column = ColumnSelection.parse(new String[] {matcher.group(1)});
+        String operator = matcher.group(2);
+        String value = matcher.group(3);
+        if (operator.equals("~")) {
+            try {
+                return new Condition(column, operator, Pattern.compile(value), value, numberParser);
+            }
+            catch (PatternSyntaxException patternEx) {
+                throw new IllegalArgumentException(String.format("Invalid regular expression in the row condition %s",
+                        condition), patternEx);
+            }
+        }
+        return new Condition(column, operator, null, value, numberParser);
+    }
+
+    /**
+     * True when every record is converted.
+     */
+    boolean isEmpty() {
+        return conditions.isEmpty() && skip == 0 && head == 0 && every == 1 && sample == 1;
+    }
+
+    boolean hasNames() {
+        for (Condition condition : conditions) {
+            if (condition.column.hasNames()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indexes of the condition columns in the records of a source, names are looked up in its first record.
+     */
+    int[] resolve(List<String> firstRecord, String source) {
+        int[] indexes = new int[conditions.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = conditions.get(i).column.resolve(firstRecord, source)[0];
+        }
+        return indexes;
+    }
+
+    /**
+     * True when the fields at {@code indexes} satisfy all conditions. A missing field satisfies none.
+     */
+    boolean matches(List<String> record, int[] indexes) {
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] >= record.size() || !conditions.get(i).matches(record.get(indexes[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getSkip() {
+        return skip;
+    }
+
+    long getHead() {
+        return head;
+    }
+
+    long getEvery() {
+        return every;
+    }
+
+    double getSample() {
+        return sample;
+    }
+
+    Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * True when the rows converted differ from run to run: a sample without a seed.
+     */
+    boolean isRandom() {
+        return sample < 1 && seed == null;
+    }
+
+    @Override
+    public String toString() {
+        return conditions + " skip " + skip + " head " + head + " every " + every + " sample " + sample
+                + " seed " + seed;
+    }
+
+    /**
+     * A comparison of a raw field. Ordering operators compare numerically when the value is a number,
+     * a field that is not a number then fails them, else they compare the text. An empty field, which
+     * SuperCSV reads as null, is compared as "".
+     */
+    private static final class Condition {
+
+        final ColumnSelection column;
+        final String operator;
+        final Pattern regex;
+        final String value;
+        final NumberParser numberParser;
+        final double number;
+
+        Condition(ColumnSelection column, String operator, Pattern regex, String value, NumberParser numberParser) {
+            this.column = column;
+            this.operator = operator;
+            this.regex = regex;
+            this.value = value;
+            this.numberParser = numberParser;
+            this.number = numberParser.parse(value);
+        }
+
+        boolean matches(String field) {
+            if (field == null) {
+                field = "";
+            }
+            switch (operator) {
+                case "=":
+                    return field.equals(value);
+                case "!=":
+                    return !field.equals(value);
+                case "~":
+                    return regex.matcher(field).find();
+                default:
+                    break;
+            }
+            int comparison;
+            if (!Double.isNaN(number)) {
+                double parsed = numberParser.parse(field);
+                if (Double.isNaN(parsed)) {
+                    return false;
+                }
+                comparison = Double.compare(parsed, number);
+            }
+            else {
+                comparison = field.compareTo(value);
+            }
+            switch (operator) {
+                case "<":
+                    return comparison < 0;
+                case "<=":
+                    return comparison <= 0;
+                case ">":
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return column + operator + value;
+        }
+    }
+}
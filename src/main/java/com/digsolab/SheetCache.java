@@ -0,0 +1,432 @@
+package com.digsolab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * On-disk cache of the deflated sheet parts of the stream engine, so a workbook rebuilt from mostly
+ * unchanged csv files only converts the changed ones. An entry holds the sheets of one source, rollover
+ * sheets included, keyed by the SHA-256 of the csv file, the {@link ConverterOptions#getSheetFingerprint()
+ * sheet fingerprint} of the options and the position of the source.
+ * <p>
+ * The cells refer to their styles by handle, so an entry keeps the styles its cells use. When the workbook
+ * they are added to gives those styles other handles, e.g. because a source before them changed, the cells
+ * are renumbered while the parts are copied. Entries are touched on every hit and the least recently used
+ * ones are evicted beyond the size limit.
+ */
+final class SheetCache {
+
+    private static final Logger log = Logger.getLogger(SheetCache.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x45584c53;
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".sheets";
+    private static final byte[] STYLE_ATTRIBUTE = " s=\"".getBytes(UTF_8);
+    /**
+     * Guards the eviction, the entries themselves are replaced atomically.
+     */
+    private static final Object lock = new Object();
+
+    private final File directory;
+    private final long maxBytes;
+    private final File tempDirectory;
+    private final int level;
+
+    /**
+     * Cache in {@code directory} keeping {@code maxBytes}, renumbered parts are deflated with {@code level}
+     * into {@code tempDirectory}.
+     */
+    SheetCache(File directory, long maxBytes, File tempDirectory, int level) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.tempDirectory = tempDirectory;
+        this.level = level;
+    }
+
+    /**
+     * The cache of the options, null when they have none.
+     */
+    static SheetCache of(ConverterOptions options) {
+        File directory = options.getCacheDirectory();
+        return (directory != null) ? new SheetCache(directory, options.getCacheBytes(), options.getTempDirectory(),
+                options.getLevel()) : null;
+    }
+
+    /**
+     * Key of the sheets of the source at {@code sourceIndex}, null when they cannot be cached: the source
+     * is a stream, or a sample without a seed picks other rows on every run.
+     */
+    String key(CsvSource source, int sourceIndex, ConverterOptions options) throws IOException {
+        RowFilter rowFilter = options.getRowFilter();
+        if (rowFilter != null && rowFilter.isRandom()) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException noAlgEx) {
+            throw new IllegalStateException(noAlgEx);
+        }
+        String header = "exceller sheets " + VERSION + "\n" + options.getSheetFingerprint() + "\nsource "
+                + sourceIndex + " " + source.getDescription() + " " + source.getSheetName() + "\n";
+        digest.update(header.getBytes(UTF_8));
+        if (!source.digest(digest, options)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The sheets stored under {@code key}, copied into temp parts, null when there are none. An entry
+     * that cannot be read is deleted.
+     */
+    Entry load(String key) {
+        File file = new File(directory, key + EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<Sheet> sheets = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unknown format");
+            }
+            Map<StyleRegistry.Key, Integer> styles = new LinkedHashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                String mask = in.readBoolean() ? in.readUTF() : null;
+                boolean hyperlink = in.readBoolean();
+                boolean wrap = in.readBoolean();
+                boolean bold = in.readBoolean();
+                styles.put(new StyleRegistry.Key(mask, hyperlink, wrap, bold), in.readInt());
+            }
+            for (int count = in.readInt(); count > 0; count--) {
+                String name = in.readUTF();
+                String filterRef = in.readUTF();
+                DeflatedPart part = readPart(in);
+                DeflatedPart relationships = null;
+                try {
+                    if (in.readBoolean()) {
+                        relationships = readPart(in);
+                    }
+                }
+                catch (IOException ioEx) {
+                    part.delete();
+                    throw ioEx;
+                }
+                sheets.add(new Sheet(name, filterRef, part, relationships, null));
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(styles, sheets, tempDirectory, level);
+        }
+        catch (IOException ioEx) {
+            for (Sheet sheet : sheets) {
+                sheet.delete();
+            }
+            log.warn(String.format("The cached sheets %s cannot be read: %s", file.getName(), ioEx.getMessage()));
+            file.delete();
+            return null;
+        }
+    }
+
+    private DeflatedPart readPart(DataInputStream in) throws IOException {
+        long crc = in.readLong();
+        long size = in.readLong();
+        long compressedSize = in.readLong();
+        return DeflatedPart.read(in, crc, size, compressedSize, tempDirectory);
+    }
+
+    /**
+     * Stores the sheets of a source under {@code key} with the ones of the {@code styles} of the workbook
+     * their cells use and evicts the least recently used entries beyond the size limit. The temp parts of
+     * the sheets are deleted. A failure is logged, the conversion does not depend on the cache.
+     */
+    void store(String key, Map<StyleRegistry.Key, Integer> styles, List<Sheet> sheets) {
+        BitSet used = new BitSet();
+        for (Sheet sheet : sheets) {
+            if (sheet.styles != null) {
+                used.or(sheet.styles);
+            }
+        }
+        Map<StyleRegistry.Key, Integer> usedStyles = new LinkedHashMap<>();
+        for (Map.Entry<StyleRegistry.Key, Integer> style : styles.entrySet()) {
+            if (used.get(style.getValue())) {
+                usedStyles.put(style.getKey(), style.getValue());
+            }
+        }
+        try {
+            Files.createDirectories(directory.toPath());
+            File temp = File.createTempFile(key, ".tmp", directory);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(temp), 1 << 16))) {
+                    write(out, usedStyles, sheets);
+                }
+                Files.move(temp.toPath(), new File(directory, key + EXTENSION).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                temp.delete();
+            }
+            evict();
+        }
+        catch (IOException ioEx) {
+            log.warn(String.format("The sheets cannot be cached in %s: %s", directory, ioEx.getMessage()));
+        }
+        finally {
+            for (Sheet sheet : sheets) {
+                sheet.delete();
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out, Map<StyleRegistry.Key, Integer> styles, List<Sheet> sheets)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(styles.size());
+        for (Map.Entry<StyleRegistry.Key, Integer> style : styles.entrySet()) {
+            StyleRegistry.Key key = style.getKey();
+            out.writeBoolean(key.mask != null);
+            if (key.mask != null) {
+                out.writeUTF(key.mask);
+            }
+            out.writeBoolean(key.hyperlink);
+            out.writeBoolean(key.wrap);
+            out.writeBoolean(key.bold);
+            out.writeInt(style.getValue());
+        }
+        out.writeInt(sheets.size());
+        for (Sheet sheet : sheets) {
+            out.writeUTF(sheet.name);
+            out.writeUTF(sheet.filterRef);
+            writePart(out, sheet.part);
+            out.writeBoolean(sheet.relationships != null);
+            if (sheet.relationships != null) {
+                writePart(out, sheet.relationships);
+            }
+        }
+    }
+
+    private static void writePart(DataOutputStream out, DeflatedPart part) throws IOException {
+        out.writeLong(part.getCrc());
+        out.writeLong(part.getSize());
+        out.writeLong(part.getCompressedSize());
+        try (InputStream in = part.open()) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private void evict() {
+        synchronized (lock) {
+            File[] entries = directory.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.getName().endsWith(EXTENSION);
+                }
+            });
+            if (entries == null) {
+                return;
+            }
+            final long[] lastModified = new long[entries.length];
+            Integer[] order = new Integer[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                lastModified[i] = entries[i].lastModified();
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return Long.compare(lastModified[second], lastModified[first]);
+                }
+            });
+            long bytes = 0;
+            for (Integer i : order) {
+                bytes += entries[i].length();
+                if (bytes > maxBytes && entries[i].delete()) {
+                    log.info(String.format("Evicted the cached sheets %s", entries[i].getName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Sheets of a source read from the cache with the styles they refer to.
+     */
+    static final class Entry {
+
+        private final Map<StyleRegistry.Key, Integer> styles;
+        private final List<Sheet> sheets;
+        private final File tempDirectory;
+        private final int level;
+
+        private Entry(Map<StyleRegistry.Key, Integer> styles, List<Sheet> sheets, File tempDirectory, int level) {
+            this.styles = styles;
+            this.sheets = sheets;
+            this.tempDirectory = tempDirectory;
+            this.level = level;
+        }
+
+        int getSheetCount() {
+            return sheets.size();
+        }
+
+        /**
+         * Adds the sheets to the workbook of {@code writer} as the source at {@code sourceIndex}, with their
+         * cells renumbered when the workbook has other handles for their styles. False when a part cannot
+         * be renumbered, the sheets are then deleted and the source has to be converted.
+         */
+        boolean addTo(CachingWorkbookWriter writer, int sourceIndex) throws IOException {
+            StyleRegistry registry = writer.getStyleRegistry();
+            int[] handles = new int[0];
+            boolean renumbered = false;
+            for (Map.Entry<StyleRegistry.Key, Integer> style : styles.entrySet()) {
+                int stored = style.getValue();
+                int handle = registry.getStyle(style.getKey());
+                if (stored >= handles.length) {
+                    int length = handles.length;
+                    handles = Arrays.copyOf(handles, stored + 1);
+                    for (int i = length; i < handles.length; i++) {
+                        handles[i] = i;
+                    }
+                }
+                handles[stored] = handle;
+                renumbered |= handle != stored;
+            }
+            List<Sheet> added = sheets;
+            if (renumbered) {
+                added = new ArrayList<>();
+                try {
+                    for (Sheet sheet : sheets) {
+                        added.add(new Sheet(sheet.name, sheet.filterRef, renumber(sheet.part, handles),
+                                sheet.relationships, null));
+                    }
+                }
+                catch (IOException ioEx) {
+                    log.warn(String.format("The cached sheets cannot be renumbered: %s", ioEx.getMessage()));
+                    for (Sheet sheet : added) {
+                        sheet.part.delete();
+                    }
+                    for (Sheet sheet : sheets) {
+                        sheet.delete();
+                    }
+                    return false;
+                }
+                for (Sheet sheet : sheets) {
+                    sheet.part.delete();
+                }
+            }
+            writer.addCachedSheets(sourceIndex, added);
+            return true;
+        }
+
+        /**
+         * Copy of a sheet part with the style attributes of its cells mapped through {@code handles}. The
+         * stream engine escapes quotes in values, so {@code  s="} only occurs in the cells.
+         */
+        private DeflatedPart renumber(DeflatedPart part, int[] handles) throws IOException {
+            DeflatedPart.Output deflated = new DeflatedPart.Output(level, tempDirectory);
+            Inflater inflater = new Inflater(true);
+            try (InputStream in = new BufferedInputStream(new InflaterInputStream(part.open(), inflater), 1 << 16);
+                 OutputStream out = new BufferedOutputStream(deflated, 1 << 16)) {
+                int matched = 0;
+                int b;
+                while ((b = in.read()) >= 0) {
+                    if (b == STYLE_ATTRIBUTE[matched]) {
+                        if (++matched < STYLE_ATTRIBUTE.length) {
+                            continue;
+                        }
+                        out.write(STYLE_ATTRIBUTE);
+                        int style = 0;
+                        while ((b = in.read()) >= '0' && b <= '9') {
+                            style = style * 10 + (b - '0');
+                        }
+                        if (b != '"') {
+                            throw new IOException("malformed cell style");
+                        }
+                        out.write(Integer.toString((style < handles.length) ? handles[style] : style)
+                                .getBytes(UTF_8));
+                        out.write(b);
+                        matched = 0;
+                        continue;
+                    }
+                    out.write(STYLE_ATTRIBUTE, 0, matched);
+                    matched = (b == STYLE_ATTRIBUTE[0]) ? 1 : 0;
+                    if (matched == 0) {
+                        out.write(b);
+                    }
+                }
+                out.write(STYLE_ATTRIBUTE, 0, matched);
+                out.flush();
+                return deflated.finish();
+            }
+            finally {
+                inflater.end();
+                deflated.close();
+            }
+        }
+    }
+
+    /**
+     * Sheet as written by the stream engine: the deflated sheet part, the deflated relationships of its
+     * hyperlinks if it has any, and what the workbook part needs to know about it.
+     */
+    static final class Sheet {
+
+        final String name;
+        final String filterRef;
+        final DeflatedPart part;
+        final DeflatedPart relationships;
+        /**
+         * Handles of the styles the cells use, null for sheets read from the cache.
+         */
+        final BitSet styles;
+
+        Sheet(String name, String filterRef, DeflatedPart part, DeflatedPart relationships, BitSet styles) {
+            this.name = name;
+            this.filterRef = filterRef;
+            this.part = part;
+            this.relationships = relationships;
+            this.styles = styles;
+        }
+
+        void delete() {
+            part.delete();
+            if (relationships != null) {
+                relationships.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.digsolab;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of one sheet in ascending order through the {@link CellWriter} calls and completes
+ * the sheet once they are written.
+ */
+interface SheetWriter extends CellWriter {
+
+    /**
+     * Completes the sheet with an autofilter over the header and the rows written.
+     */
+    void finish(int lastRow, int colCount) throws IOException;
+}
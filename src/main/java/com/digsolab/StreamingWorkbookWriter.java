@@ -0,0 +1,745 @@
+package com.digsolab;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+
+/**
+ * Writes the sheet xml straight into the zip output while rows are converted: no cell objects.
+ * Columns sized by content get their width from all rows of the sheet, so such a sheet is deflated
+ * into a temp part and the column definitions, which precede the sheet data in the xml, are deflated
+ * as its head once the last row is measured.
+ * <p>
+ * Sheets may be written concurrently from several threads. Only one sheet at a time streams into the
+ * zip, the others are deflated into temp parts by their own thread and copied into the zip once it
+ * is free, so the compression work is spread over the threads as well.
+ */
+class StreamingWorkbookWriter implements CachingWorkbookWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String XML_PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String HYPERLINK_REL = REL_NS + "/hyperlink";
+    private static final int FIRST_CUSTOM_FORMAT = 164;
+    private static final int DEFAULT_FONT = 0;
+    private static final int BOLD_FONT = 1;
+    private static final int HYPERLINK_FONT = 2;
+
+    private final ZipWriter zip;
+    private final List<int[]> cellXfs = new ArrayList<>();
+    private final List<String> customFormats = new ArrayList<>();
+    private final Map<String, Integer> formatIds = new HashMap<>();
+    private final List<SheetEntry> sheets = new ArrayList<>();
+    private final Set<Part> openParts = new HashSet<>();
+    private final List<String> pendingNames = new ArrayList<>();
+    private final List<DeflatedPart> pendingParts = new ArrayList<>();
+    private final Map<String, Long> sheetTempFileBytes = new LinkedHashMap<>();
+    private final Map<Integer, List<SheetCache.Sheet>> recordings = new HashMap<>();
+    private final File tempDirectory;
+    private final int level;
+    private final ParallelDeflater.Pool deflatePool;
+    private boolean zipBusy;
+    private int sheetCount;
+    private boolean tabSelected;
+    private final StyleRegistry styleRegistry = new StyleRegistry(new StyleRegistry.Factory() {
+        @Override
+        public int createStyle(StyleRegistry.Key key) {
+            return newStyle(key);
+        }
+    });
+
+    /**
+     * Writer deflating the parts with the level and threads of the options, the sheets that cannot stream
+     * into the zip right away into temp parts in the temp directory of the options.
+     */
+    StreamingWorkbookWriter(OutputStream out, ConverterOptions options) {
+        this.tempDirectory = options.getTempDirectory();
+        this.level = options.getLevel();
+        this.deflatePool = (options.getDeflateThreads() > 1)
+                ? new ParallelDeflater.Pool(options.getDeflateThreads()) : null;
+        this.zip = new ZipWriter(out, level, deflatePool);
+        cellXfs.add(new int[] {0, DEFAULT_FONT, 0});
+    }
+
+    @Override
+    public int createStyle(Format format) {
+        return styleRegistry.getStyle(StyleRegistry.Key.of(format));
+    }
+
+    @Override
+    public int getHeaderStyle() {
+        return styleRegistry.getStyle(StyleRegistry.Key.HEADER);
+    }
+
+    @Override
+    public StyleRegistry getStyleRegistry() {
+        return styleRegistry;
+    }
+
+    /**
+     * Called by the registry, which holds its lock.
+     */
+    private int newStyle(StyleRegistry.Key key) {
+        int fontId = key.hyperlink ? HYPERLINK_FONT : (key.bold ? BOLD_FONT : DEFAULT_FONT);
+        int formatId = (key.mask != null) ? getFormatId(key.mask) : 0;
+        cellXfs.add(new int[] {formatId, fontId, key.wrap ? 1 : 0});
+        return cellXfs.size() - 1;
+    }
+
+    private int getFormatId(String mask) {
+        int builtin = BuiltinFormats.getBuiltinFormat(mask);
+        if (builtin >= 0) {
+            return builtin;
+        }
+        Integer id = formatIds.get(mask);
+        if (id == null) {
+            id = FIRST_CUSTOM_FORMAT + customFormats.size();
+            customFormats.add(mask);
+            formatIds.put(mask, id);
+        }
+        return id;
+    }
+
+    @Override
+    public SheetWriter createSheet(int sourceIndex, String name, ColumnWidths columnWidths) throws IOException {
+        SheetEntry sheet;
+        boolean direct;
+        boolean selected;
+        boolean recorded;
+        synchronized (zip) {
+            sheet = new SheetEntry(sourceIndex, ++sheetCount, name);
+            recorded = recordings.containsKey(sourceIndex);
+            direct = !zipBusy && !recorded && !columnWidths.isTracking();
+            zipBusy |= direct;
+            selected = !tabSelected && sourceIndex == 0;
+            tabSelected |= selected;
+        }
+        return new StreamingSheetWriter(sheet, direct, recorded, selected, columnWidths);
+    }
+
+    /**
+     * The parts of the sheets of a recorded source are deflated into temp parts, a copy of which is kept
+     * for the cache.
+     */
+    @Override
+    public void recordSheets(int sourceIndex) {
+        synchronized (zip) {
+            recordings.put(sourceIndex, new ArrayList<SheetCache.Sheet>());
+        }
+    }
+
+    @Override
+    public List<SheetCache.Sheet> takeRecordedSheets(int sourceIndex) {
+        synchronized (zip) {
+            return recordings.remove(sourceIndex);
+        }
+    }
+
+    @Override
+    public void addCachedSheets(int sourceIndex, List<SheetCache.Sheet> cached) throws IOException {
+        int added = 0;
+        try {
+            for (; added < cached.size(); added++) {
+                SheetCache.Sheet cachedSheet = cached.get(added);
+                SheetEntry sheet;
+                synchronized (zip) {
+                    sheet = new SheetEntry(sourceIndex, ++sheetCount, cachedSheet.name);
+                    tabSelected |= sourceIndex == 0;
+                    sheetTempFileBytes.put(sheet.name, 0L);
+                }
+                sheet.filterRef = cachedSheet.filterRef;
+                DeflatedPart relationships = cachedSheet.relationships;
+                try {
+                    partDeflated("xl/worksheets/sheet" + sheet.number + ".xml", cachedSheet.part);
+                }
+                catch (IOException | RuntimeException ex) {
+                    if (relationships != null) {
+                        relationships.delete();
+                    }
+                    throw ex;
+                }
+                if (relationships != null) {
+                    partDeflated("xl/worksheets/_rels/sheet" + sheet.number + ".xml.rels", relationships);
+                }
+                sheetFinished(sheet, false);
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            for (int i = added + 1; i < cached.size(); i++) {
+                cached.get(i).delete();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Records a finished sheet and releases the zip when the sheet was streamed into it.
+     */
+    private void sheetFinished(SheetEntry sheet, boolean direct) throws IOException {
+        synchronized (zip) {
+            sheets.add(sheet);
+            if (direct) {
+                zipBusy = false;
+                for (int i = 0; i < pendingParts.size(); i++) {
+                    appendPart(pendingNames.get(i), pendingParts.get(i));
+                }
+                pendingNames.clear();
+                pendingParts.clear();
+            }
+        }
+    }
+
+    private void partDeflated(String name, DeflatedPart part) throws IOException {
+        synchronized (zip) {
+            if (zipBusy) {
+                pendingNames.add(name);
+                pendingParts.add(part);
+            }
+            else {
+                appendPart(name, part);
+            }
+        }
+    }
+
+    private void appendPart(String name, DeflatedPart part) throws IOException {
+        try {
+            zip.putEntry(name, part);
+        }
+        finally {
+            part.delete();
+        }
+    }
+
+    @Override
+    public long getTempFileBytes() {
+        synchronized (zip) {
+            long bytes = 0;
+            for (Part part : openParts) {
+                bytes += part.detached.getFileLength();
+            }
+            for (DeflatedPart part : pendingParts) {
+                bytes += part.getFileLength();
+            }
+            return bytes;
+        }
+    }
+
+    @Override
+    public Map<String, Long> getSheetTempFileBytes() {
+        synchronized (zip) {
+            return new LinkedHashMap<>(sheetTempFileBytes);
+        }
+    }
+
+    @Override
+    public void write() throws IOException {
+        Collections.sort(sheets, new Comparator<SheetEntry>() {
+            @Override
+            public int compare(SheetEntry first, SheetEntry second) {
+                if (first.sourceIndex != second.sourceIndex) {
+                    return (first.sourceIndex < second.sourceIndex) ? -1 : 1;
+                }
+                return first.number - second.number;
+            }
+        });
+        writeEntry("xl/styles.xml", createStyles());
+        writeEntry("xl/workbook.xml", createWorkbook());
+        writeEntry("xl/_rels/workbook.xml.rels", createWorkbookRelationships());
+        writeEntry("[Content_Types].xml", createContentTypes());
+        writeEntry("_rels/.rels", XML_PROLOG + "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        zip.finish();
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (zip) {
+            for (Part part : openParts) {
+                part.discard();
+            }
+            for (DeflatedPart part : pendingParts) {
+                part.delete();
+            }
+            for (List<SheetCache.Sheet> recorded : recordings.values()) {
+                for (SheetCache.Sheet sheet : recorded) {
+                    sheet.delete();
+                }
+            }
+            openParts.clear();
+            pendingNames.clear();
+            pendingParts.clear();
+            recordings.clear();
+        }
+        if (deflatePool != null) {
+            deflatePool.shutdown();
+        }
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        Part part = new Part(name, true, false);
+        part.writer.write(content);
+        part.close();
+    }
+
+    private String createStyles() {
+        StringBuilder xml = new StringBuilder(XML_PROLOG);
+        xml.append("<styleSheet xmlns=\"").append(MAIN_NS).append("\">");
+        if (!customFormats.isEmpty()) {
+            xml.append("<numFmts count=\"").append(customFormats.size()).append("\">");
+            for (int i = 0; i < customFormats.size(); i++) {
+                xml.append("<numFmt numFmtId=\"").append(FIRST_CUSTOM_FORMAT + i).append("\" formatCode=\"");
+                appendEscaped(xml, customFormats.get(i));
+                xml.append("\"/>");
+            }
+            xml.append("</numFmts>");
+        }
+        xml.append("<fonts count=\"3\">")
+                .append("<font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/>")
+                .append("<scheme val=\"minor\"/></font>")
+                .append("<font><b/><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/>")
+                .append("<scheme val=\"minor\"/></font>")
+                .append("<font><u/><sz val=\"11\"/><color indexed=\"12\"/><name val=\"Calibri\"/><family val=\"2\"/>")
+                .append("<scheme val=\"minor\"/></font></fonts>")
+                .append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>")
+                .append("<fill><patternFill patternType=\"gray125\"/></fill></fills>")
+                .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>")
+                .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>")
+                .append("<cellXfs count=\"").append(cellXfs.size()).append("\">");
+        for (int[] xf : cellXfs) {
+            xml.append("<xf numFmtId=\"").append(xf[0]).append("\" fontId=\"").append(xf[1])
+                    .append("\" fillId=\"0\" borderId=\"0\" xfId=\"0\"");
+            if (xf[0] != 0) {
+                xml.append(" applyNumberFormat=\"1\"");
+            }
+            if (xf[1] != DEFAULT_FONT) {
+                xml.append(" applyFont=\"1\"");
+            }
+            if (xf[2] != 0) {
+                xml.append(" applyAlignment=\"1\"><alignment wrapText=\"1\"/></xf>");
+            }
+            else {
+                xml.append("/>");
+            }
+        }
+        xml.append("</cellXfs><cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>")
+                .append("</styleSheet>");
+        return xml.toString();
+    }
+
+    private String createWorkbook() {
+        StringBuilder xml = new StringBuilder(XML_PROLOG);
+        xml.append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\">")
+                .append("<bookViews><workbookView activeTab=\"0\"/></bookViews><sheets>");
+        for (int i = 0; i < sheets.size(); i++) {
+            xml.append("<sheet name=\"");
+            appendEscaped(xml, sheets.get(i).name);
+            xml.append("\" sheetId=\"").append(i + 1).append("\" r:id=\"rId").append(i + 1).append("\"/>");
+        }
+        xml.append("</sheets>");
+        StringBuilder definedNames = new StringBuilder();
+        for (int i = 0; i < sheets.size(); i++) {
+            definedNames.append("<definedName name=\"_xlnm._FilterDatabase\" localSheetId=\"").append(i)
+                    .append("\" hidden=\"1\">'");
+            appendEscaped(definedNames, sheets.get(i).name.replace("'", "''"));
+            definedNames.append("'!").append(sheets.get(i).filterRef).append("</definedName>");
+        }
+        if (definedNames.length() > 0) {
+            xml.append("<definedNames>").append(definedNames).append("</definedNames>");
+        }
+        return xml.append("</workbook>").toString();
+    }
+
+    private String createWorkbookRelationships() {
+        StringBuilder xml = new StringBuilder(XML_PROLOG);
+        xml.append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+        for (int i = 0; i < sheets.size(); i++) {
+            xml.append("<Relationship Id=\"rId").append(i + 1).append("\" Type=\"").append(REL_NS)
+                    .append("/worksheet\" Target=\"worksheets/sheet").append(sheets.get(i).number).append(".xml\"/>");
+        }
+        xml.append("<Relationship Id=\"rId").append(sheets.size() + 1).append("\" Type=\"").append(REL_NS)
+                .append("/styles\" Target=\"styles.xml\"/>");
+        return xml.append("</Relationships>").toString();
+    }
+
+    private String createContentTypes() {
+        StringBuilder xml = new StringBuilder(XML_PROLOG);
+        xml.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-")
+                .append("officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-")
+                .append("officedocument.spreadsheetml.styles+xml\"/>");
+        for (SheetEntry sheet : sheets) {
+            xml.append("<Override PartName=\"/xl/worksheets/sheet").append(sheet.number)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return xml.append("</Types>").toString();
+    }
+
+    /**
+     * Escapes xml markup and replaces characters that are not allowed in xml, the way SXSSF does.
+     */
+    static void appendEscaped(StringBuilder xml, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':
+                    xml.append("&lt;");
+                    break;
+                case '>':
+                    xml.append("&gt;");
+                    break;
+                case '&':
+                    xml.append("&amp;");
+                    break;
+                case '"':
+                    xml.append("&quot;");
+                    break;
+                case '\n':
+                    xml.append("&#xa;");
+                    break;
+                case '\r':
+                    xml.append("&#xd;");
+                    break;
+                case '\t':
+                    xml.append("&#x9;");
+                    break;
+                default:
+                    xml.append((c < ' ' || c == 0xFFFE || c == 0xFFFF) ? '?' : c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Zip entry written either straight into the zip or into a deflated temp part, of which a recorded
+     * entry keeps a copy.
+     */
+    private final class Part {
+
+        final Writer writer;
+        private final String name;
+        private final boolean recorded;
+        private final OutputStream entry;
+        private final DeflatedPart.Output detached;
+        private DeflatedPart copy;
+
+        Part(String name, boolean direct, boolean recorded) throws IOException {
+            this.name = name;
+            this.recorded = recorded;
+            if (direct) {
+                entry = zip.putEntry(name);
+                detached = null;
+            }
+            else {
+                detached = new DeflatedPart.Output(level, tempDirectory, deflatePool);
+                entry = detached;
+                synchronized (zip) {
+                    openParts.add(this);
+                }
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(entry, UTF_8), 1 << 16);
+        }
+
+        /**
+         * Completes the entry, returns the size of its temp part or 0 when it went straight into the zip.
+         */
+        long close() throws IOException {
+            return close(null);
+        }
+
+        /**
+         * Completes the entry of a temp part preceded by {@code head}, when not null.
+         */
+        long close(String head) throws IOException {
+            writer.flush();
+            if (detached == null) {
+                entry.close();
+                return 0;
+            }
+            synchronized (zip) {
+                openParts.remove(this);
+            }
+            DeflatedPart part;
+            try {
+                part = detached.finish();
+                if (head != null) {
+                    part = part.withHead(head.getBytes(UTF_8), level);
+                }
+            }
+            catch (IOException ioEx) {
+                detached.close();
+                throw ioEx;
+            }
+            long length = part.getFileLength();
+            if (recorded) {
+                try {
+                    copy = part.copy(tempDirectory);
+                }
+                catch (IOException ioEx) {
+                    part.delete();
+                    throw ioEx;
+                }
+            }
+            partDeflated(name, part);
+            return length;
+        }
+
+        void discard() {
+            if (detached != null) {
+                try {
+                    detached.close();
+                }
+                catch (IOException ioEx) {
+                    // the temp part is gone anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Sheet of the workbook. The number names the sheet part and tells the sheets of a source apart,
+     * the position in the workbook is only known when all sheets are finished.
+     */
+    private static final class SheetEntry {
+
+        final int sourceIndex;
+        final int number;
+        final String name;
+        String filterRef;
+
+        SheetEntry(int sourceIndex, int number, String name) {
+            this.sourceIndex = sourceIndex;
+            this.number = number;
+            this.name = name;
+        }
+    }
+
+    private class StreamingSheetWriter implements SheetWriter {
+
+        private final SheetEntry sheet;
+        private final boolean direct;
+        private final boolean recorded;
+        private final ColumnWidths columnWidths;
+        private final Part part;
+        private final Writer writer;
+        private final StringBuilder rowXml = new StringBuilder(1024);
+        private final List<String> hyperlinks = new ArrayList<>();
+        private final List<String> columnNames = new ArrayList<>();
+        private final BitSet styles;
+        private final String head;
+        private final boolean tracking;
+        private String rowNumber;
+        private char[] chars = new char[1024];
+
+        StreamingSheetWriter(SheetEntry sheet, boolean direct, boolean recorded, boolean selected,
+                ColumnWidths columnWidths) throws IOException {
+            this.sheet = sheet;
+            this.direct = direct;
+            this.recorded = recorded;
+            this.columnWidths = columnWidths;
+            this.part = new Part("xl/worksheets/sheet" + sheet.number + ".xml", direct, recorded);
+            this.styles = recorded ? new BitSet() : null;
+            this.writer = part.writer;
+            this.tracking = columnWidths.isTracking();
+            String head = XML_PROLOG + "<worksheet xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\">"
+                    + "<sheetViews><sheetView workbookViewId=\"0\"" + (selected ? " tabSelected=\"1\"" : "")
+                    + "/></sheetViews><sheetFormatPr defaultRowHeight=\"15\"/>";
+            if (tracking) {
+                this.head = head;
+                writer.write("<sheetData>");
+            }
+            else {
+                this.head = null;
+                writer.write(head + getColumns() + "<sheetData>");
+            }
+        }
+
+        private String getColumnName(int column) {
+            while (columnNames.size() <= column) {
+                int index = columnNames.size();
+                StringBuilder name = new StringBuilder();
+                for (int c = index + 1; c > 0; c = (c - 1) / 26) {
+                    name.insert(0, (char) ('A' + (c - 1) % 26));
+                }
+                columnNames.add(name.toString());
+            }
+            return columnNames.get(column);
+        }
+
+        private String getColumns() {
+            StringBuilder cols = new StringBuilder("<cols>");
+            for (int column = 0; column < columnWidths.size(); column++) {
+                int width = columnWidths.getWidth(column);
+                cols.append("<col min=\"").append(column + 1).append("\" max=\"").append(column + 1)
+                        .append("\" width=\"").append(width / 256.0).append("\" customWidth=\"1\"/>");
+            }
+            return cols.append("</cols>").toString();
+        }
+
+        @Override
+        public void startRow(int rowIndex) {
+            this.rowNumber = Integer.toString(rowIndex + 1);
+            rowXml.setLength(0);
+            rowXml.append("<row r=\"").append(rowNumber).append("\">");
+        }
+
+        private void startCell(int column, int style, String type) {
+            if (styles != null) {
+                styles.set(style);
+            }
+            rowXml.append("<c r=\"").append(getColumnName(column)).append(rowNumber).append("\" s=\"")
+                    .append(style).append('"');
+            if (type != null) {
+                rowXml.append(" t=\"").append(type).append('"');
+            }
+            rowXml.append('>');
+        }
+
+        @Override
+        public void writeText(int column, String value, int style) {
+            startCell(column, style, "inlineStr");
+            boolean preserve = !value.isEmpty()
+                    && (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1)));
+            rowXml.append(preserve ? "<is><t xml:space=\"preserve\">" : "<is><t>");
+            appendEscaped(rowXml, value);
+            rowXml.append("</t></is></c>");
+            if (tracking) {
+                columnWidths.text(column, value);
+            }
+        }
+
+        @Override
+        public void writeNumber(int column, double value, int style) {
+            startCell(column, style, null);
+            String number = Double.toString(value);
+            rowXml.append("<v>").append(number).append("</v></c>");
+            if (tracking) {
+                columnWidths.number(column, value);
+            }
+        }
+
+        @Override
+        public void writeBoolean(int column, boolean value, int style) {
+            startCell(column, style, "b");
+            rowXml.append(value ? "<v>1</v></c>" : "<v>0</v></c>");
+            if (tracking) {
+                columnWidths.bool(column, value);
+            }
+        }
+
+        @Override
+        public void writeHyperlink(int column, String address, int style) {
+            writeText(column, address, style);
+            hyperlinks.add(getColumnName(column) + rowNumber);
+            hyperlinks.add(address);
+        }
+
+        @Override
+        public void writeLinkFormula(int column, String address, int style) {
+            startCell(column, style, "str");
+            rowXml.append("<f>HYPERLINK(\"");
+            appendEscaped(rowXml, address.replace("\"", "\"\""));
+            rowXml.append("\")</f><v>");
+            appendEscaped(rowXml, address);
+            rowXml.append("</v></c>");
+            if (tracking) {
+                columnWidths.text(column, address);
+            }
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            rowXml.append("</row>\n");
+            int length = rowXml.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            rowXml.getChars(0, length, chars, 0);
+            writer.write(chars, 0, length);
+        }
+
+        @Override
+        public void finish(int lastRow, int colCount) throws IOException {
+            StringBuilder xml = new StringBuilder("</sheetData>");
+            String filterRef = "$A$1:$" + getColumnName(colCount - 1) + "$" + (lastRow + 1);
+            xml.append("<autoFilter ref=\"A1:").append(getColumnName(colCount - 1)).append(lastRow + 1).append("\"/>");
+            if (!hyperlinks.isEmpty()) {
+                xml.append("<hyperlinks>");
+                for (int i = 0; i < hyperlinks.size(); i += 2) {
+                    xml.append("<hyperlink ref=\"").append(hyperlinks.get(i)).append("\" r:id=\"rId")
+                            .append(i / 2 + 1).append("\"/>");
+                }
+                xml.append("</hyperlinks>");
+            }
+            writer.write(xml.append("</worksheet>").toString());
+            long tempBytes = part.close(tracking ? head + getColumns() : null);
+            synchronized (zip) {
+                sheetTempFileBytes.put(sheet.name, tempBytes);
+            }
+            DeflatedPart relationships = null;
+            try {
+                if (!hyperlinks.isEmpty()) {
+                    relationships = writeHyperlinkRelationships();
+                }
+            }
+            catch (IOException | RuntimeException ex) {
+                if (part.copy != null) {
+                    part.copy.delete();
+                }
+                throw ex;
+            }
+            if (recorded) {
+                synchronized (zip) {
+                    recordings.get(sheet.sourceIndex).add(
+                            new SheetCache.Sheet(sheet.name, filterRef, part.copy, relationships, styles));
+                }
+            }
+            sheet.filterRef = filterRef;
+            sheetFinished(sheet, direct);
+        }
+
+        /**
+         * Writes the relationships of the hyperlinks, returns the copy of the part when recorded.
+         */
+        private DeflatedPart writeHyperlinkRelationships() throws IOException {
+            Part rels = new Part("xl/worksheets/_rels/sheet" + sheet.number + ".xml.rels", direct, recorded);
+            Writer writer = rels.writer;
+            StringBuilder xml = new StringBuilder(XML_PROLOG);
+            xml.append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+            for (int i = 0; i < hyperlinks.size(); i += 2) {
+                xml.append("<Relationship Id=\"rId").append(i / 2 + 1).append("\" Type=\"").append(HYPERLINK_REL)
+                        .append("\" Target=\"");
+                appendEscaped(xml, hyperlinks.get(i + 1));
+                xml.append("\" TargetMode=\"External\"/>");
+                if (xml.length() > (1 << 16)) {
+                    writer.write(xml.toString());
+                    xml.setLength(0);
+                }
+            }
+            writer.write(xml.append("</Relationships>").toString());
+            rels.close();
+            return rels.copy;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.digsolab;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interns the cell styles of a workbook, so the columns of all sheets that look alike share one style
+ * instead of every column adding its own to styles.xml. Styles are told apart by what ends up in the
+ * style record: number format mask, hyperlink font, bold header font and text wrapping. Date and number
+ * columns with the same mask share their style.
+ */
+final class StyleRegistry {
+
+    /**
+     * Creates the style of the writer for a key seen for the first time.
+     */
+    interface Factory {
+
+        int createStyle(Key key);
+    }
+
+    private final Factory factory;
+    private final Map<Key, Integer> styles = new LinkedHashMap<>();
+    private int requested;
+
+    StyleRegistry(Factory factory) {
+        this.factory = factory;
+    }
+
+    synchronized int getStyle(Key key) {
+        requested++;
+        Integer style = styles.get(key);
+        if (style == null) {
+            style = factory.createStyle(key);
+            styles.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * The styles with their handles in the order they were created.
+     */
+    synchronized Map<Key, Integer> getStyles() {
+        return new LinkedHashMap<>(styles);
+    }
+
+    synchronized int getUniqueCount() {
+        return styles.size();
+    }
+
+    synchronized int getRequestedCount() {
+        return requested;
+    }
+
+    static final class Key {
+
+        static final Key HEADER = new Key(null, false, false, true);
+
+        final String mask;
+        final boolean hyperlink;
+        final boolean wrap;
+        final boolean bold;
+
+        Key(String mask, boolean hyperlink, boolean wrap, boolean bold) {
+            this.mask = mask;
+            this.hyperlink = hyperlink;
+            this.wrap = wrap;
+            this.bold = bold;
+        }
+
+        /**
+         * Key of the cells of a column with the given format.
+         */
+        static Key of(Format format) {
+            boolean hyperlink = format.getType() == Type.HYPERLINK || format.getType() == Type.HYPERLINK_FORMULA;
+            return new Key(format.getMask(), hyperlink, true, false);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hyperlink == other.hyperlink && wrap == other.wrap && bold == other.bold
+                    && (mask == null ? other.mask == null : mask.equals(other.mask));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = (mask != null) ? mask.hashCode() : 0;
+            return hash * 8 + (hyperlink ? 4 : 0) + (wrap ? 2 : 0) + (bold ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * SuperCSV based reader, decoding through a {@link java.io.Reader} and allocating every field.
+ */
+class SuperCsvReader implements CsvReader {
+
+    private final ICsvListReader listReader;
+
+    SuperCsvReader(InputStream in, CsvDialect dialect) {
+        if (dialect.getEscape() != dialect.getQuote()) {
+            throw new IllegalArgumentException("The supercsv reader only supports doubled quotes as escape");
+        }
+        CsvPreference preference = new CsvPreference.Builder(dialect.getQuote(), dialect.getDelimiter(), "\n").build();
+        listReader = new CsvListReader(new InputStreamReader(in, dialect.getCharset()), preference);
+    }
+
+    @Override
+    public List<String> read() throws IOException {
+        return listReader.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        listReader.close();
+    }
+}
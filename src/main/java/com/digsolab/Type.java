@@ -1,5 +1,10 @@
 package com.digsolab;
 
 public enum Type {
-    DATE, NUMBER, BOOLEAN, TEXT, HYPERLINK
+    DATE, NUMBER, BOOLEAN, TEXT, HYPERLINK,
+
+    /**
+     * Link written as a HYPERLINK formula, without a hyperlink record per cell.
+     */
+    HYPERLINK_FORMULA
 }
@@ -0,0 +1,45 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Output engine producing the xlsx workbook. Sheets are created and written one after another unless
+ * {@link OutputEngine#isConcurrent()}, {@link #write()} completes the workbook on the stream the writer
+ * was opened on.
+ */
+interface WorkbookWriter {
+
+    /**
+     * Creates the style used for the cells of a column with the given format.
+     */
+    int createStyle(Format format);
+
+    int getHeaderStyle();
+
+    /**
+     * The styles of the workbook, shared by all columns and sheets with the same look.
+     */
+    StyleRegistry getStyleRegistry();
+
+    /**
+     * Starts a sheet for the source at {@code sourceIndex}. The sheets are ordered by source, the sheets
+     * of one source in the order they were created. The writer reports every value to {@code columnWidths},
+     * so columns sized by content are measured while the rows stream through.
+     */
+    SheetWriter createSheet(int sourceIndex, String name, ColumnWidths columnWidths) throws IOException;
+
+    /**
+     * Bytes held in the temp files of the writer at the moment, sampled by {@link ConversionMetrics}.
+     */
+    long getTempFileBytes();
+
+    /**
+     * Bytes of the temp file of every sheet by name, 0 for sheets written without one.
+     */
+    Map<String, Long> getSheetTempFileBytes();
+
+    void write() throws IOException;
+
+    void dispose();
+}
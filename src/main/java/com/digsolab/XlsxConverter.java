@@ -0,0 +1,47 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converts csv streams into an xlsx workbook written to a stream, for use as a library. The options
+ * are compiled once and shared, every call works on its own converter state, so one instance can
+ * serve any number of threads. Input and output streams are neither closed nor buffered beyond the
+ * call, and no logging configuration is touched.
+ */
+public final class XlsxConverter {
+
+    private final ConverterOptions options;
+
+    public XlsxConverter(ConverterOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("The converter options are missing");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Converts {@code csv} into a workbook with one sheet, Sheet0.
+     */
+    public void convert(InputStream csv, OutputStream out) throws IOException {
+        convert(Collections.singletonList(CsvSource.of(null, csv)), out);
+    }
+
+    public void convert(ReadableByteChannel csv, OutputStream out) throws IOException {
+        convert(Collections.singletonList(CsvSource.of(null, csv)), out);
+    }
+
+    /**
+     * Converts every source into a sheet of one workbook, in the order of the list.
+     */
+    public void convert(List<CsvSource> sources, OutputStream out) throws IOException {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("There is no csv source to convert");
+        }
+        new CsvToXlsConverter().convertToXlsx(options, sources, out);
+    }
+}
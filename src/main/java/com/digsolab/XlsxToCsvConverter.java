@@ -0,0 +1,450 @@
+package com.digsolab;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Converts the sheets of xlsx workbooks back into csv files, one per sheet. The sheet xml is parsed
+ * with SAX and every row is written as soon as it ends, so the heap does not grow with the sheets, only
+ * the shared strings of a workbook are held while its sheets are converted.
+ * <p>
+ * Numbers in columns with a pattern are rendered like the pattern shows them: a mask is applied the way
+ * Excel does, dates without a mask become ISO dates and booleans true or false. Other numbers keep the
+ * value stored in the sheet, dates by their cell style as ISO dates, so the csv converts back unchanged.
+ */
+public class XlsxToCsvConverter {
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String PARTIAL_EXTENSION = ".part";
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final Logger log = Logger.getLogger(XlsxToCsvConverter.class);
+
+    private final ConverterOptions options;
+    private final CsvDialect dialect;
+    private final DataFormatter formatter = new DataFormatter(Locale.ROOT);
+    private final SimpleDateFormat isoDate = new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT);
+    private final SimpleDateFormat isoTimestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+
+    public XlsxToCsvConverter(ConverterOptions options) {
+        this.options = options;
+        this.dialect = options.getDialect();
+    }
+
+    /**
+     * Converts the selected sheets of every workbook of the options.
+     */
+    public void convert() throws IOException {
+        CsvToXlsConverter.initLogger(options.writesToStandardOutput() ? ConsoleAppender.SYSTEM_ERR
+                : ConsoleAppender.SYSTEM_OUT);
+        for (String source : options.getSource()) {
+            convert(source);
+        }
+    }
+
+    private void convert(String source) throws IOException {
+        File file = options.resolve(source);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException(String.format("The workbook %s cannot be found", source));
+        }
+        OPCPackage workbook;
+        try {
+            workbook = OPCPackage.open(file.getPath(), PackageAccess.READ);
+        }
+        catch (InvalidFormatException invFormatEx) {
+            throw new IllegalArgumentException(String.format("%s is not an xlsx workbook", source), invFormatEx);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(workbook);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(workbook);
+            StylesTable styles = reader.getStylesTable();
+            Map<String, File> destinations = getDestinations(source, getSheetNames(reader));
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream in = sheets.next()) {
+                    String sheetName = sheets.getSheetName();
+                    if (destinations.containsKey(sheetName)) {
+                        long rows = convertSheet(in, strings, styles, destinations.get(sheetName));
+                        log.info(String.format("%s: %d row(s) of sheet %s written to %s", source, rows, sheetName,
+                                (destinations.get(sheetName) != null) ? destinations.get(sheetName) : "stdout"));
+                    }
+                }
+            }
+        }
+        catch (OpenXML4JException | SAXException ex) {
+            throw new IOException(String.format("The workbook %s cannot be read: %s", source, ex.getMessage()), ex);
+        }
+        finally {
+            workbook.revert();
+        }
+    }
+
+    private static List<String> getSheetNames(XSSFReader reader) throws IOException, InvalidFormatException {
+        List<String> names = new ArrayList<>();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            sheets.next().close();
+            names.add(sheets.getSheetName());
+        }
+        return names;
+    }
+
+    /**
+     * The csv file of every selected sheet by name, null for stdout. A single sheet goes to the -output
+     * path or to <i>workbook</i>.csv, several to <i>workbook</i>-<i>sheet</i>.csv.
+     */
+    private Map<String, File> getDestinations(String source, List<String> sheetNames) {
+        List<String> selected = new ArrayList<>();
+        String[] selection = options.getSheets();
+        for (String sheet : (selection != null) ? Arrays.asList(selection) : sheetNames) {
+            String name = resolveSheet(source, sheet, sheetNames);
+            if (!selected.contains(name)) {
+                selected.add(name);
+            }
+        }
+        String destination = options.getDestination();
+        if (destination != null && selected.size() > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "The %d sheets of %s are written into -outdir, not to -output", selected.size(), source));
+        }
+        String fileName = new File(source).getName();
+        int extension = fileName.lastIndexOf('.');
+        String baseName = (extension > 0) ? fileName.substring(0, extension) : fileName;
+        File directory = options.resolve((options.getOutputDirectory() != null) ? options.getOutputDirectory() : ".");
+        Map<String, File> destinations = new LinkedHashMap<>();
+        for (String name : selected) {
+            if (ConverterOptions.STANDARD_STREAM.equals(destination)) {
+                destinations.put(name, null);
+            }
+            else if (destination != null) {
+                destinations.put(name, options.resolve(destination));
+            }
+            else {
+                String csvName = (selected.size() > 1) ? baseName + "-" + name.replaceAll("[\\\\/:*?\"<>|]", "_")
+                        : baseName;
+                destinations.put(name, new File(directory, csvName + CSV_EXTENSION));
+            }
+        }
+        return destinations;
+    }
+
+    private static String resolveSheet(String source, String sheet, List<String> sheetNames) {
+        for (String name : sheetNames) {
+            if (name.equalsIgnoreCase(sheet)) {
+                return name;
+            }
+        }
+        if (sheet.matches("\\d+")) {
+            int number = Integer.parseInt(sheet);
+            if (number >= 1 && number <= sheetNames.size()) {
+                return sheetNames.get(number - 1);
+            }
+        }
+        throw new IllegalArgumentException(String.format("There is no sheet %s in %s", sheet, source));
+    }
+
+    /**
+     * Writes the rows of a sheet to {@code destination}, stdout for null. A file is written next to the
+     * destination and only moved there once complete. Returns the number of rows.
+     */
+    private long convertSheet(InputStream in, ReadOnlySharedStringsTable strings, StylesTable styles,
+            File destination) throws IOException, SAXException {
+        if (destination == null) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out),
+                    dialect.getCharset()), OUTPUT_BUFFER_SIZE);
+            long rows = parseSheet(in, new SheetHandler(strings, styles, out));
+            out.flush();
+            return rows;
+        }
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory()) {
+            Files.createDirectories(parent.toPath());
+        }
+        File partFile = new File(destination.getPath() + PARTIAL_EXTENSION);
+        boolean saved = false;
+        try {
+            long rows;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partFile),
+                    dialect.getCharset()), OUTPUT_BUFFER_SIZE)) {
+                rows = parseSheet(in, new SheetHandler(strings, styles, out));
+            }
+            Files.move(partFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+            return rows;
+        }
+        finally {
+            if (!saved) {
+                partFile.delete();
+            }
+        }
+    }
+
+    private static long parseSheet(InputStream in, SheetHandler handler) throws IOException, SAXException {
+        XMLReader parser;
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            parser = factory.newSAXParser().getXMLReader();
+        }
+        catch (ParserConfigurationException parserEx) {
+            throw new IllegalStateException(parserEx);
+        }
+        parser.setContentHandler(handler);
+        try {
+            parser.parse(new InputSource(in));
+        }
+        catch (SAXException saxEx) {
+            if (saxEx.getException() instanceof IOException) {
+                throw (IOException) saxEx.getException();
+            }
+            throw saxEx;
+        }
+        return handler.rows;
+    }
+
+    /**
+     * The text of a cell, {@code value} being the content of its v element or of its inline string.
+     */
+    String render(int column, String type, int style, String value, StylesTable styles) {
+        if ("s".equals(type) || "inlineStr".equals(type) || "str".equals(type) || "e".equals(type)
+                || "d".equals(type)) {
+            return value;
+        }
+        Format format = options.getPattern(column);
+        if ("b".equals(type)) {
+            return "1".equals(value) ? "true" : "false";
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        }
+        catch (NumberFormatException numEx) {
+            return value;
+        }
+        if (format != null && format.getType() == Type.BOOLEAN) {
+            return (number != 0) ? "true" : "false";
+        }
+        if (format != null && format.getMask() != null
+                && (format.getType() == Type.NUMBER || format.getType() == Type.DATE)) {
+            return formatter.formatRawCellContents(number, -1, format.getMask());
+        }
+        boolean date;
+        if (format != null) {
+            date = format.getType() == Type.DATE;
+        }
+        else {
+            XSSFCellStyle cellStyle = (style >= 0 && style < styles.getNumCellStyles()) ? styles.getStyleAt(style)
+                    : null;
+            date = cellStyle != null && DateUtil.isADateFormat(cellStyle.getDataFormat(),
+                    cellStyle.getDataFormatString());
+        }
+        if (date && DateUtil.isValidExcelDate(number)) {
+            Date javaDate = DateUtil.getJavaDate(number);
+            return (number == Math.floor(number)) ? isoDate.format(javaDate) : isoTimestamp.format(javaDate);
+        }
+        return new BigDecimal(value.trim()).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Appends a field, quoted when it contains the delimiter, the quote or a line break.
+     */
+    void appendField(StringBuilder record, String value) {
+        char quote = dialect.getQuote();
+        char escape = dialect.getEscape();
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == dialect.getDelimiter() || c == quote || c == escape || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            record.append(value);
+            return;
+        }
+        record.append(quote);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == quote || (c == escape && escape != quote)) {
+                record.append(escape);
+            }
+            record.append(c);
+        }
+        record.append(quote);
+    }
+
+    /**
+     * Writes the rows of a sheet as csv records while they are parsed. Rows missing from the sheet
+     * become empty records, every record has at least as many fields as the first one.
+     */
+    private final class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final Writer out;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder record = new StringBuilder(1024);
+        private long rows;
+        private int nextRow;
+        private int rowIndex;
+        private int width = -1;
+        private int column;
+        private int style;
+        private String type;
+        private boolean inValue;
+        private boolean inPhonetic;
+
+        SheetHandler(ReadOnlySharedStringsTable strings, StylesTable styles, Writer out) {
+            this.strings = strings;
+            this.styles = styles;
+            this.out = out;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!MAIN_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = (r != null) ? Integer.parseInt(r) - 1 : nextRow;
+                    fields.clear();
+                    break;
+                case "c":
+                    String ref = attributes.getValue("r");
+                    column = (ref != null) ? toColumn(ref) : fields.size();
+                    type = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    style = (s != null) ? Integer.parseInt(s) : 0;
+                    value.setLength(0);
+                    break;
+                case "v":
+                    inValue = true;
+                    break;
+                case "t":
+                    inValue = !inPhonetic;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!MAIN_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    String text = value.toString();
+                    if ("s".equals(type) && !text.isEmpty()) {
+                        text = strings.getEntryAt(Integer.parseInt(text.trim()));
+                    }
+                    else if (!text.isEmpty()) {
+                        text = render(column, type, style, text, styles);
+                    }
+                    while (fields.size() <= column) {
+                        fields.add("");
+                    }
+                    fields.set(column, text);
+                    break;
+                case "row":
+                    try {
+                        while (nextRow < rowIndex) {
+                            writeRecord(Collections.<String>emptyList());
+                        }
+                        writeRecord(fields);
+                    }
+                    catch (IOException ioEx) {
+                        throw new SAXException(ioEx);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void writeRecord(List<String> values) throws IOException {
+            if (width < 0) {
+                width = values.size();
+            }
+            record.setLength(0);
+            for (int i = 0; i < Math.max(width, values.size()); i++) {
+                if (i > 0) {
+                    record.append(dialect.getDelimiter());
+                }
+                appendField(record, (i < values.size()) ? values.get(i) : "");
+            }
+            out.write(record.append('\n').toString());
+            nextRow++;
+            rows++;
+        }
+    }
+
+    /**
+     * Index of the column of a cell reference like AB12, 0 for A.
+     */
+    static int toColumn(String ref) {
+        int column = 0;
+        for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+            column = column * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+        }
+        return column - 1;
+    }
+}
@@ -0,0 +1,352 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal zip writer for the xlsx package. Besides entries deflated while they are written it takes
+ * entries that were deflated beforehand (see {@link DeflatedPart}), so parts produced by several
+ * threads are copied into the package without being compressed again. With a deflate pool the
+ * entries are deflated in blocks on its threads, see {@link ParallelDeflater}. Zip64 records are written
+ * when sizes, offsets or the entry count exceed the classic limits.
+ */
+final class ZipWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int DEFLATED = 8;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private final OutputStream out;
+    private final int level;
+    private final ParallelDeflater.Pool deflatePool;
+    private final int dosTime;
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] header = new byte[128];
+    private long written;
+    private EntryOutputStream current;
+
+    ZipWriter(OutputStream out, int level) {
+        this(out, level, null);
+    }
+
+    /**
+     * Writer deflating the entries on the threads of {@code deflatePool}, on the writing thread for null.
+     */
+    ZipWriter(OutputStream out, int level, ParallelDeflater.Pool deflatePool) {
+        this.out = out;
+        this.level = level;
+        this.deflatePool = deflatePool;
+        this.dosTime = dosTime(Calendar.getInstance());
+    }
+
+    /**
+     * Starts an entry deflated while it is written. The returned stream has to be closed before the
+     * next entry is added.
+     */
+    OutputStream putEntry(String name) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("The previous zip entry is not closed");
+        }
+        Entry entry = new Entry(name, written, FLAG_DATA_DESCRIPTOR);
+        writeLocalHeader(entry, false);
+        current = new EntryOutputStream(entry);
+        return current;
+    }
+
+    /**
+     * Copies a part deflated beforehand as the next entry.
+     */
+    void putEntry(String name, DeflatedPart part) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("The previous zip entry is not closed");
+        }
+        Entry entry = new Entry(name, written, 0);
+        entry.crc = part.getCrc();
+        entry.size = part.getSize();
+        entry.compressedSize = part.getCompressedSize();
+        writeLocalHeader(entry, entry.size >= MAX_32 || entry.compressedSize >= MAX_32);
+        InputStream in = part.open();
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                written += read;
+            }
+        }
+        finally {
+            in.close();
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Writes the central directory. The underlying stream is flushed, not closed.
+     */
+    void finish() throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("The last zip entry is not closed");
+        }
+        long centralStart = written;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = written - centralStart;
+        boolean zip64 = entries.size() >= MAX_16 || centralStart >= MAX_32 || centralSize >= MAX_32;
+        if (zip64) {
+            long zip64End = written;
+            int p = putInt(header, 0, ZIP64_END);
+            p = putLong(header, p, 44);
+            p = putShort(header, p, VERSION_ZIP64);
+            p = putShort(header, p, VERSION_ZIP64);
+            p = putInt(header, p, 0);
+            p = putInt(header, p, 0);
+            p = putLong(header, p, entries.size());
+            p = putLong(header, p, entries.size());
+            p = putLong(header, p, centralSize);
+            p = putLong(header, p, centralStart);
+            p = putInt(header, p, ZIP64_LOCATOR);
+            p = putInt(header, p, 0);
+            p = putLong(header, p, zip64End);
+            p = putInt(header, p, 1);
+            writeHeader(p);
+        }
+        int p = putInt(header, 0, END);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, Math.min(entries.size(), MAX_16));
+        p = putShort(header, p, Math.min(entries.size(), MAX_16));
+        p = putInt(header, p, (int) Math.min(centralSize, MAX_32));
+        p = putInt(header, p, (int) Math.min(centralStart, MAX_32));
+        p = putShort(header, p, 0);
+        writeHeader(p);
+        out.flush();
+    }
+
+    private void writeLocalHeader(Entry entry, boolean zip64) throws IOException {
+        int p = putInt(header, 0, LOCAL_HEADER);
+        p = putShort(header, p, zip64 ? VERSION_ZIP64 : VERSION);
+        p = putShort(header, p, entry.flags);
+        p = putShort(header, p, DEFLATED);
+        p = putInt(header, p, dosTime);
+        p = putInt(header, p, (int) entry.crc);
+        p = putInt(header, p, zip64 ? (int) MAX_32 : (int) entry.compressedSize);
+        p = putInt(header, p, zip64 ? (int) MAX_32 : (int) entry.size);
+        p = putShort(header, p, entry.name.length);
+        p = putShort(header, p, zip64 ? 20 : 0);
+        writeHeader(p);
+        out.write(entry.name);
+        written += entry.name.length;
+        if (zip64) {
+            p = putShort(header, 0, 1);
+            p = putShort(header, p, 16);
+            p = putLong(header, p, entry.size);
+            p = putLong(header, p, entry.compressedSize);
+            writeHeader(p);
+        }
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        int extra = 0;
+        extra += (entry.size >= MAX_32) ? 8 : 0;
+        extra += (entry.compressedSize >= MAX_32) ? 8 : 0;
+        extra += (entry.offset >= MAX_32) ? 8 : 0;
+        int version = (extra > 0) ? VERSION_ZIP64 : VERSION;
+        int p = putInt(header, 0, CENTRAL_HEADER);
+        p = putShort(header, p, version);
+        p = putShort(header, p, version);
+        p = putShort(header, p, entry.flags);
+        p = putShort(header, p, DEFLATED);
+        p = putInt(header, p, dosTime);
+        p = putInt(header, p, (int) entry.crc);
+        p = putInt(header, p, (int) Math.min(entry.compressedSize, MAX_32));
+        p = putInt(header, p, (int) Math.min(entry.size, MAX_32));
+        p = putShort(header, p, entry.name.length);
+        p = putShort(header, p, (extra > 0) ? extra + 4 : 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putInt(header, p, 0);
+        p = putInt(header, p, (int) Math.min(entry.offset, MAX_32));
+        writeHeader(p);
+        out.write(entry.name);
+        written += entry.name.length;
+        if (extra > 0) {
+            p = putShort(header, 0, 1);
+            p = putShort(header, p, extra);
+            if (entry.size >= MAX_32) {
+                p = putLong(header, p, entry.size);
+            }
+            if (entry.compressedSize >= MAX_32) {
+                p = putLong(header, p, entry.compressedSize);
+            }
+            if (entry.offset >= MAX_32) {
+                p = putLong(header, p, entry.offset);
+            }
+            writeHeader(p);
+        }
+    }
+
+    private void writeHeader(int length) throws IOException {
+        out.write(header, 0, length);
+        written += length;
+    }
+
+    private static int dosTime(Calendar now) {
+        int date = ((now.get(Calendar.YEAR) - 1980) << 9) | ((now.get(Calendar.MONTH) + 1) << 5)
+                | now.get(Calendar.DAY_OF_MONTH);
+        int time = (now.get(Calendar.HOUR_OF_DAY) << 11) | (now.get(Calendar.MINUTE) << 5)
+                | (now.get(Calendar.SECOND) >> 1);
+        return (date << 16) | time;
+    }
+
+    private static int putShort(byte[] b, int p, int value) {
+        b[p] = (byte) value;
+        b[p + 1] = (byte) (value >>> 8);
+        return p + 2;
+    }
+
+    private static int putInt(byte[] b, int p, int value) {
+        putShort(b, p, value);
+        return putShort(b, p + 2, value >>> 16);
+    }
+
+    private static int putLong(byte[] b, int p, long value) {
+        putInt(b, p, (int) value);
+        return putInt(b, p + 4, (int) (value >>> 32));
+    }
+
+    private static final class Entry {
+
+        final byte[] name;
+        final long offset;
+        final int flags;
+        long crc;
+        long size;
+        long compressedSize;
+
+        Entry(String name, long offset, int flags) {
+            this.name = name.getBytes(UTF_8);
+            this.offset = offset;
+            this.flags = flags | FLAG_UTF8;
+        }
+    }
+
+    private final class EntryOutputStream extends OutputStream {
+
+        private final Entry entry;
+        private final CRC32 crc = new CRC32();
+        private final Deflater deflater;
+        private final ParallelDeflater blocks;
+        private final byte[] buffer = new byte[1 << 16];
+        private final byte[] single = new byte[1];
+        private long size;
+        private long compressedStart = written;
+
+        EntryOutputStream(Entry entry) {
+            this.entry = entry;
+            if (deflatePool != null) {
+                deflater = null;
+                blocks = new ParallelDeflater(new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] {(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        written += len;
+                    }
+                }, level, deflatePool);
+            }
+            else {
+                deflater = new Deflater(level, true);
+                blocks = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            size += len;
+            if (blocks != null) {
+                blocks.write(b, off, len);
+                return;
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            int length = deflater.deflate(buffer, 0, buffer.length);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+                written += length;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != this) {
+                return;
+            }
+            if (blocks != null) {
+                blocks.finish();
+            }
+            else {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+                deflater.end();
+            }
+            entry.crc = crc.getValue();
+            entry.size = size;
+            entry.compressedSize = written - compressedStart;
+            boolean zip64 = entry.size >= MAX_32 || entry.compressedSize >= MAX_32;
+            int p = putInt(header, 0, DATA_DESCRIPTOR);
+            p = putInt(header, p, (int) entry.crc);
+            if (zip64) {
+                p = putLong(header, p, entry.compressedSize);
+                p = putLong(header, p, entry.size);
+            }
+            else {
+                p = putInt(header, p, (int) entry.compressedSize);
+                p = putInt(header, p, (int) entry.size);
+            }
+            writeHeader(p);
+            entries.add(entry);
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.cli.ParseException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class BatchConverterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = temp.getRoot();
+        File csvDir = new File(workDir, "csv");
+        csvDir.mkdir();
+        for (String name : new String[] {"b.csv", "a.csv", "notes.txt"}) {
+            try (OutputStream out = new FileOutputStream(new File(csvDir, name))) {
+                out.write("x,y\n1,2\n".getBytes("US-ASCII"));
+            }
+        }
+    }
+
+    private BatchConverter batch(String... args) throws ParseException {
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(args, workDir);
+        return new BatchConverter(options);
+    }
+
+    @Test
+    public void testDirectoryAndGlobExpansion() throws IOException, ParseException {
+        assertEquals(Arrays.asList(new File(workDir, "csv/a.csv"), new File(workDir, "csv/b.csv")),
+                batch("-batch", "csv").expandSources());
+        assertEquals(Arrays.asList(new File(workDir, "csv/notes.txt")), batch("-batch", "csv/*.txt").expandSources());
+    }
+
+    @Test
+    public void testFailedFileDoesNotStopBatch() throws IOException, ParseException {
+        BatchConverter.Report report = batch("-batch", "-outdir", "out", "-jobs", "2", "-inflight", "1",
+                "csv;missing.csv").convert();
+        assertEquals(2, report.getConverted().size());
+        assertTrue(new File(workDir, "out/a.xlsx").isFile());
+        assertTrue(new File(workDir, "out/b.xlsx").isFile());
+        assertEquals("The source for the.csv file(s) cannot be found",
+                report.getFailures().get(new File(workDir, "missing.csv").getPath()));
+        assertTrue(report.getSummary().startsWith("Converted 2 of 3 file(s) in "));
+    }
+}
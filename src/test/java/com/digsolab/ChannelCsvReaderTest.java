@@ -0,0 +1,96 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ChannelCsvReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static List<List<String>> readAll(CsvReader reader) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record;
+        while ((record = reader.read()) != null) {
+            records.add(new ArrayList<>(record));
+        }
+        reader.close();
+        return records;
+    }
+
+    private static List<List<String>> tokenize(String csv, CsvDialect dialect) throws IOException {
+        InputStream in = new ByteArrayInputStream(csv.getBytes(dialect.getCharset())) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                // one byte per read, so every record crosses a buffer refill
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        return readAll(new ChannelCsvReader(Channels.newChannel(in), dialect));
+    }
+
+    private static List<List<String>> superCsv(String csv, CsvDialect dialect) throws IOException {
+        List<List<String>> records = readAll(new SuperCsvReader(new ByteArrayInputStream(csv.getBytes(dialect.getCharset())),
+                dialect));
+        for (List<String> record : records) {
+            for (int i = 0; i < record.size(); i++) {
+                if (record.get(i) == null) {
+                    record.set(i, "");
+                }
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testSameRecordsAsSuperCsv() throws IOException {
+        CsvDialect dialect = new CsvDialect(UTF_8, ',', '"', '"');
+        String csv = "1997-02-03 11:20:20,\"John Doe\",\"Foo, bar\",true\r\n"
+                + "\n"
+                + "a,,\"say \"\"hi\"\"\",\"two\nlines\"\n"
+                + "\u00e9t\u00e9,\"\",x,\u20ac 5\n"
+                + "last,row,without,newline";
+        assertEquals(superCsv(csv, dialect), tokenize(csv, dialect));
+    }
+
+    @Test
+    public void testDelimiterQuoteAndEscape() throws IOException {
+        CsvDialect dialect = new CsvDialect(Charset.forName("ISO-8859-1"), ';', '\'', '\\');
+        List<List<String>> records = tokenize("'a;b';'it\\'s';c\\d\n\u00e4;'';'x'y\n", dialect);
+        assertEquals(2, records.size());
+        assertEquals(Arrays.asList("a;b", "it's", "c\\d"), records.get(0));
+        assertEquals(Arrays.asList("\u00e4", "", "xy"), records.get(1));
+    }
+
+    @Test
+    public void testUtf8ByteOrderMarkIsSkipped() throws IOException {
+        List<List<String>> records = tokenize("\ufeffa,b\n", new CsvDialect(UTF_8, ',', '"', '"'));
+        assertEquals("a", records.get(0).get(0));
+    }
+
+    @Test
+    public void testUnterminatedQuoteFailure() throws IOException {
+        try {
+            tokenize("a,b\nc,\"d\n", new CsvDialect(UTF_8, ',', '"', '"'));
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("Unexpected end of file in the quoted field starting at line 2", illArgEx.getMessage());
+        }
+    }
+
+    @Test
+    public void testMultiByteCharsetsAreNotTokenized() {
+        assertTrue(ChannelCsvReader.supports(new CsvDialect(UTF_8, '\t', '"', '"')));
+        assertFalse(ChannelCsvReader.supports(new CsvDialect(Charset.forName("UTF-16"), ',', '"', '"')));
+        assertFalse(ChannelCsvReader.supports(new CsvDialect(UTF_8, '\u00a7', '"', '"')));
+    }
+}
@@ -0,0 +1,59 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ColumnSelectionTest {
+
+    @Test
+    public void testNumbersAndNamesResolvePerSource() {
+        ColumnSelection selection = ColumnSelection.parse(new String[] {"price", "1", " id "});
+        assertTrue(selection.hasNames());
+        assertArrayEquals(new int[] {2, 0, 1}, selection.resolve(Arrays.asList("sku", "id", "price"), "a.csv"));
+        assertArrayEquals(new int[] {0, 0, 2}, selection.resolve(Arrays.asList("price", "x", "id"), "b.csv"));
+        assertFalse(ColumnSelection.parse(new String[] {"3"}).hasNames());
+    }
+
+    @Test
+    public void testUnknownColumnsFail() {
+        ColumnSelection selection = ColumnSelection.parse(new String[] {"4", "name"});
+        try {
+            selection.resolve(Arrays.asList("a", "b", "c"), "a.csv");
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("There is no column 4 in a.csv, it has 3 column(s)", illArgEx.getMessage());
+        }
+        try {
+            ColumnSelection.parse(new String[] {"0"});
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("Invalid column number 0, columns are numbered from 1", illArgEx.getMessage());
+        }
+    }
+
+    @Test
+    public void testProjectionReadsOnlySelectedFields() throws IOException {
+        final List<String> record = Arrays.asList("a", "b", "c", "d");
+        final Iterator<List<String>> records = Arrays.asList(record, record).iterator();
+        ProjectingCsvReader reader = new ProjectingCsvReader(new CsvReader() {
+            @Override
+            public List<String> read() {
+                return records.hasNext() ? records.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, new int[] {3, 1});
+        assertEquals(Arrays.asList("d", "b"), reader.read());
+        assertEquals(Arrays.asList("d", "b"), reader.read());
+        assertNull(reader.read());
+    }
+}
@@ -0,0 +1,66 @@
+package com.digsolab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ColumnWidthsTest {
+
+    private static ColumnWidths widths(String mask, int maxWidth) {
+        return new ColumnWidths(new Format[] {new Format(Type.NUMBER, mask, -1), new Format(Type.TEXT, null, 5000)},
+                maxWidth);
+    }
+
+    @Test
+    public void testFixedWidthIsKept() {
+        ColumnWidths widths = widths(null, ColumnWidths.MAX_CHARS);
+        widths.text(1, "a very long value that would need a wide column");
+        assertEquals(5000, widths.getWidth(1));
+    }
+
+    @Test
+    public void testLongestLineOfText() {
+        ColumnWidths widths = widths(null, ColumnWidths.MAX_CHARS);
+        widths.text(0, "abc");
+        widths.text(0, "abcdef\nab");
+        widths.text(0, "a");
+        assertEquals(7 * 256, widths.getWidth(0));
+    }
+
+    @Test
+    public void testNumbersRenderedWithMask() {
+        ColumnWidths widths = widths("### ###.###", ColumnWidths.MAX_CHARS);
+        widths.number(0, 12345.678);
+        assertEquals(("12 345.678".length() + 1) * 256, widths.getWidth(0));
+        widths = widths("#,##0.00", ColumnWidths.MAX_CHARS);
+        widths.number(0, -1234567.5);
+        assertEquals(("-1,234,567.50".length() + 1) * 256, widths.getWidth(0));
+        widths = widths("0%", ColumnWidths.MAX_CHARS);
+        widths.number(0, 0.5);
+        assertEquals(("50%".length() + 1) * 256, widths.getWidth(0));
+    }
+
+    @Test
+    public void testGeneralNumbers() {
+        ColumnWidths widths = widths(null, ColumnWidths.MAX_CHARS);
+        widths.number(0, 42);
+        assertEquals(3 * 256, widths.getWidth(0));
+        widths.number(0, -0.25);
+        assertEquals(("-0.25".length() + 1) * 256, widths.getWidth(0));
+        widths.number(0, 1.0 / 3);
+        assertEquals(12 * 256, widths.getWidth(0));
+    }
+
+    @Test
+    public void testDatesRenderedWithMask() {
+        ColumnWidths widths = widths("dd mmmm yyyy hh:mm", ColumnWidths.MAX_CHARS);
+        widths.number(0, 41406.5);
+        assertEquals(("12 September 2013 12:00".length() + 1) * 256, widths.getWidth(0));
+    }
+
+    @Test
+    public void testWidthIsCapped() {
+        ColumnWidths widths = widths(null, 10);
+        widths.text(0, "a value longer than ten characters");
+        assertEquals(10 * 256, widths.getWidth(0));
+    }
+}
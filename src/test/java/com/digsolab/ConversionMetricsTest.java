@@ -0,0 +1,107 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ConversionMetricsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = temp.getRoot();
+        try (OutputStream out = new FileOutputStream(new File(workDir, "in.csv"))) {
+            out.write("id,amount\n1,2.5\n2,n/a\n3,4\n".getBytes("US-ASCII"));
+        }
+    }
+
+    @Test
+    public void testConversionsAppendJsonLines() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            ConverterOptions options = new ConverterOptions();
+            options.parseOptions(new String[] {"-H", "-columns", "N;N", "-output", "out.xlsx", "-metrics", "m.jsonl",
+                    "in.csv"}, workDir);
+            new CsvToXlsConverter().convertToExcel(options);
+        }
+        List<String> lines = Files.readAllLines(new File(workDir, "m.jsonl").toPath(), Charset.forName("UTF-8"));
+        assertEquals(2, lines.size());
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("{\"destination\":\"out.xlsx\",\"state\":\"DONE\","));
+            assertTrue(line, line.contains("\"rows\":3,\"csvBytes\":26,"));
+            assertTrue(line, line.contains("\"fallbacks\":{\"in.csv: amount\":1}"));
+        }
+    }
+
+    @Test
+    public void testSheetTempFileBytesGetRecorded() throws Exception {
+        File tempDir = new File(workDir, "tmp");
+        assertTrue(tempDir.mkdir());
+        String[][] args = {{"-window", "auto", "-compresstemp"}, {"-engine", "stream"},
+                {"-engine", "stream", "-columns", "TW5000;NW3000"}};
+        String[] sheets = {"\"sheetTempFileBytes\":{\"Sheet0\":", "\"sheetTempFileBytes\":{\"Sheet0\":",
+                "\"sheetTempFileBytes\":{\"Sheet0\":0}"};
+        for (int i = 0; i < args.length; i++) {
+            List<String> arguments = new ArrayList<>(Arrays.asList(args[i]));
+            arguments.addAll(Arrays.asList("-tempdir", "tmp", "-output", "out.xlsx", "-metrics", "m" + i + ".jsonl",
+                    "in.csv"));
+            ConverterOptions options = new ConverterOptions();
+            options.parseOptions(arguments.toArray(new String[arguments.size()]), workDir);
+            new CsvToXlsConverter().convertToExcel(options);
+            String line = Files.readAllLines(new File(workDir, "m" + i + ".jsonl").toPath(),
+                    Charset.forName("UTF-8")).get(0);
+            assertTrue(line, line.contains(sheets[i]));
+            // only the sheets with content sized columns of the stream engine need a temp part
+            assertEquals(line, i < 2, !line.contains("\"Sheet0\":0}"));
+        }
+        assertEquals(0, tempDir.list().length);
+        assertTrue(tempDir.delete());
+    }
+
+    @Test
+    public void testMXBeanIsRegisteredWhileRunning() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.digsolab:type=Conversion,*");
+        ConversionMetrics metrics = new ConversionMetrics("out.xlsx");
+        metrics.start();
+        metrics.addRows(42);
+        Set<ObjectName> names = server.queryNames(pattern, null);
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        assertEquals(42L, server.getAttribute(name, "Rows"));
+        assertEquals("OPEN", server.getAttribute(name, "State"));
+        metrics.stop(true);
+        assertTrue(server.queryNames(pattern, null).isEmpty());
+        assertEquals("DONE", metrics.getState());
+    }
+
+    @Test
+    public void testJsonEscaping() {
+        ConversionMetrics metrics = new ConversionMetrics("a \"b\"\\\n");
+        metrics.addFallbacks("x.csv", "c\td", 2);
+        String json = metrics.toJson();
+        assertTrue(json, json.startsWith("{\"destination\":\"a \\\"b\\\"\\\\\\u000a\","));
+        assertTrue(json, json.contains("\"fallbacks\":{\"x.csv: c\\u0009d\":2}"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConversionPipelineTest {
+
+    private static CsvReader reader(final List<List<String>> records) {
+        final Iterator<List<String>> iterator = records.iterator();
+        return new CsvReader() {
+            @Override
+            public List<String> read() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static ColumnEncoder[] encoders() {
+        return new ColumnEncoder[] {
+                ColumnEncoder.compile(0, new Format(Type.NUMBER, null, -1), 1, null, NumberParser.DEFAULT),
+                ColumnEncoder.compile(1, new Format(Type.TEXT, null, -1), 2, null, NumberParser.DEFAULT)};
+    }
+
+    private static List<List<String>> records(int count) {
+        List<List<String>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(Arrays.asList(Integer.toString(i), "row " + i, "dropped"));
+        }
+        return records;
+    }
+
+    @Test
+    public void testSameCellsAsSequentialConversion() throws IOException {
+        List<List<String>> records = records(5000);
+        ColumnEncoder[] encoders = encoders();
+        CellBatch sequential = new CellBatch(16, 2);
+        for (int i = 0; i < records.size(); i++) {
+            sequential.startRow(i + 1);
+            for (int c = 0; c < 2; c++) {
+                encoders[c].encode(sequential, records.get(i).get(c));
+            }
+            sequential.endRow();
+        }
+        CellBatch pipelined = new CellBatch(16, 2);
+        int next = new ConversionPipeline(reader(records), encoders(), 2, "test.csv").run(pipelined, 1);
+        assertEquals(5001, next);
+        CellBatch expected = new CellBatch(16, 2);
+        sequential.replay(expected);
+        CellBatch actual = new CellBatch(16, 2);
+        pipelined.replay(actual);
+        assertEquals(toString(expected), toString(actual));
+    }
+
+    @Test
+    public void testFailureReportsRowIndex() throws IOException {
+        List<List<String>> records = records(3000);
+        records.set(2500, Arrays.asList("1"));
+        CellBatch out = new CellBatch(16, 2);
+        try {
+            new ConversionPipeline(reader(records), encoders(), 2, "test.csv").run(out, 1);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertTrue(illArgEx.getMessage(), illArgEx.getMessage().startsWith("Error in row 2501 of test.csv: "));
+            assertEquals(2500, out.getRowCount());
+        }
+    }
+
+    private static String toString(CellBatch batch) throws IOException {
+        final StringBuilder cells = new StringBuilder();
+        batch.replay(new CellWriter() {
+            @Override
+            public void startRow(int rowIndex) {
+                cells.append('\n').append(rowIndex).append(':');
+            }
+
+            @Override
+            public void writeText(int column, String value, int style) {
+                cells.append(column).append('/').append(style).append('=').append(value).append(';');
+            }
+
+            @Override
+            public void writeNumber(int column, double value, int style) {
+                cells.append(column).append('/').append(style).append('=').append(value).append(';');
+            }
+
+            @Override
+            public void writeBoolean(int column, boolean value, int style) {
+                cells.append(column).append('/').append(style).append('=').append(value).append(';');
+            }
+
+            @Override
+            public void writeHyperlink(int column, String address, int style) {
+                cells.append(column).append('/').append(style).append('=').append(address).append(';');
+            }
+
+            @Override
+            public void writeLinkFormula(int column, String address, int style) {
+                cells.append(column).append('/').append(style).append("=HYPERLINK ").append(address).append(';');
+            }
+
+            @Override
+            public void endRow() {
+            }
+        });
+        return cells.toString();
+    }
+}
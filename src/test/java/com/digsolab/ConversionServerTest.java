@@ -0,0 +1,85 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ConversionServerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+    private File tokenFile;
+    private ConversionServer server;
+    private ConversionClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = temp.getRoot();
+        try (OutputStream out = new FileOutputStream(new File(workDir, "source.csv"))) {
+            out.write("a,b\n1,2\n3,4\n".getBytes("US-ASCII"));
+        }
+        tokenFile = new File(temp.newFolder("home"), "server.token");
+        server = new ConversionServer(0, 1, 4, tokenFile);
+        server.start();
+        client = new ConversionClient(server.getPort(), tokenFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testRunResolvesPathsAgainstClientDirectory() throws IOException {
+        JobStatus status = client.run(workDir, new String[] {"source.csv", "-il", "-output", "result.xlsx"});
+        assertEquals(JobStatus.State.DONE, status.getState());
+        assertTrue(new File(workDir, "result.xlsx").isFile());
+        assertEquals(JobStatus.State.DONE, client.getStatus(status.getId()).getState());
+    }
+
+    @Test
+    public void testClientWithoutTheTokenIsRejected() throws IOException {
+        if (Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        }
+        File otherToken = temp.newFile("other.token");
+        try (OutputStream out = new FileOutputStream(otherToken)) {
+            out.write("guessed\n".getBytes("US-ASCII"));
+        }
+        JobStatus status = new ConversionClient(server.getPort(), otherToken).run(workDir,
+                new String[] {"source.csv", "-output", "intruder.xlsx"});
+        assertEquals(JobStatus.State.REJECTED, status.getState());
+        assertEquals("The server token is missing or wrong", status.getMessage());
+        assertFalse(new File(workDir, "intruder.xlsx").exists());
+    }
+
+    @Test
+    public void testFailedJobReportsError() throws IOException {
+        JobStatus status = client.run(workDir, new String[] {"missing.csv"});
+        assertEquals(JobStatus.State.FAILED, status.getState());
+        assertEquals("The source for the.csv file(s) cannot be found", status.getMessage());
+    }
+
+    @Test
+    public void testSubmitAndUnknownStatus() throws IOException, InterruptedException {
+        JobStatus status = client.submit(workDir, new String[] {"source.csv", "-output", "queued.xlsx"});
+        assertNotEquals(JobStatus.State.REJECTED, status.getState());
+        while (!(status = client.getStatus(status.getId())).isFinished()) {
+            Thread.sleep(10);
+        }
+        assertEquals(JobStatus.State.DONE, status.getState());
+        assertEquals(JobStatus.State.UNKNOWN, client.getStatus(12345).getState());
+    }
+}
@@ -1,5 +1,7 @@
 package com.digsolab;
 
+import java.io.File;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
@@ -182,6 +184,42 @@ public class ConverterOptionsTest {
         }
     }
 
+    @Test
+    public void testLinkFormulaPatternGetsParsed() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-columns", "HF;HFW8000;H", "test.csv"});
+        assertEquals(Type.HYPERLINK_FORMULA, co.getFormat(0).getType());
+        assertEquals(null, co.getFormat(0).getMask());
+        assertEquals(-1, co.getFormat(0).getWidth());
+        assertEquals(Type.HYPERLINK_FORMULA, co.getFormat(1).getType());
+        assertEquals(8000, co.getFormat(1).getWidth());
+        assertEquals(Type.HYPERLINK, co.getFormat(2).getType());
+    }
+
+    @Test
+    public void testEmptyPatternsAreLeftToInference() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-infer", "500", "-columns", "N;;D", "test.csv"});
+        assertEquals(500, co.getInferRows());
+        assertEquals(Type.NUMBER, co.getPattern(0).getType());
+        assertNull(co.getPattern(1));
+        assertEquals(Type.TEXT, co.getFormat(1).getType());
+        assertEquals(Type.DATE, co.getPattern(2).getType());
+        assertNull(co.getPattern(3));
+    }
+
+    @Test
+    public void testPatternsRoundTrip() throws ParseException {
+        String patterns = "B;Dyyyy-mm-ddW7000;H;HFW8000;N0.00%;T";
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-columns", patterns, "test.csv"});
+        Format[] formats = new Format[6];
+        for (int i = 0; i < formats.length; i++) {
+            formats[i] = co.getFormat(i);
+        }
+        assertEquals(patterns, ConverterOptions.toPatterns(formats));
+    }
+
     @Test
     public void testGetFormatReturnsTextFormatIfIndexIsLargerThanLengthOfPatternString() {
         try {
@@ -257,4 +295,370 @@ public class ConverterOptionsTest {
 
         }
     }
+
+    @Test
+    public void testSeparatorLongerThanOneCharacterFailure() {
+        try {
+            String[] args = {"-decimalsep", ",,", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("The decimal separator must be a single character"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testNumberOptionsGetParsed() {
+        try {
+            String[] args = {"-decimalsep", ",", "-groupsep", ".", "-currency", "$;USD", "-percent", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            assertEquals(-1234.5, co.getNumberParser().parse("-$1.234,5"), 0);
+            assertEquals(0.5, co.getNumberParser().parse("50 %"), 0);
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testUnknownEngineFailure() {
+        try {
+            String[] args = {"-engine", "fast", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("Unknown output engine: fast"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testEngineGetsParsed() {
+        try {
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(new String[] {"test.csv"});
+            assertEquals(OutputEngine.POI, co.getEngine());
+            co = new ConverterOptions();
+            co.parseOptions(new String[] {"-engine", "stream", "test.csv"});
+            assertEquals(OutputEngine.STREAM, co.getEngine());
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testMaxWidthOutOfRangeFailure() {
+        try {
+            String[] args = {"-maxwidth", "0", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("The maximum column width must be between 1 and 255"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testThreadsWithPoiEngineFailure() {
+        try {
+            String[] args = {"-threads", "4", "a.csv", "b.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("Parallel conversion requires the stream engine"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testThreadsGetParsed() {
+        try {
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(new String[] {"-engine", "stream", "-threads", "4", "a.csv", "b.csv"});
+            assertEquals(4, co.getThreads());
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testMaxRowsOutOfRangeFailure() {
+        try {
+            String[] args = {"-maxrows", "1", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("The maximum number of rows must be between 2 and 1048576"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testDialectOptionsGetParsed() {
+        try {
+            String[] args = {"-charset", "windows-1251", "-delimiter", "\\t", "-quote", "'", "-reader", "supercsv",
+                    "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            assertEquals("windows-1251", co.getDialect().getCharset().name());
+            assertEquals('\t', co.getDialect().getDelimiter());
+            assertEquals('\'', co.getDialect().getQuote());
+            assertEquals('\'', co.getDialect().getEscape());
+            assertEquals(InputEngine.SUPERCSV, co.getInputEngine());
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testUnknownCharsetFailure() {
+        try {
+            String[] args = {"-charset", "no-such-charset", "test.csv"};
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("Unknown charset: no-such-charset"));
+        }
+        catch (ParseException ex) {
+
+        }
+    }
+
+    @Test
+    public void testBuilderCompilesOptions() {
+        ConverterOptions co = ConverterOptions.builder().headers("A", "B").columns("T", "N")
+                .delimiter(';').engine(OutputEngine.STREAM).threads(2).build();
+        assertArrayEquals(new String[] {"A", "B"}, co.getHeaders());
+        assertEquals(Type.NUMBER, co.getFormat(1).getType());
+        assertEquals(';', co.getDialect().getDelimiter());
+        assertEquals(OutputEngine.STREAM, co.getEngine());
+        assertEquals(2, co.getThreads());
+    }
+
+    @Test
+    public void testBuilderValidatesLikeTheCommandLine() {
+        try {
+            ConverterOptions.builder().threads(2).build();
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("Parallel conversion requires the stream engine"));
+        }
+    }
+
+    @Test
+    public void testStandardStreamsGetParsed() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-", "-output", "-"});
+        assertArrayEquals(new String[] {"-"}, co.getSource());
+        assertTrue(co.readsStandardInput());
+        assertTrue(co.writesToStandardOutput());
+
+        co = new ConverterOptions();
+        co.parseOptions(new String[] {"-output", "out.xlsx", "-;b.csv"});
+        assertArrayEquals(new String[] {"-", "b.csv"}, co.getSource());
+        assertFalse(co.writesToStandardOutput());
+    }
+
+    @Test
+    public void testStandardInputFailures() throws ParseException {
+        String[][] args = {{"-;-", "-output", "-"}, {"-batch", "-outdir", "out", "-"}, {"-"}};
+        String[] messages = {"The standard input can only be read once", "Batch mode does not read the standard input",
+                "Converting the standard input requires an -output path or -"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testSelectionFailures() throws ParseException {
+        String[][] args = {{"-select", "2;1", "-n", "2", "a.csv"}, {"-select", "2;name", "a.csv"}};
+        String[] messages = {"A column selection cannot be combined with -n",
+                "Selecting columns by name requires the header record (-H)"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+        assertEquals(2, ConverterOptions.builder().readHeaders(true).select("b", "1").build().getSelection().size());
+    }
+
+    @Test
+    public void testTempFileOptionsGetParsed() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"a.csv"});
+        assertEquals(100, co.getWindow());
+        assertNull(co.getTempDirectory());
+        assertFalse(co.isTempCompressed());
+
+        co = new ConverterOptions();
+        co.parseOptions(new String[] {"-window", "auto", "-tempdir", ".", "-compresstemp", "a.csv"});
+        assertEquals(ConverterOptions.ADAPTIVE_WINDOW, co.getWindow());
+        assertTrue(co.getTempDirectory().isDirectory());
+        assertTrue(co.isTempCompressed());
+
+        co = new ConverterOptions();
+        co.parseOptions(new String[] {"-window", "5000", "a.csv"});
+        assertEquals(5000, co.getWindow());
+    }
+
+    @Test
+    public void testTempFileOptionFailures() throws ParseException {
+        String[][] args = {{"-window", "0", "a.csv"}, {"-window", "many", "a.csv"}};
+        String[] messages = {"Invalid window 0, expected a number of rows or auto",
+                "Invalid window many, expected a number of rows or auto"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+        try {
+            ConverterOptions.builder().window(-1).build();
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("The window must be a positive number of rows or auto"));
+        }
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-tempdir", "no-such-dir", "a.csv"});
+        try {
+            co.getTempDirectory();
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertThat(illArgEx.getMessage(), is("The temp directory no-such-dir does not exist"));
+        }
+    }
+
+    @Test
+    public void testCompressionOptions() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"a.csv"});
+        assertEquals(6, co.getLevel());
+        assertEquals(1, co.getDeflateThreads());
+
+        co = new ConverterOptions();
+        co.parseOptions(new String[] {"-level", "0", "-deflatethreads", "4", "a.csv"});
+        assertEquals(0, co.getLevel());
+        assertEquals(4, co.getDeflateThreads());
+
+        String[][] args = {{"-level", "10", "a.csv"}, {"-level", "-1", "a.csv"}, {"-deflatethreads", "0", "a.csv"}};
+        String[] messages = {"The compression level must be between 0 and 9",
+                "The compression level must be between 0 and 9", "The number of deflate threads must be at least 1"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testCacheOptions() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"a.csv"});
+        assertNull(co.getCacheDirectory());
+
+        co = new ConverterOptions();
+        co.parseOptions(new String[] {"-engine", "stream", "-cache", "cache", "-cachesize", "64", "a.csv"},
+                new File("work"));
+        assertEquals(new File("work", "cache"), co.getCacheDirectory());
+        assertEquals(64L << 20, co.getCacheBytes());
+
+        String[][] args = {{"-cache", "cache", "a.csv"}, {"-engine", "stream", "-cache", "cache", "-cachesize", "0",
+                "a.csv"}};
+        String[] messages = {"The sheet cache requires the stream engine", "The sheet cache size must be at least 1 MB"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testSheetFingerprintFollowsTheOptions() throws ParseException {
+        String[][] args = {{"a.csv"}, {"b.csv"}, {"-sample", "0.5", "-seed", "1", "a.csv"},
+                {"-numlocale", "de-DE", "a.csv"}, {"-level", "1", "a.csv"}};
+        String[] fingerprints = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            ConverterOptions co = new ConverterOptions();
+            co.parseOptions(args[i]);
+            fingerprints[i] = co.getSheetFingerprint();
+        }
+        assertEquals(fingerprints[0], fingerprints[1]);
+        for (int i = 2; i < args.length; i++) {
+            assertNotEquals(fingerprints[0], fingerprints[i]);
+        }
+    }
+
+    @Test
+    public void testToCsvOptions() throws ParseException {
+        ConverterOptions co = new ConverterOptions();
+        co.parseOptions(new String[] {"-tocsv", "-sheets", "Orders;2", "book.xlsx"});
+        assertTrue(co.isToCsv());
+        assertArrayEquals(new String[] {"Orders", "2"}, co.getSheets());
+
+        String[][] args = {{"-sheets", "1", "a.csv"}, {"-tocsv", "-batch", "books"}, {"-tocsv", "-output", "x", "-"},
+                {"-tocsv", "-output", "a.csv", "a.xlsx;b.xlsx"}};
+        String[] messages = {"Selecting sheets requires -tocsv", "The csv conversion cannot be combined with -batch",
+                "The csv conversion reads the workbooks from files",
+                "The csv files of several sheets are written into -outdir, not to -output"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new ConverterOptions().parseOptions(args[i]);
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertThat(illArgEx.getMessage(), is(messages[i]));
+            }
+        }
+    }
 }
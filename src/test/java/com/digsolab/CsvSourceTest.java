@@ -0,0 +1,100 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class CsvSourceTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+    private ConverterOptions options;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = temp.getRoot();
+        options = ConverterOptions.builder().workingDirectory(workDir).build();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes("US-ASCII"));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> readAll(CsvReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try {
+            List<String> record;
+            while ((record = reader.read()) != null) {
+                lines.add(record.toString());
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private void write(String name, byte[] content) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(workDir, name))) {
+            out.write(content);
+        }
+    }
+
+    @Test
+    public void testGzipFileRecognizedByMagicBytes() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append(i).append(",x\n");
+        }
+        write("export", gzip(text.toString()));
+        List<CsvSource> sources = CsvSource.expand("export", options);
+        List<String> lines = readAll(sources.get(0).open(options));
+        assertEquals(100000, lines.size());
+        assertEquals("[99999, x]", lines.get(99999));
+    }
+
+    @Test
+    public void testZipEntriesBecomeSources() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (String name : new String[] {"b.csv", "readme.txt", "a.CSV"}) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write((name + ",1\n").getBytes("US-ASCII"));
+            }
+        }
+        write("exports.zip", bytes.toByteArray());
+        List<CsvSource> sources = CsvSource.expand("exports.zip", options);
+        assertEquals(2, sources.size());
+        assertEquals("exports.zip!/b.csv", sources.get(0).getDescription());
+        assertEquals(Collections.singletonList("[a.CSV, 1]"), readAll(sources.get(1).open(options)));
+    }
+
+    @Test
+    public void testGzipStreamIsInflated() throws IOException {
+        CsvSource source = CsvSource.of("Data", new ByteArrayInputStream(gzip("a,b\n1,2\n")));
+        assertEquals(2, readAll(source.open(options)).size());
+        source = CsvSource.of("Data", new ByteArrayInputStream("a".getBytes("US-ASCII")));
+        assertEquals(Collections.singletonList("[a]"), readAll(source.open(options)));
+    }
+}
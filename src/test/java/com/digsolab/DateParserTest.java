@@ -0,0 +1,72 @@
+package com.digsolab;
+
+import java.text.SimpleDateFormat;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DateParserTest {
+
+    private static double poiSerial(String javaPattern, String value) throws Exception {
+        return DateUtil.getExcelDate(new SimpleDateFormat(javaPattern).parse(value));
+    }
+
+    @Test
+    public void testIsoTimestampMatchesPoiSerial() throws Exception {
+        assertEquals(poiSerial("yyyy-MM-dd HH:mm:ss", "1997-02-03 11:20:20"),
+                DateParser.ISO.toExcelSerial("1997-02-03 11:20:20"), 0);
+        assertEquals(poiSerial("yyyy-MM-dd HH:mm:ss.SSS", "2000-12-31 23:59:59.123"),
+                DateParser.ISO.toExcelSerial("2000-12-31T23:59:59.123"), 0);
+        assertEquals(poiSerial("yyyy-MM-dd", "2013-05-12"), DateParser.ISO.toExcelSerial("2013-05-12"), 0);
+    }
+
+    @Test
+    public void testSerialsAroundFictitiousLeapDay() {
+        assertEquals(1.0, DateParser.ISO.toExcelSerial("1900-01-01"), 0);
+        assertEquals(59.0, DateParser.ISO.toExcelSerial("1900-02-28"), 0);
+        assertEquals(61.0, DateParser.ISO.toExcelSerial("1900-03-01"), 0);
+    }
+
+    @Test
+    public void testInvalidValuesReturnNaN() {
+        assertTrue(Double.isNaN(DateParser.ISO.toExcelSerial("")));
+        assertTrue(Double.isNaN(DateParser.ISO.toExcelSerial("N/A")));
+        assertTrue(Double.isNaN(DateParser.ISO.toExcelSerial("2013-02-30")));
+        assertTrue(Double.isNaN(DateParser.ISO.toExcelSerial("2013-05-12 25:00:00")));
+        assertTrue(Double.isNaN(DateParser.ISO.toExcelSerial("1899-12-31")));
+    }
+
+    @Test
+    public void testInputPattern() throws Exception {
+        DateParser parser = DateParser.forPattern("dd.MM.yyyy h:mm a");
+        assertEquals(poiSerial("yyyy-MM-dd HH:mm", "2013-05-12 22:05"), parser.toExcelSerial("12.05.2013 10:05 PM"), 0);
+        assertTrue(Double.isNaN(parser.toExcelSerial("2013-05-12 22:05")));
+    }
+
+    @Test
+    public void testLayoutDerivedFromExcelMask() throws Exception {
+        DateParser parser = DateParser.forColumn(null, "dd/mm/yyyy hh:mm");
+        assertEquals(poiSerial("yyyy-MM-dd HH:mm", "2013-05-12 22:05"), parser.toExcelSerial("12/05/2013 22:05"), 0);
+        assertEquals(poiSerial("yyyy-MM-dd", "2013-05-12"), parser.toExcelSerial("2013-05-12"), 0);
+        assertEquals(poiSerial("yyyy-MM-dd", "2013-05-12"),
+                DateParser.forColumn(null, "d mmm yyyy").toExcelSerial("12 May 2013"), 0);
+    }
+
+    @Test
+    public void testNumericMaskIsNotADateLayout() {
+        assertSame(DateParser.ISO, DateParser.forColumn(null, "### ###.###"));
+        assertSame(DateParser.ISO, DateParser.forPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    @Test
+    public void testInvalidInputPatternFailure() {
+        try {
+            DateParser.forPattern("yyyy-MM-dd Q");
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("The date input pattern is in invalid format", illArgEx.getMessage());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.digsolab;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FormatInferenceTest {
+
+    private static Format infer(String... values) {
+        FormatInference inference = new FormatInference(1, null, NumberParser.DEFAULT.withPercent(true));
+        for (String value : values) {
+            inference.add(Arrays.asList(value));
+        }
+        return inference.getFormat(0);
+    }
+
+    private static void assertFormat(Type type, String mask, Format format) {
+        assertEquals(type, format.getType());
+        assertEquals(mask, format.getMask());
+        assertEquals(-1, format.getWidth());
+    }
+
+    @Test
+    public void testTypes() {
+        assertFormat(Type.NUMBER, null, infer("1", "-2.5", "", " 3 "));
+        assertFormat(Type.NUMBER, null, infer("0", "1", "1"));
+        assertFormat(Type.BOOLEAN, null, infer("yes", "No", "1"));
+        assertFormat(Type.DATE, "yyyy-mm-dd", infer("2024-01-02", "2024-12-31"));
+        assertFormat(Type.DATE, "yyyy-mm-dd hh:mm:ss", infer("2024-01-02", "2024-01-02T10:30"));
+        assertFormat(Type.HYPERLINK, null, infer("https://example.com/a", "mailto:x@example.com"));
+        assertFormat(Type.TEXT, null, infer("https://example.com/a b"));
+        assertFormat(Type.TEXT, null, infer("1", "2", "n/a"));
+        assertFormat(Type.TEXT, null, infer("", ""));
+    }
+
+    @Test
+    public void testNumberMasks() {
+        assertFormat(Type.NUMBER, "0.00%", infer("50%", "12.5%"));
+        assertFormat(Type.NUMBER, "0", infer("1", "123456789012"));
+        assertFormat(Type.TEXT, null, infer("01234", "12345"));
+        assertFormat(Type.TEXT, null, infer("4111111111111111111"));
+        assertFormat(Type.NUMBER, null, infer("0.5", "-0.25"));
+    }
+
+    @Test
+    public void testDateInputPattern() {
+        FormatInference inference = new FormatInference(2, DateParser.forPattern("dd.MM.yyyy"), NumberParser.DEFAULT);
+        inference.add(Arrays.asList("17.10.2026", "2026-10-17"));
+        assertFormat(Type.DATE, "yyyy-mm-dd", inference.getFormat(0));
+        assertFormat(Type.TEXT, null, inference.getFormat(1));
+    }
+}
@@ -0,0 +1,42 @@
+package com.digsolab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NumberParserTest {
+
+    @Test
+    public void testPlainNumbersMatchParseDouble() {
+        String[] values = {"0", "170", "-9.45", "+1", "5432.55235234523", "1e5", "1.5E-7", ".5", "7.",
+                "123456789012345678901234567890", "0.1000000000000000055511151231257827", "  42  "};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), NumberParser.DEFAULT.parse(value), 0);
+        }
+    }
+
+    @Test
+    public void testDirtyValuesReturnNaN() {
+        String[] values = {"", " ", "N/A", "-", "1,234", "12abc", "1e", "0x1p3", "Infinity", "NaN", "12d", "1e999"};
+        for (String value : values) {
+            assertTrue(value, Double.isNaN(NumberParser.DEFAULT.parse(value)));
+        }
+    }
+
+    @Test
+    public void testSeparatorsCurrencyAndPercent() {
+        NumberParser parser = NumberParser.DEFAULT.withSeparators(',', '.')
+                .withCurrencySymbols(new String[] {"EUR", "\u20ac"}).withPercent(true);
+        assertEquals(1234567.89, parser.parse("1.234.567,89"), 0);
+        assertEquals(-1234.5, parser.parse("-1.234,50 \u20ac"), 0);
+        assertEquals(99.0, parser.parse("EUR 99"), 0);
+        assertEquals(0.125, parser.parse("12,5%"), 0);
+        assertTrue(Double.isNaN(parser.parse("1..234")));
+        assertTrue(Double.isNaN(parser.parse(".234")));
+    }
+
+    @Test
+    public void testLocaleSeparators() {
+        NumberParser parser = NumberParser.forLocale("de-DE");
+        assertEquals(1234.5, parser.parse("1.234,5"), 0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class PoiWorkbookWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static String inject(String template, String rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PoiWorkbookWriter.injectWorksheet(new ByteArrayInputStream(template.getBytes(UTF_8)), out,
+                new ByteArrayInputStream(rows.getBytes(UTF_8)));
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    @Test
+    public void testRowsReplaceTheEmptySheetData() throws IOException {
+        String rows = "<row r=\"1\"><c r=\"A1\" t=\"inlineStr\">"
+                + "<is><t>\u0442\u0435\u043a\u0441\u0442</t></is></c></row>";
+        assertEquals("<worksheet><sheetViews/><sheetData>" + rows
+                + "</sheetData><autoFilter ref=\"A1\"/></worksheet>",
+                inject("<worksheet><sheetViews/><sheetData/><autoFilter ref=\"A1\"/></worksheet>", rows));
+        assertEquals("<worksheet><sheetData>" + rows + "</sheetData></worksheet>",
+                inject("<worksheet><sheetData></sheetData></worksheet>", rows));
+        assertEquals("<x:sheetDat/><<sheetData>" + rows + "</sheetData>",
+                inject("<x:sheetDat/><<sheetData />", rows));
+        try {
+            inject("<worksheet/>", rows);
+            fail();
+        }
+        catch (IOException ioEx) {
+            assertEquals("The sheet xml has no sheet data", ioEx.getMessage());
+        }
+    }
+
+    @Test
+    public void testOtherLevelsWriteTheSameCells() throws Exception {
+        File csv = temp.newFile("in.csv");
+        try (OutputStream out = new FileOutputStream(csv)) {
+            StringBuilder content = new StringBuilder("name,amount,link\n");
+            for (int i = 0; i < 300; i++) {
+                content.append("name ").append(i).append(',').append(i * 0.5).append(",http://example.com/")
+                        .append(i).append('\n');
+            }
+            out.write(content.toString().getBytes(UTF_8));
+        }
+        String[][] args = {{}, {"-level", "1"}, {"-level", "9", "-deflatethreads", "2", "-window", "16"}};
+        for (String[] extra : args) {
+            File output = new File(temp.getRoot(), "out" + extra.length + ".xlsx");
+            String[] common = {"-H", "-columns", "T;N0.0;H", "-output", output.getPath(), csv.getPath()};
+            String[] arguments = new String[extra.length + common.length];
+            System.arraycopy(extra, 0, arguments, 0, extra.length);
+            System.arraycopy(common, 0, arguments, extra.length, common.length);
+            ConverterOptions options = new ConverterOptions();
+            options.parseOptions(arguments);
+            new CsvToXlsConverter().convertToExcel(options);
+            try (InputStream in = new FileInputStream(output)) {
+                XSSFSheet sheet = new XSSFWorkbook(in).getSheetAt(0);
+                assertEquals(300, sheet.getLastRowNum());
+                assertEquals("name 299", sheet.getRow(300).getCell(0).getStringCellValue());
+                assertEquals(149.5, sheet.getRow(300).getCell(1).getNumericCellValue(), 0);
+                assertEquals("http://example.com/299", sheet.getRow(300).getCell(2).getHyperlink().getAddress());
+                assertEquals("A1:C301", sheet.getCTWorksheet().getAutoFilter().getRef());
+            }
+        }
+    }
+}
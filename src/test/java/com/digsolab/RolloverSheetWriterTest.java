@@ -0,0 +1,149 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RolloverSheetWriterTest {
+
+    /**
+     * Records the sheets created and the calls they receive as text.
+     */
+    private static final class RecordingWorkbook implements WorkbookWriter {
+
+        final List<String> sheets = new ArrayList<>();
+        final List<StringBuilder> calls = new ArrayList<>();
+
+        @Override
+        public int createStyle(Format format) {
+            return 1;
+        }
+
+        @Override
+        public int getHeaderStyle() {
+            return 0;
+        }
+
+        @Override
+        public StyleRegistry getStyleRegistry() {
+            return null;
+        }
+
+        @Override
+        public long getTempFileBytes() {
+            return 0;
+        }
+
+        @Override
+        public Map<String, Long> getSheetTempFileBytes() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public SheetWriter createSheet(int sourceIndex, String name, ColumnWidths columnWidths) {
+            sheets.add(sourceIndex + ":" + name);
+            final StringBuilder log = new StringBuilder();
+            calls.add(log);
+            return new SheetWriter() {
+                @Override
+                public void startRow(int rowIndex) {
+                    log.append(rowIndex).append('[');
+                }
+
+                @Override
+                public void writeText(int column, String value, int style) {
+                    log.append(value).append(' ');
+                }
+
+                @Override
+                public void writeNumber(int column, double value, int style) {
+                    log.append(value).append(' ');
+                }
+
+                @Override
+                public void writeBoolean(int column, boolean value, int style) {
+                    log.append(value).append(' ');
+                }
+
+                @Override
+                public void writeHyperlink(int column, String address, int style) {
+                    log.append(address).append(' ');
+                }
+
+                @Override
+                public void writeLinkFormula(int column, String address, int style) {
+                    log.append('=').append(address).append(' ');
+                }
+
+                @Override
+                public void endRow() {
+                    log.append("] ");
+                }
+
+                @Override
+                public void finish(int lastRow, int colCount) {
+                    log.append("finish ").append(lastRow).append('x').append(colCount);
+                }
+            };
+        }
+
+        @Override
+        public void write() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    private static void writeRows(SheetWriter out, int rows) throws IOException {
+        for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+            out.startRow(rowIndex);
+            out.writeText(0, "r" + rowIndex, 1);
+            out.endRow();
+        }
+        out.finish(rows, 1);
+    }
+
+    private static RolloverSheetWriter rollover(RecordingWorkbook workbook, int maxRows) throws IOException {
+        return new RolloverSheetWriter(workbook, 2, "Sheet2", new String[] {"H"}, new Format[] {new Format(Type.TEXT, null, -1)},
+                ColumnWidths.MAX_CHARS, maxRows);
+    }
+
+    @Test
+    public void testRowsContinueOnNewSheetsWithHeader() throws IOException {
+        RecordingWorkbook workbook = new RecordingWorkbook();
+        writeRows(rollover(workbook, 3), 5);
+        assertEquals("[2:Sheet2, 2:Sheet2 (2), 2:Sheet2 (3)]", workbook.sheets.toString());
+        assertEquals("0[H ] 1[r1 ] 2[r2 ] finish 2x1", workbook.calls.get(0).toString());
+        assertEquals("0[H ] 1[r3 ] 2[r4 ] finish 2x1", workbook.calls.get(1).toString());
+        assertEquals("0[H ] 1[r5 ] finish 1x1", workbook.calls.get(2).toString());
+    }
+
+    @Test
+    public void testNoEmptyContinuationSheet() throws IOException {
+        RecordingWorkbook workbook = new RecordingWorkbook();
+        writeRows(rollover(workbook, 3), 4);
+        assertEquals(2, workbook.sheets.size());
+        assertEquals("0[H ] 1[r3 ] 2[r4 ] finish 2x1", workbook.calls.get(1).toString());
+
+        workbook = new RecordingWorkbook();
+        writeRows(rollover(workbook, 3), 0);
+        assertEquals("[2:Sheet2]", workbook.sheets.toString());
+        assertEquals("0[H ] finish 0x1", workbook.calls.get(0).toString());
+    }
+
+    @Test
+    public void testContinuationNamesFitTheSheetNameLimit() {
+        assertEquals("Sales", RolloverSheetWriter.getSheetName("Sales", 0));
+        assertEquals("Sales (2)", RolloverSheetWriter.getSheetName("Sales", 1));
+        String name = "A sheet name of 31 characters!!";
+        assertEquals(31, name.length());
+        assertEquals("A sheet name of 31 charact (12)", RolloverSheetWriter.getSheetName(name, 11));
+    }
+}
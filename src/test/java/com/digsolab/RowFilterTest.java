@@ -0,0 +1,102 @@
+package com.digsolab;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowFilterTest {
+
+    private static final List<String> HEADER = Arrays.asList("id", "status", "amount");
+
+    private static List<String> filter(RowFilter filter, String... records) throws IOException {
+        final Iterator<String> lines = Arrays.asList(records).iterator();
+        FilteringCsvReader reader = new FilteringCsvReader(new CsvReader() {
+            @Override
+            public List<String> read() {
+                return lines.hasNext() ? Arrays.asList(lines.next().split(",", -1)) : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, filter, filter.resolve(HEADER, "test.csv"));
+        List<String> ids = new ArrayList<>();
+        List<String> record;
+        while ((record = reader.read()) != null) {
+            ids.add(record.get(0));
+        }
+        return ids;
+    }
+
+    private static RowFilter where(String... conditions) {
+        return new RowFilter(Arrays.asList(conditions), NumberParser.DEFAULT, 0, 0, 1, 1, null);
+    }
+
+    @Test
+    public void testConditions() throws IOException {
+        String[] records = {"1,open,50", "2,closed,150", "3,open,250", "4,open,n/a", "5,open,"};
+        assertEquals(Arrays.asList("3"), filter(where("status=open", "amount>=100"), records));
+        assertEquals(Arrays.asList("1", "3"), filter(where("3<300", "2!=closed"), records));
+        assertEquals(Arrays.asList("2", "5"), filter(where("id~^[25]$"), records));
+        assertEquals(Arrays.asList("4"), filter(where("amount>m"), records));
+    }
+
+    @Test
+    public void testNullFieldsCompareAsEmpty() {
+        RowFilter filter = where("status=open", "amount<100");
+        int[] indexes = filter.resolve(HEADER, "test.csv");
+        assertFalse(filter.matches(Arrays.asList("1", null, "50"), indexes));
+        assertFalse(filter.matches(Arrays.asList("2", "open", null), indexes));
+        assertTrue(filter.matches(Arrays.asList("3", "open", "50"), indexes));
+        RowFilter empty = where("status=", "id!=x", "amount~^$");
+        assertTrue(empty.matches(Arrays.asList("4", null, null), empty.resolve(HEADER, "test.csv")));
+    }
+
+    @Test
+    public void testNumbersFollowTheNumberParser() {
+        RowFilter filter = new RowFilter(Arrays.asList("amount>=1000,5"),
+                NumberParser.forLocale("de-DE"), 0, 0, 1, 1, null);
+        int[] indexes = filter.resolve(HEADER, "test.csv");
+        assertTrue(filter.matches(Arrays.asList("1", "open", "1.000,50"), indexes));
+        assertFalse(filter.matches(Arrays.asList("2", "open", "999,99"), indexes));
+        assertFalse(filter.matches(Arrays.asList("3", "open", "n/a"), indexes));
+    }
+
+    @Test
+    public void testSamplingOptions() throws IOException {
+        String[] records = new String[20];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = i + ",open," + i;
+        }
+        List<String> none = Collections.emptyList();
+        assertEquals(Arrays.asList("2", "5", "8"),
+                filter(new RowFilter(none, NumberParser.DEFAULT, 2, 3, 3, 1, null), records));
+        List<String> sample = filter(new RowFilter(none, NumberParser.DEFAULT, 0, 0, 1, 0.5, 42L), records);
+        assertEquals(sample, filter(new RowFilter(none, NumberParser.DEFAULT, 0, 0, 1, 0.5, 42L), records));
+        assertTrue(sample.size() > 0 && sample.size() < records.length);
+    }
+
+    @Test
+    public void testInvalidFilters() {
+        try {
+            where("amount");
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("Invalid row condition amount, expected e.g. name=value", illArgEx.getMessage());
+        }
+        try {
+            new RowFilter(Collections.<String>emptyList(), NumberParser.DEFAULT, 0, 0, 1, 0, null);
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("The sample fraction must be greater than 0 and at most 1", illArgEx.getMessage());
+        }
+    }
+}
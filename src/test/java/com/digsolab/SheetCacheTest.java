@@ -0,0 +1,227 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class SheetCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = temp.getRoot();
+        cacheDir = new File(workDir, "cache");
+        write("a.csv", "id,amount\n1,2.5\n2,4\n");
+        write("b.csv", "name,link\nx,http://example.com/x\ny,http://example.com/y\n");
+    }
+
+    private void write(String name, String csv) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(workDir, name))) {
+            out.write(csv.getBytes("US-ASCII"));
+        }
+    }
+
+    private void convert(String output, String... extra) throws Exception {
+        String[] args = {"-engine", "stream", "-cache", "cache", "-H", "-columns", "T;H", "-output", output,
+                "a.csv;b.csv"};
+        String[] arguments = new String[extra.length + args.length];
+        System.arraycopy(extra, 0, arguments, 0, extra.length);
+        System.arraycopy(args, 0, arguments, extra.length, args.length);
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(arguments, workDir);
+        new CsvToXlsConverter().convertToExcel(options);
+    }
+
+    private Map<String, String> readParts(String output) throws IOException {
+        Map<String, String> parts = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(new File(workDir, output)))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    content.write(buffer, 0, read);
+                }
+                parts.put(entry.getName(), content.toString("UTF-8"));
+            }
+        }
+        return parts;
+    }
+
+    private String[] cacheEntries() {
+        String[] entries = cacheDir.list();
+        assertNotNull(entries);
+        return entries;
+    }
+
+    @Test
+    public void testUnchangedSourcesAreReused() throws Exception {
+        convert("first.xlsx");
+        assertEquals(2, cacheEntries().length);
+        for (String entry : cacheEntries()) {
+            new File(cacheDir, entry).setLastModified(0);
+        }
+        convert("second.xlsx");
+        assertEquals(readParts("first.xlsx"), readParts("second.xlsx"));
+        for (String entry : cacheEntries()) {
+            assertTrue(entry, new File(cacheDir, entry).lastModified() > 0);
+        }
+
+        write("b.csv", "name,link\nz,http://example.com/z\n");
+        convert("third.xlsx");
+        assertEquals(3, cacheEntries().length);
+        Map<String, String> parts = readParts("third.xlsx");
+        assertEquals(readParts("first.xlsx").get("xl/worksheets/sheet1.xml"), parts.get("xl/worksheets/sheet1.xml"));
+        assertTrue(parts.get("xl/worksheets/_rels/sheet2.xml.rels").contains("http://example.com/z"));
+        try (InputStream in = new FileInputStream(new File(workDir, "third.xlsx"))) {
+            XSSFWorkbook workbook = new XSSFWorkbook(in);
+            assertEquals("2.5", workbook.getSheet("Sheet0").getRow(1).getCell(1).getStringCellValue());
+            assertEquals("z", workbook.getSheet("Sheet1").getRow(1).getCell(0).getStringCellValue());
+        }
+    }
+
+    @Test
+    public void testOtherOptionsMissTheCache() throws Exception {
+        convert("first.xlsx");
+        convert("second.xlsx", "-level", "1");
+        assertEquals(4, cacheEntries().length);
+    }
+
+    @Test
+    public void testCorruptEntriesAreConvertedAgain() throws Exception {
+        convert("first.xlsx");
+        for (String entry : cacheEntries()) {
+            try (OutputStream out = new FileOutputStream(new File(cacheDir, entry))) {
+                out.write(new byte[] {0x45, 0x58, 0x4c, 0x53, 0, 0, 0, 1, 0, 0});
+            }
+        }
+        convert("second.xlsx");
+        assertEquals(readParts("first.xlsx"), readParts("second.xlsx"));
+        assertEquals(2, cacheEntries().length);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        SheetCache cache = new SheetCache(cacheDir, 150, workDir, 6);
+        for (int i = 0; i < 3; i++) {
+            DeflatedPart.Output out = new DeflatedPart.Output(6, workDir, null);
+            out.write(("<worksheet>" + i + "</worksheet>").getBytes("UTF-8"));
+            SheetCache.Sheet sheet = new SheetCache.Sheet("Sheet0", "$A$1:$A$1", out.finish(), null, null);
+            cache.store("key" + i, Collections.<StyleRegistry.Key, Integer>emptyMap(),
+                    Collections.singletonList(sheet));
+            new File(cacheDir, "key" + i + ".sheets").setLastModified(i * 1000000L);
+        }
+        assertArrayEquals(new String[] {"key2.sheets"}, cacheEntries());
+        assertEquals(3, workDir.list().length);
+        SheetCache.Entry entry = cache.load("key2");
+        assertNotNull(entry);
+        assertEquals(1, entry.getSheetCount());
+        assertNull(cache.load("key0"));
+    }
+
+    @Test
+    public void testCachedCellsAreRenumbered() throws Exception {
+        SheetCache cache = new SheetCache(cacheDir, 1 << 20, workDir, 6);
+        Map<StyleRegistry.Key, Integer> styles = new LinkedHashMap<>();
+        styles.put(StyleRegistry.Key.HEADER, 1);
+        styles.put(StyleRegistry.Key.of(new Format(Type.NUMBER, "0.00", -1)), 2);
+        styles.put(StyleRegistry.Key.of(new Format(Type.TEXT, null, -1)), 3);
+        DeflatedPart.Output out = new DeflatedPart.Output(6, workDir, null);
+        out.write(("<sheetData><row r=\"1\"><c r=\"A1\" s=\"1\" t=\"inlineStr\">"
+                + "<is><t>a &quot;s=&quot;</t></is></c>"
+                + "</row><row r=\"2\"><c r=\"A2\" s=\"3\" t=\"inlineStr\"><is><t>x</t></is></c></row></sheetData>")
+                .getBytes("UTF-8"));
+        BitSet used = new BitSet();
+        used.set(1);
+        used.set(3);
+        cache.store("key", styles, Collections.singletonList(
+                new SheetCache.Sheet("Sheet0", "$A$1:$A$2", out.finish(), null, used)));
+
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(new String[] {"a.csv"});
+        ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+        StreamingWorkbookWriter writer = new StreamingWorkbookWriter(xlsx, options);
+        try {
+            writer.createStyle(new Format(Type.TEXT, null, -1));
+            assertTrue(cache.load("key").addTo(writer, 0));
+            assertEquals(2, writer.getStyleRegistry().getUniqueCount());
+            writer.write();
+        }
+        finally {
+            writer.dispose();
+        }
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(xlsx.toByteArray()))) {
+            ZipEntry entry;
+            while (!(entry = in.getNextEntry()).getName().equals("xl/worksheets/sheet1.xml")) {
+                assertNotNull(entry);
+            }
+            ByteArrayOutputStream sheet = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                sheet.write(buffer, 0, read);
+            }
+            assertEquals("<sheetData><row r=\"1\"><c r=\"A1\" s=\"2\" t=\"inlineStr\">"
+                    + "<is><t>a &quot;s=&quot;</t></is></c>"
+                    + "</row><row r=\"2\"><c r=\"A2\" s=\"1\" t=\"inlineStr\"><is><t>x</t></is></c></row></sheetData>",
+                    sheet.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testSourcesAfterAChangedSourceAreReused() throws Exception {
+        String[] args = {"-engine", "stream", "-cache", "cache", "-H", "-infer", "10", "-output", "out.xlsx",
+                "a.csv;b.csv"};
+        write("a.csv", "id,amount\n1,2.5\n2,4\n");
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(args, workDir);
+        new CsvToXlsConverter().convertToExcel(options);
+        Map<String, byte[]> entries = new HashMap<>();
+        for (String entry : cacheEntries()) {
+            entries.put(entry, Files.readAllBytes(new File(cacheDir, entry).toPath()));
+        }
+
+        write("a.csv", "day,amount\n2014-06-01,2.5\n2014-06-02,4\n");
+        new CsvToXlsConverter().convertToExcel(options);
+        assertEquals(3, cacheEntries().length);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(),
+                    Files.readAllBytes(new File(cacheDir, entry.getKey()).toPath()));
+        }
+        try (InputStream in = new FileInputStream(new File(workDir, "out.xlsx"))) {
+            XSSFWorkbook workbook = new XSSFWorkbook(in);
+            assertEquals("yyyy-mm-dd", workbook.getSheet("Sheet0").getRow(1).getCell(0).getCellStyle()
+                    .getDataFormatString());
+            assertEquals("x", workbook.getSheet("Sheet1").getRow(1).getCell(0).getStringCellValue());
+            assertEquals("General", workbook.getSheet("Sheet1").getRow(1).getCell(0).getCellStyle()
+                    .getDataFormatString());
+            assertTrue(workbook.getSheet("Sheet1").getRow(0).getCell(0).getCellStyle().getFont().getBold());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class StreamingWorkbookWriterTest {
+
+    private static final String CSV = "name,amount,paid,link\n"
+            + "first,2.5,true,http://example.com/a\n"
+            + "second & <third>,n/a,false,http://example.com/b?x=1&y=2\n"
+            + "fourth,-1000,true,\n";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File csv;
+
+    @Before
+    public void setUp() throws Exception {
+        csv = temp.newFile("in.csv");
+        try (OutputStream out = new FileOutputStream(csv)) {
+            out.write(CSV.getBytes("UTF-8"));
+        }
+    }
+
+    private XSSFWorkbook convert(String engine) throws Exception {
+        File output = new File(temp.getRoot(), engine + ".xlsx");
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(new String[] {"-engine", engine, "-H", "-columns", "T;N0.00;B;H", "-output",
+                output.getPath(), csv.getPath()});
+        new CsvToXlsConverter().convertToExcel(options);
+        try (InputStream in = new FileInputStream(output)) {
+            return new XSSFWorkbook(in);
+        }
+    }
+
+    @Test
+    public void testCellsMatchThePoiEngine() throws Exception {
+        XSSFSheet expected = convert("poi").getSheetAt(0);
+        XSSFSheet actual = convert("stream").getSheetAt(0);
+        assertEquals(expected.getSheetName(), actual.getSheetName());
+        assertEquals(expected.getLastRowNum(), actual.getLastRowNum());
+        for (int r = 0; r <= expected.getLastRowNum(); r++) {
+            XSSFRow expectedRow = expected.getRow(r);
+            XSSFRow actualRow = actual.getRow(r);
+            for (int c = 0; c < 4; c++) {
+                XSSFCell expectedCell = expectedRow.getCell(c);
+                XSSFCell actualCell = actualRow.getCell(c);
+                String at = r + ":" + c;
+                if (expectedCell == null || expectedCell.getCellType() == Cell.CELL_TYPE_BLANK) {
+                    assertTrue(at, actualCell == null || actualCell.getCellType() == Cell.CELL_TYPE_BLANK
+                            || actualCell.getStringCellValue().isEmpty());
+                    continue;
+                }
+                assertEquals(at, expectedCell.getCellType(), actualCell.getCellType());
+                assertEquals(at, expectedCell.toString(), actualCell.toString());
+                assertEquals(at, expectedCell.getCellStyle().getDataFormatString(),
+                        actualCell.getCellStyle().getDataFormatString());
+                assertEquals(at, expectedCell.getCellStyle().getFont().getBold(),
+                        actualCell.getCellStyle().getFont().getBold());
+                assertEquals(at, expectedCell.getHyperlink() != null, actualCell.getHyperlink() != null);
+                if (expectedCell.getHyperlink() != null) {
+                    assertEquals(at, expectedCell.getHyperlink().getAddress(), actualCell.getHyperlink().getAddress());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWidthsCoverAllRows() throws Exception {
+        File longCsv = temp.newFile("long.csv");
+        try (OutputStream out = new FileOutputStream(longCsv)) {
+            StringBuilder content = new StringBuilder("name,amount\n");
+            for (int i = 0; i < 3000; i++) {
+                content.append(i > 200 ? "a rather long name that only shows up after the first rows " : "n")
+                        .append(i).append(',').append(i).append('\n');
+            }
+            out.write(content.toString().getBytes("UTF-8"));
+        }
+        int[] widths = new int[2];
+        for (String engine : new String[] {"poi", "stream"}) {
+            File output = new File(temp.getRoot(), engine + "-long.xlsx");
+            ConverterOptions options = new ConverterOptions();
+            options.parseOptions(new String[] {"-engine", engine, "-H", "-output", output.getPath(),
+                    longCsv.getPath()});
+            new CsvToXlsConverter().convertToExcel(options);
+            try (InputStream in = new FileInputStream(output)) {
+                XSSFSheet sheet = new XSSFWorkbook(in).getSheetAt(0);
+                assertEquals(3000, sheet.getLastRowNum());
+                widths[engine.equals("poi") ? 0 : 1] = sheet.getColumnWidth(0);
+            }
+        }
+        assertTrue(widths[0] > 50 * 256);
+        assertEquals(widths[0], widths[1]);
+    }
+
+    @Test
+    public void testTypedCellsAndAutoFilter() throws Exception {
+        XSSFWorkbook workbook = convert("stream");
+        XSSFSheet sheet = workbook.getSheetAt(0);
+        assertTrue(sheet.getRow(0).getCell(0).getCellStyle().getFont().getBold());
+        assertEquals(2.5, sheet.getRow(1).getCell(1).getNumericCellValue(), 0);
+        assertEquals("0.00", sheet.getRow(1).getCell(1).getCellStyle().getDataFormatString());
+        assertEquals("n/a", sheet.getRow(2).getCell(1).getStringCellValue());
+        assertFalse(sheet.getRow(2).getCell(2).getBooleanCellValue());
+        assertEquals("second & <third>", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals("http://example.com/b?x=1&y=2", sheet.getRow(2).getCell(3).getHyperlink().getAddress());
+        assertEquals("A1:D4", sheet.getCTWorksheet().getAutoFilter().getRef());
+    }
+}
@@ -0,0 +1,28 @@
+package com.digsolab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StyleRegistryTest {
+
+    @Test
+    public void testEqualLooksShareOneStyle() {
+        final int[] created = new int[1];
+        StyleRegistry registry = new StyleRegistry(new StyleRegistry.Factory() {
+            @Override
+            public int createStyle(StyleRegistry.Key key) {
+                return created[0]++;
+            }
+        });
+        int number = registry.getStyle(StyleRegistry.Key.of(new Format(Type.NUMBER, "0.00", -1)));
+        assertEquals(number, registry.getStyle(StyleRegistry.Key.of(new Format(Type.NUMBER, "0.00", 5000))));
+        assertEquals(number, registry.getStyle(StyleRegistry.Key.of(new Format(Type.DATE, "0.00", -1))));
+        int text = registry.getStyle(StyleRegistry.Key.of(new Format(Type.TEXT, null, -1)));
+        assertNotEquals(number, text);
+        assertNotEquals(text, registry.getStyle(StyleRegistry.Key.of(new Format(Type.HYPERLINK, null, -1))));
+        assertNotEquals(text, registry.getStyle(StyleRegistry.Key.HEADER));
+        assertEquals(4, registry.getUniqueCount());
+        assertEquals(6, registry.getRequestedCount());
+        assertEquals(4, created[0]);
+    }
+}
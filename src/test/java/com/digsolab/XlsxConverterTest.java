@@ -0,0 +1,125 @@
+package com.digsolab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XlsxConverterTest {
+
+    private static InputStream csv(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes("US-ASCII"));
+    }
+
+    private static XSSFWorkbook read(ByteArrayOutputStream out) throws IOException {
+        return new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testNamedStreamsBecomeSheets() throws IOException {
+        XlsxConverter converter = new XlsxConverter(ConverterOptions.builder().readHeaders(true)
+                .columns("T", "N").build());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.convert(Arrays.asList(CsvSource.of("Sales", csv("name,total\nx,12\n")),
+                CsvSource.of("Costs", csv("name,total\ny,3\n"))), out);
+        XSSFWorkbook workbook = read(out);
+        assertEquals(2, workbook.getNumberOfSheets());
+        assertEquals("Sales", workbook.getSheetName(0));
+        assertEquals("Costs", workbook.getSheetName(1));
+        Sheet sheet = workbook.getSheetAt(1);
+        assertEquals("total", sheet.getRow(0).getCell(1).getStringCellValue());
+        assertEquals(3.0, sheet.getRow(1).getCell(1).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void testInferredFormatsApplyToTheSampleAndTheRest() throws IOException {
+        XlsxConverter converter = new XlsxConverter(ConverterOptions.builder().readHeaders(true).infer(2)
+                .columns("", "T").build());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converter.convert(csv("day,code,amount\n2024-01-02,1,5\n2024-01-03,2,6\n2024-01-04,3,x\n"), out);
+        Sheet sheet = read(out).getSheetAt(0);
+        assertEquals(45293.0, sheet.getRow(1).getCell(0).getNumericCellValue(), 0);
+        assertEquals("yyyy-mm-dd", sheet.getRow(3).getCell(0).getCellStyle().getDataFormatString());
+        assertEquals("1", sheet.getRow(1).getCell(1).getStringCellValue());
+        assertEquals(6.0, sheet.getRow(2).getCell(2).getNumericCellValue(), 0);
+        assertEquals("x", sheet.getRow(3).getCell(2).getStringCellValue());
+    }
+
+    @Test
+    public void testCallerStreamsStayOpen() throws IOException {
+        final boolean[] closed = new boolean[2];
+        InputStream in = new ByteArrayInputStream("a,b\n".getBytes("US-ASCII")) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[1] = true;
+            }
+        };
+        new XlsxConverter(ConverterOptions.builder().engine(OutputEngine.STREAM).build()).convert(in, out);
+        assertFalse(closed[0]);
+        assertFalse(closed[1]);
+        assertEquals("Sheet0", read(out).getSheetName(0));
+    }
+
+    @Test
+    public void testDuplicateSheetNamesFail() throws IOException {
+        try {
+            new XlsxConverter(ConverterOptions.builder().build()).convert(Arrays.asList(
+                    CsvSource.of("Data", csv("a\n")), CsvSource.of("data", csv("b\n"))), new ByteArrayOutputStream());
+            fail();
+        }
+        catch (IllegalArgumentException illArgEx) {
+            assertEquals("Duplicate sheet name: data", illArgEx.getMessage());
+        }
+    }
+
+    @Test
+    public void testConcurrentConversionsShareOptions() throws Exception {
+        final XlsxConverter converter = new XlsxConverter(ConverterOptions.builder().columns("N")
+                .engine(OutputEngine.STREAM).build());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ByteArrayOutputStream>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final int value = i;
+                results.add(executor.submit(new Callable<ByteArrayOutputStream>() {
+                    @Override
+                    public ByteArrayOutputStream call() throws IOException {
+                        StringBuilder text = new StringBuilder();
+                        for (int row = 0; row < 500; row++) {
+                            text.append(value).append('\n');
+                        }
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        converter.convert(csv(text.toString()), out);
+                        return out;
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Sheet sheet = read(results.get(i).get()).getSheetAt(0);
+                assertEquals(500, sheet.getLastRowNum());
+                assertEquals(i, sheet.getRow(500).getCell(0).getNumericCellValue(), 0);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
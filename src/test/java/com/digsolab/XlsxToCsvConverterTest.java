@@ -0,0 +1,133 @@
+package com.digsolab;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class XlsxToCsvConverterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File workDir;
+
+    @Before
+    public void setUp() {
+        workDir = temp.getRoot();
+    }
+
+    private ConverterOptions parse(String... args) throws Exception {
+        ConverterOptions options = new ConverterOptions();
+        options.parseOptions(args, workDir);
+        return options;
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(workDir, name).toPath()), UTF_8);
+    }
+
+    /**
+     * Two sheets written with shared strings like Excel saves them, with gaps in the rows and cells.
+     */
+    private void writeWorkbook(String name) throws IOException {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd.mm.yyyy"));
+        Sheet orders = workbook.createSheet("Orders");
+        Row header = orders.createRow(0);
+        header.createCell(0).setCellValue("id");
+        header.createCell(1).setCellValue("amount");
+        header.createCell(2).setCellValue("placed");
+        Row first = orders.createRow(1);
+        first.createCell(0).setCellValue("a,\"1\"");
+        first.createCell(1).setCellValue(1234.5);
+        first.createCell(2).setCellValue(new GregorianCalendar(2014, Calendar.JUNE, 3));
+        first.getCell(2).setCellStyle(dateStyle);
+        Row third = orders.createRow(3);
+        third.createCell(1).setCellValue(1e20);
+        third.createCell(3).setCellValue(true);
+        workbook.createSheet("Notes").createRow(0).createCell(0).setCellValue("line 1\nline 2");
+        try (OutputStream out = new FileOutputStream(new File(workDir, name))) {
+            workbook.write(out);
+        }
+    }
+
+    @Test
+    public void testWorkbooksOfBothEnginesConvertBack() throws Exception {
+        String csv = "name,amount,day,flag,link\n\"x, y\",2.5,2014-06-03,true,http://example.com/?a=1\n"
+                + "\"say \"\"hi\"\"\",4,2014-06-04,false,http://example.com/b\n";
+        try (OutputStream out = new FileOutputStream(new File(workDir, "in.csv"))) {
+            out.write(csv.getBytes(UTF_8));
+        }
+        for (String engine : new String[] {"poi", "stream"}) {
+            new CsvToXlsConverter().convertToExcel(parse("-engine", engine, "-H", "-columns", "T;N;Dyyyy-mm-dd;B;H",
+                    "-output", engine + ".xlsx", "in.csv"));
+            new XlsxToCsvConverter(parse("-tocsv", "-charset", "UTF-8", "-outdir", "back", engine + ".xlsx"))
+                    .convert();
+            assertEquals(engine, csv, read("back/" + engine + ".csv"));
+        }
+    }
+
+    @Test
+    public void testSharedStringsGapsAndStyles() throws Exception {
+        writeWorkbook("book.xlsx");
+        new XlsxToCsvConverter(parse("-tocsv", "-charset", "UTF-8", "book.xlsx")).convert();
+        assertEquals("id,amount,placed\n\"a,\"\"1\"\"\",1234.5,2014-06-03\n,,\n,100000000000000000000,,true\n",
+                read("book-Orders.csv"));
+        assertEquals("\"line 1\nline 2\"\n", read("book-Notes.csv"));
+    }
+
+    @Test
+    public void testPatternsAndSelectedSheets() throws Exception {
+        writeWorkbook("book.xlsx");
+        new XlsxToCsvConverter(parse("-tocsv", "-sheets", "orders", "-columns", "T;N#,##0.00;Dyyyy/mm/dd;N",
+                "-delimiter", ";", "-output", "orders.csv", "book.xlsx")).convert();
+        assertEquals("id;amount;placed\n\"a,\"\"1\"\"\";1,234.50;2014/06/03\n;;\n;100,000,000,000,000,000,000.00;;true\n",
+                read("orders.csv"));
+        new XlsxToCsvConverter(parse("-tocsv", "-sheets", "2", "-outdir", "out", "book.xlsx")).convert();
+        assertTrue(new File(workDir, "out/book.csv").isFile());
+    }
+
+    @Test
+    public void testSheetErrors() throws Exception {
+        writeWorkbook("book.xlsx");
+        String[][] args = {{"-tocsv", "-sheets", "3", "book.xlsx"}, {"-tocsv", "-output", "all.csv", "book.xlsx"}};
+        String[] messages = {"There is no sheet 3 in book.xlsx",
+                "The 2 sheets of book.xlsx are written into -outdir, not to -output"};
+        for (int i = 0; i < args.length; i++) {
+            try {
+                new XlsxToCsvConverter(parse(args[i])).convert();
+                fail();
+            }
+            catch (IllegalArgumentException illArgEx) {
+                assertEquals(messages[i], illArgEx.getMessage());
+            }
+        }
+        assertFalse(new File(workDir, "all.csv").exists());
+    }
+
+    @Test
+    public void testColumnReferences() {
+        assertEquals(0, XlsxToCsvConverter.toColumn("A1"));
+        assertEquals(25, XlsxToCsvConverter.toColumn("Z9"));
+        assertEquals(27, XlsxToCsvConverter.toColumn("AB12"));
+        assertEquals(16383, XlsxToCsvConverter.toColumn("XFD1048576"));
+    }
+}
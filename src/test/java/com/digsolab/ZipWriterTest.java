@@ -0,0 +1,196 @@
+package com.digsolab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ZipWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static String read(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        assertNotNull(name, entry);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                content.write(buffer, 0, read);
+            }
+        }
+        return new String(content.toByteArray(), UTF_8);
+    }
+
+    private static String text(int repeat) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            text.append("<row r=\"").append(i).append("\">\u0442\u0435\u043a\u0441\u0442</row>");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testStreamedAndDeflatedEntries() throws IOException {
+        File file = File.createTempFile("exceller-zip", ".zip");
+        try {
+            DeflatedPart.Output partOut = new DeflatedPart.Output(Deflater.DEFAULT_COMPRESSION, null);
+            partOut.write(text(10000).getBytes(UTF_8));
+            DeflatedPart part = partOut.finish();
+            try (OutputStream out = new FileOutputStream(file)) {
+                ZipWriter zip = new ZipWriter(out, Deflater.BEST_SPEED);
+                OutputStream entry = zip.putEntry("xl/worksheets/sheet1.xml");
+                entry.write(text(5000).getBytes(UTF_8));
+                entry.close();
+                zip.putEntry("xl/worksheets/sheet2.xml", part);
+                zip.putEntry("empty.xml").close();
+                zip.finish();
+            }
+            finally {
+                part.delete();
+            }
+            try (ZipFile zipFile = new ZipFile(file)) {
+                assertEquals(3, zipFile.size());
+                assertEquals(text(5000), read(zipFile, "xl/worksheets/sheet1.xml"));
+                assertEquals(text(10000), read(zipFile, "xl/worksheets/sheet2.xml"));
+                assertEquals("", read(zipFile, "empty.xml"));
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBlockDeflatedEntries() throws IOException {
+        File file = File.createTempFile("exceller-zip", ".zip");
+        ParallelDeflater.Pool pool = new ParallelDeflater.Pool(3);
+        try {
+            byte[] content = text(40000).getBytes(UTF_8);
+            assertTrue(content.length > 5 * ParallelDeflater.BLOCK_SIZE);
+            DeflatedPart.Output partOut = new DeflatedPart.Output(Deflater.DEFAULT_COMPRESSION, null, pool);
+            partOut.write(content);
+            DeflatedPart part = partOut.finish();
+            try (OutputStream out = new FileOutputStream(file)) {
+                ZipWriter zip = new ZipWriter(out, Deflater.BEST_COMPRESSION, pool);
+                OutputStream entry = zip.putEntry("xl/worksheets/sheet1.xml");
+                for (int off = 0; off < content.length; off += 1000) {
+                    entry.write(content, off, Math.min(1000, content.length - off));
+                }
+                entry.close();
+                zip.putEntry("xl/worksheets/sheet2.xml", part);
+                zip.putEntry("empty.xml").close();
+                zip.finish();
+            }
+            finally {
+                part.delete();
+            }
+            try (ZipFile zipFile = new ZipFile(file)) {
+                assertEquals(text(40000), read(zipFile, "xl/worksheets/sheet1.xml"));
+                assertEquals(text(40000), read(zipFile, "xl/worksheets/sheet2.xml"));
+                assertEquals("", read(zipFile, "empty.xml"));
+                // the blocks are primed with the input before them, so they compress about as well as one stream
+                assertTrue(zipFile.getEntry("xl/worksheets/sheet2.xml").getCompressedSize() < content.length / 10);
+            }
+        }
+        finally {
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCombinedCrc() {
+        byte[] content = text(3000).getBytes(UTF_8);
+        for (int split : new int[] {0, 1, 100, content.length - 1, content.length}) {
+            CRC32 first = new CRC32();
+            first.update(content, 0, split);
+            CRC32 second = new CRC32();
+            second.update(content, split, content.length - split);
+            CRC32 all = new CRC32();
+            all.update(content);
+            assertEquals(all.getValue(),
+                    DeflatedPart.combineCrc(first.getValue(), second.getValue(), content.length - split));
+        }
+    }
+
+    @Test
+    public void testPartWithHead() throws IOException {
+        File file = File.createTempFile("exceller-zip", ".zip");
+        ParallelDeflater.Pool pool = new ParallelDeflater.Pool(2);
+        try {
+            DeflatedPart.Output partOut = new DeflatedPart.Output(Deflater.DEFAULT_COMPRESSION, null);
+            partOut.write(text(10000).getBytes(UTF_8));
+            DeflatedPart part = partOut.finish().withHead(text(7).getBytes(UTF_8), Deflater.BEST_SPEED);
+            DeflatedPart.Output blocksOut = new DeflatedPart.Output(Deflater.DEFAULT_COMPRESSION, null, pool);
+            blocksOut.write(text(40000).getBytes(UTF_8));
+            DeflatedPart blocks = blocksOut.finish().withHead(text(5000).getBytes(UTF_8), Deflater.NO_COMPRESSION);
+            try (OutputStream out = new FileOutputStream(file)) {
+                ZipWriter zip = new ZipWriter(out, Deflater.BEST_SPEED);
+                zip.putEntry("xl/worksheets/sheet1.xml", part);
+                zip.putEntry("xl/worksheets/sheet2.xml", blocks);
+                zip.finish();
+            }
+            finally {
+                part.delete();
+                blocks.delete();
+            }
+            // unlike ZipFile, ZipInputStream checks the crc of every entry
+            try (ZipInputStream in = new ZipInputStream(new FileInputStream(file))) {
+                assertEquals("xl/worksheets/sheet1.xml", in.getNextEntry().getName());
+                assertEquals(text(7) + text(10000), readEntry(in));
+                assertEquals("xl/worksheets/sheet2.xml", in.getNextEntry().getName());
+                assertEquals(text(5000) + text(40000), readEntry(in));
+                assertNull(in.getNextEntry());
+            }
+        }
+        finally {
+            pool.shutdown();
+            file.delete();
+        }
+    }
+
+    private static String readEntry(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            content.write(buffer, 0, read);
+        }
+        return new String(content.toByteArray(), UTF_8);
+    }
+
+    @Test
+    public void testUnfinishedPartIsDeleted() throws IOException {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        int before = countParts(tmpDir);
+        DeflatedPart.Output partOut = new DeflatedPart.Output(Deflater.DEFAULT_COMPRESSION, null);
+        partOut.write(text(10).getBytes(UTF_8));
+        assertEquals(before + 1, countParts(tmpDir));
+        partOut.close();
+        assertEquals(before, countParts(tmpDir));
+    }
+
+    private static int countParts(File dir) {
+        int count = 0;
+        for (String name : dir.list()) {
+            if (name.startsWith("exceller-part")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}